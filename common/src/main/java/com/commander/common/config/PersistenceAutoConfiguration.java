@@ -0,0 +1,204 @@
+package com.commander.common.config;
+
+import com.commander.common.jpa.BulkWriter;
+import com.commander.common.jpa.ConnectionHoldTracker;
+import com.commander.common.jpa.ExplainStatementInspector;
+import com.commander.common.jpa.JobQueue;
+import com.commander.common.jpa.Outbox;
+import com.commander.common.jpa.OutboxDispatcher;
+import com.commander.common.jpa.PageFinder;
+import com.commander.common.jpa.QueryCountFilter;
+import com.commander.common.jpa.QueryCounter;
+import com.commander.common.jpa.ShapedQueryCache;
+import com.commander.common.jpa.StatementStatistics;
+import com.commander.common.jpa.StatementStatisticsEndpoint;
+import com.commander.common.jpa.StreamingExporter;
+import com.commander.common.util.RestClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+
+@AutoConfiguration(after = {HibernateJpaAutoConfiguration.class, CompositeMeterRegistryAutoConfiguration.class,
+        RestClientAutoConfiguration.class})
+@ConditionalOnBean(EntityManagerFactory.class)
+@EnableConfigurationProperties(PersistenceProperties.class)
+@Log4j2
+public class PersistenceAutoConfiguration {
+    /**
+     * Lazy collections and proxies of a persistence context are loaded up to this many at once, so mapping a page of
+     * entities does not run one query per entity. {@code hibernate.default_batch_fetch_size} overrides it.
+     */
+    private static final int DEFAULT_BATCH_FETCH_SIZE = 100;
+
+    /**
+     * Installs {@link QueryCounter} and {@link ExplainStatementInspector} as the statement inspector, in front of the
+     * one configured with {@code hibernate.session_factory.statement_inspector} if any
+     */
+    @Bean
+    public HibernatePropertiesCustomizer statementInspectorCustomizer() {
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, statementInspector(properties.get(AvailableSettings.STATEMENT_INSPECTOR)));
+            properties.putIfAbsent(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, DEFAULT_BATCH_FETCH_SIZE);
+        };
+    }
+
+    /**
+     * {@link QueryCounter} then {@link ExplainStatementInspector} then {@code configured}, given as Hibernate takes it:
+     * an instance, a class or a class name
+     */
+    static StatementInspector statementInspector(Object configured) {
+        var explain = new ExplainStatementInspector();
+        if (configured == null) {
+            return new QueryCounter(explain);
+        }
+        StatementInspector next;
+        if (configured instanceof StatementInspector inspector) {
+            next = inspector;
+        } else {
+            var type = configured instanceof Class<?> c ? c
+                    : ClassUtils.resolveClassName(configured.toString(), PersistenceAutoConfiguration.class.getClassLoader());
+            next = BeanUtils.instantiateClass(type, StatementInspector.class);
+        }
+        log.info("Statement inspector {} runs after QueryCounter and ExplainStatementInspector", next.getClass().getName());
+        return new QueryCounter(sql -> next.inspect(explain.inspect(sql)));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public PageFinder pageFinder(EntityManagerFactory entityManagerFactory, PersistenceProperties properties) {
+        var count = properties.getCount();
+        return new PageFinder(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory), count.getDefaultStrategy(),
+                count.getCacheTtl(), count.getCacheSize(), count.getExactBelow());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public BulkWriter bulkWriter(DataSource dataSource, PersistenceProperties properties) {
+        var bulk = properties.getBulk();
+        return new BulkWriter(dataSource, bulk.getBatchSize(), bulk.getBufferSize());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ShapedQueryCache shapedQueryCache(EntityManagerFactory entityManagerFactory, PersistenceProperties properties,
+                                             ObjectProvider<MeterRegistry> registry) {
+        return new ShapedQueryCache(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory),
+                properties.getShapes().getCacheSize(), registry.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public StreamingExporter streamingExporter(EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager,
+                                               PersistenceProperties properties) {
+        var export = properties.getExport();
+        return new StreamingExporter(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory), transactionManager,
+                export.getFetchSize(), export.getClearEvery(), export.getTimeout());
+    }
+
+    @Bean
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "persistence.connection-hold", name = "enabled", matchIfMissing = true)
+    public ConnectionHoldTracker connectionHoldTracker(MeterRegistry registry, PersistenceProperties properties) {
+        return new ConnectionHoldTracker(registry, properties.getConnectionHold().getSlowIo());
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty(prefix = "persistence.query-count", name = "enabled", matchIfMissing = true)
+    public FilterRegistrationBean<QueryCountFilter> queryCountFilter(PersistenceProperties properties) {
+        var queryCount = properties.getQueryCount();
+        return new FilterRegistrationBean<>(new QueryCountFilter(queryCount.getThreshold(), queryCount.getMode()));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "persistence.statements", name = "enabled", matchIfMissing = true)
+    public StatementStatistics statementStatistics(PersistenceProperties properties) {
+        var statements = properties.getStatements();
+        return new StatementStatistics(statements.getSlowThreshold(), statements.getLogInterval(), statements.isExplain(),
+                statements.getExplainInterval(), statements.getMaxFingerprints(), statements.getSampleRate());
+    }
+
+    @Bean
+    @ConditionalOnBean(StatementStatistics.class)
+    @ConditionalOnAvailableEndpoint
+    public StatementStatisticsEndpoint statementStatisticsEndpoint(StatementStatistics statistics, PersistenceProperties properties) {
+        return new StatementStatisticsEndpoint(statistics, properties.getStatements().getTop());
+    }
+
+    @Bean
+    @ConditionalOnBean(RestClient.class)
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "persistence.outbox", name = "enabled", havingValue = "true")
+    public OutboxDispatcher outboxDispatcher(DataSource dataSource, RestClient restClient, PersistenceProperties properties,
+                                             ObjectProvider<MeterRegistry> registry) {
+        var outbox = properties.getOutbox();
+        return new OutboxDispatcher(dataSource, outbox.getTable(), restClient, outbox.getBatchSize(), outbox.getConcurrency(),
+                outbox.getPollInterval(), outbox.getLease(), outbox.getMaxAttempts(), outbox.getBackoff(), outbox.getMaxBackoff(),
+                registry.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "persistence.outbox", name = "enabled", havingValue = "true")
+    public Outbox outbox(DataSource dataSource, PersistenceProperties properties, ObjectProvider<OutboxDispatcher> dispatcher) {
+        var outboxDispatcher = dispatcher.getIfAvailable();
+        return new Outbox(dataSource, properties.getOutbox().getTable(), outboxDispatcher == null ? null : outboxDispatcher::wakeUp);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "persistence.jobs", name = "enabled", havingValue = "true")
+    public JobQueue jobQueue(DataSource dataSource, PersistenceProperties properties, ObjectProvider<MeterRegistry> registry) {
+        var jobs = properties.getJobs();
+        return new JobQueue(dataSource, jobs.getTable(), jobs.getChannel(), jobs.getPollInterval(), jobs.getLease(),
+                jobs.getMaxAttempts(), jobs.getBackoff(), jobs.getMaxBackoff(), registry.getIfAvailable());
+    }
+
+    /**
+     * Wraps the {@code dataSource} bean, used by JPA and JDBC, so its statements and the connections it hands out are
+     * timed
+     */
+    @Bean
+    public static BeanPostProcessor instrumentedDataSourcePostProcessor(ObjectProvider<StatementStatistics> statistics,
+                                                                          ObjectProvider<ConnectionHoldTracker> tracker) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                var statementStatistics = statistics.getIfAvailable();
+                if (statementStatistics != null) {
+                    dataSource = statementStatistics.wrap(dataSource);
+                }
+                var holdTracker = tracker.getIfAvailable();
+                return holdTracker == null ? dataSource : holdTracker.wrap(dataSource);
+            }
+        };
+    }
+}
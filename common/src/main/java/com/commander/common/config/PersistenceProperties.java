@@ -0,0 +1,178 @@
+package com.commander.common.config;
+
+import com.commander.common.jpa.CountStrategy;
+import com.commander.common.jpa.QueryCounter;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "persistence")
+public class PersistenceProperties {
+    private Export export = new Export();
+    private Count count = new Count();
+    private Shapes shapes = new Shapes();
+    private Bulk bulk = new Bulk();
+    private Replicas replicas = new Replicas();
+    private ConnectionHold connectionHold = new ConnectionHold();
+    private Statements statements = new Statements();
+    private QueryCount queryCount = new QueryCount();
+    private Outbox outbox = new Outbox();
+    private Jobs jobs = new Jobs();
+
+    @Getter
+    @Setter
+    public static class Export {
+        private int fetchSize = 1000;
+        private int clearEvery = 1000;
+        private Duration timeout = Duration.ofMinutes(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Count {
+        private CountStrategy defaultStrategy = CountStrategy.EXACT;
+        private Duration cacheTtl = Duration.ofMinutes(1);
+        private long cacheSize = 10_000;
+        private long exactBelow = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Shapes {
+        private long cacheSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Bulk {
+        private int batchSize = 1000;
+        private int bufferSize = 64 * 1024;
+    }
+
+    @Getter
+    @Setter
+    public static class Replicas {
+        private boolean enabled = false;
+        private List<Instance> instances = new ArrayList<>();
+        private Duration maxLag = Duration.ofSeconds(5);
+        private Duration checkInterval = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Instance {
+        private String url;
+        /**
+         * Defaults to the username of spring.datasource
+         */
+        private String username;
+        /**
+         * Defaults to the password of spring.datasource
+         */
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+
+    @Getter
+    @Setter
+    public static class ConnectionHold {
+        private boolean enabled = true;
+        /**
+         * Outbound calls made while holding a connection are logged from this duration
+         */
+        private Duration slowIo = Duration.ofMillis(100);
+    }
+
+    @Getter
+    @Setter
+    public static class Statements {
+        private boolean enabled = true;
+        private Duration slowThreshold = Duration.ofMillis(200);
+        /**
+         * Minimum time between two logs of slow statements with the same fingerprint
+         */
+        private Duration logInterval = Duration.ofSeconds(10);
+        /**
+         * Run slow queries again as EXPLAIN (ANALYZE, BUFFERS) in the background
+         */
+        private boolean explain = false;
+        private Duration explainInterval = Duration.ofMinutes(10);
+        private int maxFingerprints = 1000;
+        /**
+         * Part of the statements, from 0 to 1, whose rows are counted; those of slow queries always are
+         */
+        private double sampleRate = 0.1;
+        /**
+         * Statements listed by the statements actuator endpoint
+         */
+        private int top = 20;
+    }
+
+    @Getter
+    @Setter
+    public static class QueryCount {
+        private boolean enabled = true;
+        /**
+         * Statements a request may run before it is logged or failed
+         */
+        private long threshold = 50;
+        private QueryCounter.Mode mode = QueryCounter.Mode.LOG;
+    }
+
+    @Getter
+    @Setter
+    public static class Outbox {
+        /**
+         * Needs the table of config/db-mirgration/outbox.sql
+         */
+        private boolean enabled = false;
+        private String table = "outbox";
+        /**
+         * Rows claimed per round of the dispatcher
+         */
+        private int batchSize = 100;
+        /**
+         * Calls in flight at most
+         */
+        private int concurrency = 16;
+        private Duration pollInterval = Duration.ofSeconds(1);
+        /**
+         * Time a claimed row is hidden from other dispatchers, longer than a call can take
+         */
+        private Duration lease = Duration.ofMinutes(1);
+        private int maxAttempts = 10;
+        private Duration backoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Jobs {
+        /**
+         * Needs the table of config/db-mirgration/job.sql
+         */
+        private boolean enabled = false;
+        private String table = "job";
+        /**
+         * Channel notified of new jobs, listened to by one connection per node
+         */
+        private String channel = "job";
+        /**
+         * Claims without notification, for scheduled jobs and retries
+         */
+        private Duration pollInterval = Duration.ofSeconds(5);
+        /**
+         * Time a claimed job is hidden from other nodes, longer than a job can take
+         */
+        private Duration lease = Duration.ofMinutes(5);
+        private int maxAttempts = 10;
+        private Duration backoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(10);
+    }
+}
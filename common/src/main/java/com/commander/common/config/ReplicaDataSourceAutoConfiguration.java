@@ -0,0 +1,89 @@
+package com.commander.common.config;
+
+import com.commander.common.jpa.PrimaryAfterWriteListener;
+import com.commander.common.jpa.ReplicaDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+
+/**
+ * Routes read-only transactions to {@code persistence.replicas.instances} when {@code persistence.replicas.enabled},
+ * replacing the data source of {@code spring.datasource} by a {@link LazyConnectionDataSourceProxy} of it. The proxy
+ * only takes a connection at the first statement, once the transaction has declared whether it is read-only.
+ * <p>
+ * Needs {@code spring.jpa.open-in-view: false} when JPA is used: an entity manager kept open over the transactions of a
+ * request holds the connection of its first one, so a write after a read-only transaction would run on the replica.
+ */
+@AutoConfiguration(before = DataSourceAutoConfiguration.class)
+@ConditionalOnClass(HikariDataSource.class)
+@ConditionalOnProperty(prefix = "persistence.replicas", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties({PersistenceProperties.class, DataSourceProperties.class})
+public class ReplicaDataSourceAutoConfiguration {
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaDataSource replicaDataSource(HikariDataSource primaryDataSource, DataSourceProperties dataSourceProperties,
+                                               PersistenceProperties properties, ObjectProvider<MeterRegistry> registry) {
+        var replicas = properties.getReplicas();
+        var dataSources = new LinkedHashMap<String, DataSource>();
+        for (int i = 0; i < replicas.getInstances().size(); ++i) {
+            var instance = replicas.getInstances().get(i);
+            var config = new HikariConfig();
+            config.setPoolName("replica-" + i);
+            config.setJdbcUrl(instance.getUrl());
+            config.setUsername(instance.getUsername() != null ? instance.getUsername() : dataSourceProperties.determineUsername());
+            config.setPassword(instance.getPassword() != null ? instance.getPassword() : dataSourceProperties.determinePassword());
+            config.setMaximumPoolSize(instance.getMaximumPoolSize());
+            config.setReadOnly(true);
+            // a replica down at startup is only marked unhealthy
+            config.setInitializationFailTimeout(-1);
+            // replica pools are not beans, so the pool metrics of spring.datasource do not cover them
+            registry.ifAvailable(r -> config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(r)));
+            dataSources.put(config.getPoolName(), new HikariDataSource(config));
+        }
+        return new ReplicaDataSource(primaryDataSource, dataSources, replicas.getMaxLag(), replicas.getCheckInterval(), registry.getIfAvailable());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource, Environment environment) {
+        checkOpenInView(environment);
+        var dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+
+    static void checkOpenInView(Environment environment) {
+        if (ClassUtils.isPresent("jakarta.persistence.EntityManagerFactory", ReplicaDataSourceAutoConfiguration.class.getClassLoader())
+                && environment.getProperty("spring.jpa.open-in-view", Boolean.class, true)) {
+            throw new IllegalStateException("persistence.replicas needs spring.jpa.open-in-view: false, an entity manager open over"
+                    + " the transactions of a request keeps the replica connection of a read-only transaction for its writes");
+        }
+    }
+
+    @Bean
+    public PrimaryAfterWriteListener primaryAfterWriteListener() {
+        return new PrimaryAfterWriteListener();
+    }
+}
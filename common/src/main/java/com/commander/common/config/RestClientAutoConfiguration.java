@@ -0,0 +1,110 @@
+package com.commander.common.config;
+
+import com.commander.common.http.ConnectionWarmer;
+import com.commander.common.http.ConnectionWarmupHealthIndicator;
+import com.commander.common.http.DeadlineFilter;
+import com.commander.common.http.HostRateLimiter;
+import com.commander.common.http.RestAuditor;
+import com.commander.common.http.RestClientMetrics;
+import com.commander.common.jpa.ConnectionHoldTracker;
+import com.commander.common.util.RestClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+
+@AutoConfiguration(after = CompositeMeterRegistryAutoConfiguration.class)
+@EnableConfigurationProperties(RestClientProperties.class)
+public class RestClientAutoConfiguration {
+    @Bean
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "rest-client.metrics", name = "enabled", matchIfMissing = true)
+    public RestClientMetrics restClientMetrics(MeterRegistry meterRegistry, RestClientProperties properties) {
+        return new RestClientMetrics(meterRegistry, properties.getMetrics().getMaxUriTags(),
+                properties.getMetrics().getMaxHostTags());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public HostRateLimiter hostRateLimiter(RestClientProperties properties) {
+        var limits = new HashMap<String, HostRateLimiter.Limit>();
+        properties.getRateLimits().forEach((host, limit) ->
+                limits.put(host, new HostRateLimiter.Limit(limit.getPermitsPerSecond(), limit.getBurst())));
+        return new HostRateLimiter(limits);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "rest-client.audit", name = "enabled", matchIfMissing = true)
+    public RestAuditor restAuditor(RestClientProperties properties) {
+        var audit = properties.getAudit();
+        var defaultPolicy = new RestAuditor.HostPolicy(audit.getLevel(), audit.getSampleRate());
+        var hostPolicies = new HashMap<String, RestAuditor.HostPolicy>();
+        audit.getHosts().forEach((host, policy) -> hostPolicies.put(host, new RestAuditor.HostPolicy(
+                policy.getLevel() != null ? policy.getLevel() : audit.getLevel(),
+                policy.getSampleRate() != null ? policy.getSampleRate() : audit.getSampleRate())));
+        return new RestAuditor(defaultPolicy, hostPolicies, audit.getMaxBodyChars(), audit.getRedactedFields(),
+                audit.getBufferSize(), RestAuditor.logSink());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RestClient restClient(RestClientProperties properties, ObjectProvider<RestClientMetrics> metrics,
+                                 HostRateLimiter rateLimiter, ObjectProvider<RestAuditor> auditor,
+                                 ObjectProvider<ConnectionHoldTracker> holdTracker) {
+        var http = properties.getHttp();
+        return RestClient.builder()
+                .version(http.getVersion())
+                .connectTimeout(http.getConnectTimeout())
+                .executor(http.isVirtualThreads() ? Executors.newVirtualThreadPerTaskExecutor() : null)
+                .metrics(metrics.getIfAvailable())
+                .rateLimiter(rateLimiter)
+                .auditor(auditor.getIfAvailable())
+                .holdTracker(holdTracker.getIfAvailable())
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "rest-client.warmup", name = "enabled")
+    public ConnectionWarmer connectionWarmer(RestClient restClient, RestClientProperties properties) {
+        var warmup = properties.getWarmup();
+        return new ConnectionWarmer(restClient.getHttpClient(), warmup.getTargets(), warmup.getConnectionsPerHost(), warmup.getTimeout());
+    }
+
+    @Bean
+    @ConditionalOnBean(ConnectionWarmer.class)
+    public ApplicationListener<ApplicationStartedEvent> connectionWarmupListener(ConnectionWarmer warmer) {
+        return event -> warmer.warm();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ConnectionWarmupHealthIndicator restClientWarmupHealthIndicator(ObjectProvider<ConnectionWarmer> warmer) {
+        return new ConnectionWarmupHealthIndicator(warmer.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty(prefix = "rest-client.deadline", name = "enabled", matchIfMissing = true)
+    public FilterRegistrationBean<DeadlineFilter> deadlineFilter(RestClientProperties properties) {
+        var deadline = properties.getDeadline();
+        var registration = new FilterRegistrationBean<>(new DeadlineFilter(deadline.getDefaultTimeout(), deadline.getMaxTimeout()));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
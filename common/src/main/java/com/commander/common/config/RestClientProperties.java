@@ -0,0 +1,85 @@
+package com.commander.common.config;
+
+import com.commander.common.http.RestAuditor;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "rest-client")
+public class RestClientProperties {
+    private Http http = new Http();
+    private Warmup warmup = new Warmup();
+    private Metrics metrics = new Metrics();
+    private Map<String, RateLimit> rateLimits = new HashMap<>();
+    private Audit audit = new Audit();
+    private Deadline deadline = new Deadline();
+
+    @Getter
+    @Setter
+    public static class Http {
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private boolean virtualThreads = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Warmup {
+        private boolean enabled;
+        private List<URI> targets = new ArrayList<>();
+        private int connectionsPerHost = 4;
+        private Duration timeout = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Metrics {
+        private boolean enabled = true;
+        private int maxUriTags = 100;
+        private int maxHostTags = 100;
+    }
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+        private double permitsPerSecond;
+        private int burst = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class Audit {
+        private boolean enabled = true;
+        private RestAuditor.Level level = RestAuditor.Level.URL;
+        private double sampleRate = 1;
+        private Map<String, Host> hosts = new HashMap<>();
+        private int maxBodyChars = 2048;
+        private List<String> redactedFields = new ArrayList<>(List.of("password", "token", "accessToken", "refreshToken", "secret"));
+        private int bufferSize = 8192;
+
+        @Getter
+        @Setter
+        public static class Host {
+            private RestAuditor.Level level;
+            private Double sampleRate;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Deadline {
+        private boolean enabled = true;
+        private Duration defaultTimeout;
+        private Duration maxTimeout;
+    }
+}
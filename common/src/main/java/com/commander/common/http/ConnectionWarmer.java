@@ -0,0 +1,111 @@
+package com.commander.common.http;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opens connections to downstream hosts ahead of the first real call.
+ * <p>
+ * {@link #warm()} sends {@code connectionsPerHost} concurrent HEAD requests to each target so DNS lookup, TCP and TLS
+ * handshakes (and the HTTP/2 upgrade) are done and the connections sit in the pool of the {@link HttpClient}. Any
+ * response counts as warm, whatever its status. Targets that cannot be reached within {@code timeout} are reported as
+ * failed but do not hold warm-up back: the first real call to them simply pays for the connection as usual.
+ */
+@Log4j2
+public class ConnectionWarmer {
+    private final HttpClient httpClient;
+    private final List<URI> targets;
+    private final int connectionsPerHost;
+    private final Duration timeout;
+    private final Map<URI, String> states = new ConcurrentHashMap<>();
+    private volatile CompletableFuture<Void> warmup;
+
+    /**
+     * @param httpClient         client whose pool is warmed, shared with the {@code RestClient} using it
+     * @param targets            urls answering HEAD requests cheaply, e.g. health endpoints of downstream services
+     * @param connectionsPerHost concurrent requests per target, i.e. HTTP/1.1 connections opened
+     * @param timeout            maximum time of each warm-up request
+     */
+    public ConnectionWarmer(HttpClient httpClient, List<URI> targets, int connectionsPerHost, Duration timeout) {
+        if (connectionsPerHost < 1) {
+            throw new IllegalArgumentException("connectionsPerHost must be greater than zero");
+        }
+        this.httpClient = httpClient;
+        this.targets = List.copyOf(targets);
+        this.connectionsPerHost = connectionsPerHost;
+        this.timeout = timeout;
+        for (var target : this.targets) {
+            states.put(target, "pending");
+        }
+    }
+
+    /**
+     * Start warming all targets, only the first call has effect.
+     *
+     * @return future completed once every target is warm or failed, never exceptionally
+     */
+    public synchronized CompletableFuture<Void> warm() {
+        if (warmup != null) {
+            return warmup;
+        }
+        var futures = new ArrayList<CompletableFuture<?>>(targets.size());
+        for (var target : targets) {
+            futures.add(warm(target));
+        }
+        warmup = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+        return warmup;
+    }
+
+    /**
+     * @return true once warm-up has finished
+     */
+    public boolean isDone() {
+        var w = warmup;
+        return w != null && w.isDone();
+    }
+
+    /**
+     * @return state of each target: pending, warm or the reason it failed
+     */
+    public Map<URI, String> getStates() {
+        var result = new LinkedHashMap<URI, String>();
+        for (var target : targets) {
+            result.put(target, states.get(target));
+        }
+        return result;
+    }
+
+    private CompletableFuture<Void> warm(URI target) {
+        var request = HttpRequest.newBuilder(target)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(timeout)
+                .build();
+        var start = System.nanoTime();
+        var requests = new CompletableFuture<?>[connectionsPerHost];
+        for (int i = 0; i < connectionsPerHost; ++i) {
+            requests[i] = httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        }
+        return CompletableFuture.allOf(requests).handle((v, e) -> {
+            if (e == null) {
+                states.put(target, "warm");
+                log.info("Warmed {} connections to {} in {} ms", connectionsPerHost, target, (System.nanoTime() - start) / 1_000_000);
+            } else {
+                var cause = e.getCause() != null ? e.getCause() : e;
+                states.put(target, "failed: " + cause);
+                log.warn("Warm up connections to {} failed", target, cause);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,29 @@
+package com.commander.common.http;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Reports {@code OUT_OF_SERVICE} until the {@link ConnectionWarmer} has finished, so an instance added to the
+ * readiness group only receives traffic with warm connection pools. Always {@code UP} when warm-up is disabled.
+ */
+public class ConnectionWarmupHealthIndicator implements HealthIndicator {
+    private final ConnectionWarmer warmer;
+
+    /**
+     * @param warmer warmer to report on, null if warm-up is disabled
+     */
+    public ConnectionWarmupHealthIndicator(ConnectionWarmer warmer) {
+        this.warmer = warmer;
+    }
+
+    @Override
+    public Health health() {
+        if (warmer == null) {
+            return Health.up().build();
+        }
+        var builder = warmer.isDone() ? Health.up() : Health.outOfService();
+        warmer.getStates().forEach((target, state) -> builder.withDetail(target.toString(), state));
+        return builder.build();
+    }
+}
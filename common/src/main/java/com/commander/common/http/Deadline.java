@@ -0,0 +1,68 @@
+package com.commander.common.http;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time after which the result of the current request is no longer useful.
+ * <p>
+ * The deadline of the request being processed is bound to the current thread by {@link DeadlineFilter} from the
+ * {@value #HEADER} header, or by the controller itself through {@link #set(Deadline)}. {@code RestClient} reads it
+ * to give each outbound call the remaining budget as timeout, forwards the remaining budget in the same header and
+ * fails calls without sending them once the budget is spent.
+ *
+ * @param expiresAtNanos {@link System#nanoTime()} at which the deadline expires
+ */
+public record Deadline(long expiresAtNanos) {
+    /**
+     * Header carrying the remaining budget in milliseconds.
+     */
+    public static final String HEADER = "X-Request-Timeout";
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * @return deadline bound to the current thread, null if there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a deadline to the current thread, null to remove it.
+     */
+    public static void set(Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public long remainingNanos() {
+        return expiresAtNanos - System.nanoTime();
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * @return the earlier of this deadline and {@code other}
+     */
+    public Deadline min(Deadline other) {
+        return other == null || expiresAtNanos - other.expiresAtNanos <= 0 ? this : other;
+    }
+}
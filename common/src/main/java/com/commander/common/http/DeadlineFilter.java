@@ -0,0 +1,61 @@
+package com.commander.common.http;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Bind the {@link Deadline} of each inbound request to the thread processing it.
+ * <p>
+ * The budget is read from the {@value Deadline#HEADER} header in milliseconds, capped by {@code maxTimeout}. Requests
+ * without the header get {@code defaultTimeout}, or no deadline when it is null.
+ */
+@Log4j2
+public class DeadlineFilter extends OncePerRequestFilter {
+    private final Duration defaultTimeout;
+    private final Duration maxTimeout;
+
+    /**
+     * @param defaultTimeout budget of requests without the header, may be null
+     * @param maxTimeout     upper bound of the budget, may be null
+     */
+    public DeadlineFilter(Duration defaultTimeout, Duration maxTimeout) {
+        this.defaultTimeout = defaultTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        var timeout = timeout(request.getHeader(Deadline.HEADER));
+        if (timeout != null) {
+            Deadline.set(Deadline.after(timeout));
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Deadline.clear();
+        }
+    }
+
+    private Duration timeout(String header) {
+        var timeout = defaultTimeout;
+        if (header != null) {
+            try {
+                timeout = Duration.ofMillis(Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Ignore invalid {} header: {}", Deadline.HEADER, header);
+            }
+        }
+        if (timeout != null && maxTimeout != null && timeout.compareTo(maxTimeout) > 0) {
+            timeout = maxTimeout;
+        }
+        return timeout;
+    }
+}
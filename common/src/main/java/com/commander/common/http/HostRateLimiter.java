@@ -0,0 +1,154 @@
+package com.commander.common.http;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-host {@link TokenBucket}s of outbound calls.
+ * <p>
+ * Hosts with a configured limit are paced at that rate. Any host answering {@code 429 Too Many Requests} is paused
+ * for its {@code Retry-After} (1 second when absent) and, if it has a configured limit, slowed down until calls
+ * succeed again. Pauses of hosts without a limit are forgotten once they end, and at most {@value #MAX_PAUSED_HOSTS}
+ * of them are kept at a time.
+ */
+@Log4j2
+public class HostRateLimiter {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final CompletableFuture<Void> NO_WAIT = CompletableFuture.completedFuture(null);
+    static final int MAX_PAUSED_HOSTS = 1024;
+
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    /**
+     * End of the pause, in {@link System#nanoTime()}, of throttled hosts without a configured limit
+     */
+    private final ConcurrentHashMap<String, Long> pausedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * @param limits rate limit per host name
+     */
+    public HostRateLimiter(Map<String, Limit> limits) {
+        limits.forEach((host, limit) -> buckets.put(host, new TokenBucket(limit.permitsPerSecond(), limit.burst())));
+    }
+
+    /**
+     * Reserve a permit for a call to {@code uri}.
+     *
+     * @return nanoseconds to wait before sending, 0 to send now
+     */
+    public long reserve(URI uri) {
+        var now = System.nanoTime();
+        var bucket = bucket(uri);
+        if (bucket != null) {
+            return bucket.reserve(now);
+        }
+        var host = uri.getHost() == null ? "" : uri.getHost();
+        var until = pausedUntil.get(host);
+        if (until == null) {
+            return 0;
+        }
+        if (until - now > 0) {
+            return until - now;
+        }
+        pausedUntil.remove(host, until);
+        return 0;
+    }
+
+    /**
+     * Reserve a permit for a call to {@code uri} without blocking.
+     *
+     * @return future completed when the call may be sent
+     */
+    public CompletableFuture<Void> acquire(URI uri) {
+        return delay(reserve(uri));
+    }
+
+    /**
+     * @return future completed after {@code waitNanos} without holding a thread meanwhile
+     */
+    public static CompletableFuture<Void> delay(long waitNanos) {
+        if (waitNanos <= 0) {
+            return NO_WAIT;
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Adapt the limit of the host of {@code uri} to the response it sent.
+     */
+    public void onResponse(URI uri, HttpResponse<?> response) {
+        if (response.statusCode() == TOO_MANY_REQUESTS) {
+            throttled(uri, retryAfterNanos(response));
+        } else if (response.statusCode() < 400) {
+            var bucket = bucket(uri);
+            if (bucket != null) {
+                bucket.succeeded();
+            }
+        }
+    }
+
+    void throttled(URI uri, long retryAfterNanos) {
+        log.warn("{} throttled us, pausing calls for {} ms", uri.getHost(), TimeUnit.NANOSECONDS.toMillis(retryAfterNanos));
+        var now = System.nanoTime();
+        var bucket = bucket(uri);
+        if (bucket != null) {
+            bucket.throttled(now, retryAfterNanos);
+        } else {
+            pause(uri.getHost() == null ? "" : uri.getHost(), now, now + retryAfterNanos);
+        }
+    }
+
+    private void pause(String host, long now, long until) {
+        pausedUntil.merge(host, until, (a, b) -> a - b > 0 ? a : b);
+        if (pausedUntil.size() > MAX_PAUSED_HOSTS) {
+            pausedUntil.values().removeIf(u -> u - now <= 0);
+            if (pausedUntil.size() > MAX_PAUSED_HOSTS) {
+                log.warn("More than {} hosts throttled us, not pausing calls to {}", MAX_PAUSED_HOSTS, host);
+                pausedUntil.remove(host);
+            }
+        }
+    }
+
+    int pausedHosts() {
+        return pausedUntil.size();
+    }
+
+    private TokenBucket bucket(URI uri) {
+        return uri.getHost() == null ? null : buckets.get(uri.getHost());
+    }
+
+    private static long retryAfterNanos(HttpResponse<?> response) {
+        var value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return DEFAULT_RETRY_AFTER_NANOS;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                var at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toNanos());
+            } catch (DateTimeParseException ex) {
+                return DEFAULT_RETRY_AFTER_NANOS;
+            }
+        }
+    }
+
+    /**
+     * @param permitsPerSecond steady rate of calls
+     * @param burst            calls allowed at once after an idle period
+     */
+    public record Limit(double permitsPerSecond, int burst) {
+    }
+}
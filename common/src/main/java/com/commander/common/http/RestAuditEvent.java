@@ -0,0 +1,17 @@
+package com.commander.common.http;
+
+import java.net.URI;
+
+/**
+ * One request or response handed from the calling thread to the audit thread. The body is the raw byte array
+ * already sent or received, nothing is copied or decoded on the calling thread.
+ *
+ * @param timestamp epoch millis of the event
+ * @param response  true for a response, false for a request
+ * @param method    HTTP method
+ * @param uri       destination url
+ * @param status    response status, 0 for a request
+ * @param body      raw body, may be null
+ */
+public record RestAuditEvent(long timestamp, boolean response, String method, URI uri, int status, byte[] body) {
+}
@@ -0,0 +1,13 @@
+package com.commander.common.http;
+
+/**
+ * Destination of audited calls, invoked on the audit thread only.
+ */
+@FunctionalInterface
+public interface RestAuditSink {
+    /**
+     * @param event audited request or response
+     * @param body  body decoded, redacted and truncated, null when the level does not include bodies
+     */
+    void write(RestAuditEvent event, String body);
+}
@@ -0,0 +1,207 @@
+package com.commander.common.http;
+
+import com.commander.common.util.MpscRingBuffer;
+import lombok.extern.log4j.Log4j2;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Audit log of outbound calls that keeps formatting off the calling thread.
+ * <p>
+ * The calling thread only looks up the level of the host, rolls the sampling dice and offers the raw body into a
+ * ring buffer; when the buffer is full the event is dropped and counted. A single daemon thread decodes the body,
+ * masks the values of redacted fields, truncates it and passes it to the {@link RestAuditSink}.
+ * Sampling is decided once per call, so a sampled request is audited with its response. Error responses
+ * (status 400 and above) bypass sampling.
+ */
+@Log4j2
+public class RestAuditor implements AutoCloseable {
+    private static final int DRAIN_BATCH = 256;
+    /**
+     * Longest sleep of an idle audit thread, only a safety net as offers wake it up
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final HostPolicy defaultPolicy;
+    private final Map<String, HostPolicy> hostPolicies;
+    private final int maxBodyChars;
+    private final Pattern redactPattern;
+    private final RestAuditSink sink;
+    private final MpscRingBuffer<RestAuditEvent> buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean running = true;
+    /**
+     * Set by the audit thread before it parks on an empty buffer, so offers only unpark a sleeping thread
+     */
+    private volatile boolean idle;
+
+    /**
+     * @param defaultPolicy  level and sampling of hosts without their own policy
+     * @param hostPolicies   level and sampling per host name
+     * @param maxBodyChars   bodies longer than this are truncated
+     * @param redactedFields names of JSON fields whose values are masked
+     * @param bufferSize     events waiting for the audit thread before new ones are dropped
+     * @param sink           destination of audited calls
+     */
+    public RestAuditor(HostPolicy defaultPolicy, Map<String, HostPolicy> hostPolicies, int maxBodyChars,
+                       Collection<String> redactedFields, int bufferSize, RestAuditSink sink) {
+        this.defaultPolicy = defaultPolicy;
+        this.hostPolicies = Map.copyOf(hostPolicies);
+        this.maxBodyChars = maxBodyChars;
+        this.redactPattern = redactedFields.isEmpty() ? null : Pattern.compile(
+                "(\"(?:" + String.join("|", redactedFields.stream().map(Pattern::quote).toList()) + ")\"\\s*:\\s*)"
+                        + "(\"(?:[^\"\\\\]|\\\\.)*\"|[^,}\\]\\s]+)");
+        this.sink = sink;
+        this.buffer = new MpscRingBuffer<>(bufferSize);
+        this.worker = Thread.ofPlatform().name("rest-audit").daemon().start(this::run);
+    }
+
+    /**
+     * Sink logging every event through this class' logger at INFO.
+     */
+    public static RestAuditSink logSink() {
+        return (event, body) -> {
+            if (event.response()) {
+                log.info("Response {} {} {} body: {}", event.status(), event.method(), event.uri(), body);
+            } else {
+                log.info("Request {} {} body: {}", event.method(), event.uri(), body);
+            }
+        };
+    }
+
+    /**
+     * Audit a request if its host is audited and the call is sampled.
+     *
+     * @return whether the request was sampled, to pass to {@link #response}
+     */
+    public boolean request(String method, URI uri, byte[] body) {
+        var policy = policy(uri);
+        if (policy.level() == Level.NONE || !sampled(policy)) {
+            return false;
+        }
+        offer(new RestAuditEvent(System.currentTimeMillis(), false, method, uri, 0, policy.level() == Level.BODY ? body : null));
+        return true;
+    }
+
+    /**
+     * Audit a response if its request was sampled or it is an error.
+     *
+     * @param sampled value returned by {@link #request} for the same call
+     */
+    public void response(String method, URI uri, int status, byte[] body, boolean sampled) {
+        var policy = policy(uri);
+        if (policy.level() == Level.NONE || (status < 400 && !sampled)) {
+            return;
+        }
+        offer(new RestAuditEvent(System.currentTimeMillis(), true, method, uri, status, policy.level() == Level.BODY ? body : null));
+    }
+
+    /**
+     * @return events dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write the events still buffered and stop the audit thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HostPolicy policy(URI uri) {
+        var host = uri.getHost();
+        var policy = host == null ? null : hostPolicies.get(host);
+        return policy == null ? defaultPolicy : policy;
+    }
+
+    private static boolean sampled(HostPolicy policy) {
+        return policy.sampleRate() >= 1 || ThreadLocalRandom.current().nextDouble() < policy.sampleRate();
+    }
+
+    private void offer(RestAuditEvent event) {
+        if (!buffer.offer(event)) {
+            dropped.incrementAndGet();
+        } else if (idle) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void run() {
+        while (running || buffer.size() > 0) {
+            if (buffer.drain(this::write, DRAIN_BATCH) == 0) {
+                if (!running) {
+                    break;
+                }
+                idle = true;
+                // an event offered before the flag was seen is found here, one offered after unparks
+                if (buffer.size() == 0 && running) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    private void write(RestAuditEvent event) {
+        try {
+            sink.write(event, render(event.body()));
+        } catch (RuntimeException e) {
+            log.error("Can't write audit of {}", event.uri(), e);
+        }
+    }
+
+    private String render(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        var text = new String(body, StandardCharsets.UTF_8);
+        if (redactPattern != null) {
+            text = redactPattern.matcher(text).replaceAll(m -> Matcher.quoteReplacement(m.group(1)) + "\"***\"");
+        }
+        if (text.length() > maxBodyChars) {
+            text = text.substring(0, maxBodyChars) + "...(" + body.length + " bytes)";
+        }
+        return text;
+    }
+
+    public enum Level {
+        /**
+         * Nothing is audited
+         */
+        NONE,
+        /**
+         * Method, url and status only
+         */
+        URL,
+        /**
+         * Method, url, status and body
+         */
+        BODY
+    }
+
+    /**
+     * @param level      what is audited
+     * @param sampleRate fraction of successful calls audited, between 0 and 1
+     */
+    public record HostPolicy(Level level, double sampleRate) {
+    }
+}
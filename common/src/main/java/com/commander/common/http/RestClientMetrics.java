@@ -0,0 +1,192 @@
+package com.commander.common.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Micrometer meters of outbound {@code RestClient} calls.
+ * <p>
+ * Meters are created once per host, uri template and status class and looked up afterwards by plain map reads, so
+ * recording a call that was already seen allocates nothing. The uri template is derived from the path by replacing
+ * id-like segments (numbers, UUIDs, long hex strings) with {@code {id}}; once {@code maxUriTags} templates exist,
+ * unknown paths are tagged {@code OTHER} to bound the number of time series. Hosts are bounded the same way: once
+ * {@code maxHostTags} hosts have meters, calls to other hosts, e.g. webhooks of caller-supplied urls, are recorded under
+ * host {@code OTHER}.
+ * <ul>
+ *   <li>{@code rest.client.requests} timer with percentile histogram, tags {@code host}, {@code uri}, {@code status}</li>
+ *   <li>{@code rest.client.in.flight} gauge, tag {@code host}</li>
+ *   <li>{@code rest.client.request.size} and {@code rest.client.response.size} summaries in bytes, tag {@code host}</li>
+ *   <li>{@code rest.client.timeouts} counter, tag {@code host}</li>
+ * </ul>
+ */
+public class RestClientMetrics {
+    private static final String NONE = "none";
+    private static final String OTHER = "OTHER";
+    private static final String[] STATUS_TAGS = {"IO_ERROR", "1xx", "2xx", "3xx", "4xx", "5xx", "TIMEOUT"};
+    private static final int IO_ERROR = 0;
+    private static final int TIMEOUT = 6;
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+
+    private final MeterRegistry registry;
+    private final int maxUriTags;
+    private final int maxHostTags;
+    private final int maxCachedPaths;
+    private final ConcurrentHashMap<String, HostMeters> hosts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> pathTemplates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> templates = new ConcurrentHashMap<>();
+
+    public RestClientMetrics(MeterRegistry registry) {
+        this(registry, 100);
+    }
+
+    public RestClientMetrics(MeterRegistry registry, int maxUriTags) {
+        this(registry, maxUriTags, 100);
+    }
+
+    public RestClientMetrics(MeterRegistry registry, int maxUriTags, int maxHostTags) {
+        this.registry = registry;
+        this.maxUriTags = maxUriTags;
+        this.maxHostTags = maxHostTags;
+        this.maxCachedPaths = maxUriTags * 100;
+    }
+
+    /**
+     * Mark a call as started.
+     *
+     * @return start time to pass to {@link #stop} or {@link #failed}
+     */
+    public long start(URI uri) {
+        host(uri).inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void stop(URI uri, long startNanos, int statusCode, long sentBytes, long receivedBytes) {
+        var elapsed = System.nanoTime() - startNanos;
+        var host = host(uri);
+        host.inFlight.decrementAndGet();
+        host.sent.record(sentBytes);
+        host.received.record(receivedBytes);
+        var statusClass = statusCode / 100;
+        host.timer(this, uri, statusClass >= 1 && statusClass <= 5 ? statusClass : IO_ERROR).record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    public void failed(URI uri, long startNanos, long sentBytes, Throwable error) {
+        var elapsed = System.nanoTime() - startNanos;
+        var host = host(uri);
+        host.inFlight.decrementAndGet();
+        host.sent.record(sentBytes);
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+            host.timeouts.increment();
+            host.timer(this, uri, TIMEOUT).record(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+            host.timer(this, uri, IO_ERROR).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private HostMeters host(URI uri) {
+        var name = uri.getHost() == null ? NONE : uri.getHost();
+        var host = hosts.get(name);
+        if (host != null) {
+            return host;
+        }
+        // concurrent first calls may overshoot the bound by a few hosts
+        return hosts.computeIfAbsent(hosts.size() >= maxHostTags ? OTHER : name, n -> new HostMeters(registry, n));
+    }
+
+    private String template(URI uri) {
+        var path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        var template = pathTemplates.get(path);
+        if (template != null) {
+            return template;
+        }
+        template = normalize(path);
+        if (templates.size() >= maxUriTags && !templates.containsKey(template)) {
+            template = OTHER;
+        } else {
+            templates.putIfAbsent(template, template);
+        }
+        if (pathTemplates.size() >= maxCachedPaths) {
+            pathTemplates.clear();
+        }
+        pathTemplates.put(path, template);
+        return template;
+    }
+
+    private static String normalize(String path) {
+        var segments = path.split("/", -1);
+        var sb = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length; ++i) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(ID_SEGMENT.matcher(segments[i]).matches() ? "{id}" : segments[i]);
+        }
+        return sb.toString();
+    }
+
+    private static class HostMeters {
+        private final String host;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Counter timeouts;
+        private final DistributionSummary sent;
+        private final DistributionSummary received;
+        private final ConcurrentHashMap<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+        HostMeters(MeterRegistry registry, String host) {
+            this.host = host;
+            Gauge.builder("rest.client.in.flight", inFlight, AtomicInteger::get)
+                    .description("Outbound calls waiting for a response")
+                    .tag("host", host)
+                    .register(registry);
+            timeouts = Counter.builder("rest.client.timeouts")
+                    .description("Outbound calls abandoned after their timeout")
+                    .tag("host", host)
+                    .register(registry);
+            sent = DistributionSummary.builder("rest.client.request.size")
+                    .baseUnit("bytes")
+                    .tag("host", host)
+                    .register(registry);
+            received = DistributionSummary.builder("rest.client.response.size")
+                    .baseUnit("bytes")
+                    .tag("host", host)
+                    .register(registry);
+        }
+
+        Timer timer(RestClientMetrics metrics, URI uri, int status) {
+            var template = metrics.template(uri);
+            var byStatus = timers.get(template);
+            if (byStatus == null) {
+                byStatus = timers.computeIfAbsent(template, t -> new Timer[STATUS_TAGS.length]);
+            }
+            var timer = byStatus[status];
+            if (timer == null) {
+                timer = Timer.builder("rest.client.requests")
+                        .description("Latency of outbound calls")
+                        .tag("host", host)
+                        .tag("uri", template)
+                        .tag("status", STATUS_TAGS[status])
+                        .publishPercentileHistogram()
+                        .register(metrics.registry);
+                byStatus[status] = timer;
+            }
+            return timer;
+        }
+    }
+}
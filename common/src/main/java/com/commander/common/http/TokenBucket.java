@@ -0,0 +1,91 @@
+package com.commander.common.http;
+
+/**
+ * Token bucket handing out permits at a steady rate with a burst allowance.
+ * <p>
+ * Permits are reserved rather than polled: {@link #reserve(long)} always succeeds and returns how long the caller
+ * has to wait before using its permit, so callers can wait without holding a thread. The rate adapts to throttling:
+ * {@link #throttled(long, long)} pauses the bucket and halves the rate, {@link #succeeded()} brings it back towards
+ * the configured rate step by step.
+ */
+public class TokenBucket {
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double INCREASE_STEP = 0.01;
+
+    private final double configuredRate;
+    private final double minRate;
+    private final double maxStoredPermits;
+    private double rate;
+    private double storedPermits;
+    private long nextFreeNanos;
+
+    /**
+     * @param permitsPerSecond steady rate, zero or negative for no limit apart from throttling pauses
+     * @param burst            permits that can be used at once after an idle period
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.configuredRate = permitsPerSecond;
+        this.minRate = permitsPerSecond / 100;
+        this.rate = permitsPerSecond;
+        // the permit at nextFreeNanos is free already, only the rest of the burst is stored
+        this.maxStoredPermits = Math.max(1, burst) - 1;
+        this.storedPermits = maxStoredPermits;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserve one permit.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return nanoseconds to wait before the permit can be used, 0 if it is available now
+     */
+    public synchronized long reserve(long nowNanos) {
+        if (nowNanos - nextFreeNanos > 0) {
+            if (rate > 0) {
+                storedPermits = Math.min(maxStoredPermits, storedPermits + (nowNanos - nextFreeNanos) / intervalNanos());
+            }
+            nextFreeNanos = nowNanos;
+        }
+        var wait = nextFreeNanos - nowNanos;
+        if (rate <= 0) {
+            return wait;
+        }
+        var fromStored = Math.min(1, storedPermits);
+        storedPermits -= fromStored;
+        nextFreeNanos += (long) ((1 - fromStored) * intervalNanos());
+        return wait;
+    }
+
+    /**
+     * The remote side rejected a call because of its quota.
+     *
+     * @param nowNanos        current {@link System#nanoTime()}
+     * @param retryAfterNanos pause requested by the remote side
+     */
+    public synchronized void throttled(long nowNanos, long retryAfterNanos) {
+        storedPermits = 0;
+        if (nowNanos + retryAfterNanos - nextFreeNanos > 0) {
+            nextFreeNanos = nowNanos + retryAfterNanos;
+        }
+        if (rate > 0) {
+            rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        }
+    }
+
+    /**
+     * The remote side accepted a call.
+     */
+    public synchronized void succeeded() {
+        if (rate > 0 && rate < configuredRate) {
+            rate = Math.min(configuredRate, rate + configuredRate * INCREASE_STEP);
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private double intervalNanos() {
+        return 1_000_000_000d / rate;
+    }
+}
@@ -0,0 +1,30 @@
+package com.commander.common.jpa;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Page whose total may be an estimate or a cached count, reported as {@code meta.approximate} by {@code Response}.
+ *
+ * @param <T> type of content
+ */
+public class ApproximatePage<T> extends PageImpl<T> {
+    private final boolean approximate;
+
+    public ApproximatePage(List<T> content, Pageable pageable, long total, boolean approximate) {
+        super(content, pageable, total);
+        this.approximate = approximate;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    @Override
+    public <U> ApproximatePage<U> map(Function<? super T, ? extends U> converter) {
+        return new ApproximatePage<>(getConvertedContent(converter), getPageable(), getTotalElements(), approximate);
+    }
+}
@@ -0,0 +1,87 @@
+package com.commander.common.jpa;
+
+import java.sql.Types;
+import java.util.function.Function;
+
+/**
+ * Column written by {@link BulkWriter}.
+ *
+ * @param name  column name in the table
+ * @param type  Postgres type of the column, which decides how the value is encoded
+ * @param value value of the column for a row, null written as SQL null
+ * @param <R>   type of row
+ */
+public record BulkColumn<R>(String name, Type type, Function<? super R, ?> value) {
+    /**
+     * Postgres column types and the Java values accepted for them
+     */
+    public enum Type {
+        /**
+         * {@code Long} or any {@code Number}
+         */
+        BIGINT(Types.BIGINT),
+        /**
+         * {@code Integer} or any {@code Number}
+         */
+        INTEGER(Types.INTEGER),
+        /**
+         * {@code Short} or any {@code Number}
+         */
+        SMALLINT(Types.SMALLINT),
+        /**
+         * {@code Double} or any {@code Number}
+         */
+        DOUBLE(Types.DOUBLE),
+        /**
+         * {@code Float} or any {@code Number}
+         */
+        REAL(Types.REAL),
+        /**
+         * {@code BigDecimal} or any {@code Number}
+         */
+        NUMERIC(Types.NUMERIC),
+        BOOLEAN(Types.BOOLEAN),
+        /**
+         * Any value, written with {@code toString()}, enums with {@code name()}
+         */
+        TEXT(Types.VARCHAR),
+        UUID(Types.OTHER),
+        /**
+         * {@code Instant} or {@code OffsetDateTime}
+         */
+        TIMESTAMPTZ(Types.TIMESTAMP_WITH_TIMEZONE),
+        /**
+         * {@code LocalDateTime}
+         */
+        TIMESTAMP(Types.TIMESTAMP),
+        /**
+         * {@code LocalDate}
+         */
+        DATE(Types.DATE),
+        /**
+         * {@code byte[]}
+         */
+        BYTEA(Types.BINARY),
+        /**
+         * JSON as a {@code String} or {@code byte[]}, other objects are encoded with {@code Json}
+         */
+        JSONB(Types.OTHER);
+
+        private final int sqlType;
+
+        Type(int sqlType) {
+            this.sqlType = sqlType;
+        }
+
+        /**
+         * {@link Types} code used to bind values of this type to a statement
+         */
+        public int sqlType() {
+            return sqlType;
+        }
+    }
+
+    public static <R> BulkColumn<R> of(String name, Type type, Function<? super R, ?> value) {
+        return new BulkColumn<>(name, type, value);
+    }
+}
@@ -0,0 +1,355 @@
+package com.commander.common.jpa;
+
+import com.commander.common.mapper.BeanMapper;
+import com.commander.common.util.Json;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Writes large numbers of rows to Postgres without going through the persistence context.
+ * <ul>
+ *   <li>{@code copy} streams rows with {@code COPY ... FROM STDIN (FORMAT BINARY)}: a single statement, no parsing of
+ *   values by the server, and only a {@code bufferSize} buffer held in memory. Fails on any duplicate key.</li>
+ *   <li>{@code upsert} runs {@code INSERT ... ON CONFLICT} as JDBC batches of {@code batchSize} rows, which the driver
+ *   rewrites into multi-row inserts when the url has {@code reWriteBatchedInserts=true}.</li>
+ * </ul>
+ * Connections are taken with {@link JdbcTemplate}, so both join the transaction of the caller if there is one. Entities
+ * written this way are not in the persistence context nor the second level cache.
+ */
+@Log4j2
+public class BulkWriter {
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final long POSTGRES_EPOCH_SECONDS = 946_684_800L;
+    private static final long POSTGRES_EPOCH_DAYS = 10_957L;
+    private static final BigInteger NUMERIC_BASE = BigInteger.valueOf(10_000);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final int bufferSize;
+
+    /**
+     * @param dataSource data source of the Postgres database
+     * @param batchSize  rows per JDBC batch of {@code upsert}
+     * @param bufferSize bytes buffered before they are sent by {@code copy}
+     */
+    public BulkWriter(DataSource dataSource, int batchSize, int bufferSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.batchSize = batchSize;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Copy {@code sources} mapped by {@code mapper} into {@code table}.
+     *
+     * @return number of rows written
+     */
+    public <T, R> long copy(String table, List<BulkColumn<R>> columns, Iterable<? extends T> sources, BeanMapper<T, R> mapper) {
+        var iterator = sources.iterator();
+        return copy(table, columns, new Iterator<R>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public R next() {
+                return mapper.map(iterator.next());
+            }
+        });
+    }
+
+    public <R> long copy(String table, List<BulkColumn<R>> columns, Iterable<? extends R> rows) {
+        return copy(table, columns, rows.iterator());
+    }
+
+    /**
+     * Copy {@code rows} into {@code table} with binary {@code COPY}, reading them one by one from {@code rows}.
+     *
+     * @return number of rows written
+     */
+    public <R> long copy(String table, List<BulkColumn<R>> columns, Iterator<? extends R> rows) {
+        var start = System.nanoTime();
+        var count = copyRows(table, columns, rows);
+        log.info("Copied {} rows into {} in {} ms", count, table, (System.nanoTime() - start) / 1_000_000);
+        return count;
+    }
+
+    /**
+     * {@link #copy} without its log, for callers copying small batches often
+     */
+    <R> long copyRows(String table, List<BulkColumn<R>> columns, Iterator<? extends R> rows) {
+        var sql = "copy " + table + " (" + names(columns) + ") from stdin (format binary)";
+        Long count = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            var copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql, bufferSize);
+            try {
+                var out = new DataOutputStream(copy);
+                out.write(COPY_SIGNATURE);
+                // flags and header extension length
+                out.writeInt(0);
+                out.writeInt(0);
+                while (rows.hasNext()) {
+                    var row = rows.next();
+                    out.writeShort(columns.size());
+                    for (var column : columns) {
+                        writeField(out, column.type(), column.value().apply(row));
+                    }
+                }
+                out.writeShort(-1);
+                out.flush();
+                return copy.endCopy();
+            } catch (IOException | RuntimeException e) {
+                cancel(copy);
+                if (e.getCause() instanceof SQLException sqlException) {
+                    throw sqlException;
+                }
+                throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+            }
+        });
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Insert {@code rows} into {@code table}, updating the other columns of rows whose {@code conflictColumns} already
+     * exist. Rows are read one by one and sent in batches of {@code batchSize}. Rows of a batch with the same values of
+     * {@code conflictColumns} are sent once, as the last of them, since a multi-row insert can't update a row twice.
+     *
+     * @param conflictColumns columns of a unique index of {@code table}
+     * @return number of rows sent
+     */
+    public <R> long upsert(String table, List<BulkColumn<R>> columns, List<String> conflictColumns, Iterable<? extends R> rows) {
+        var updates = columns.stream()
+                .map(BulkColumn::name)
+                .filter(name -> !conflictColumns.contains(name))
+                .map(name -> name + " = excluded." + name)
+                .collect(Collectors.joining(", "));
+        var sql = "insert into " + table + " (" + names(columns) + ") values ("
+                + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ") on conflict ("
+                + String.join(", ", conflictColumns) + ") " + (updates.isEmpty() ? "do nothing" : "do update set " + updates);
+        var keyColumns = columns.stream().filter(column -> conflictColumns.contains(column.name())).toList();
+        var start = System.nanoTime();
+        Long count = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> batch(connection, sql, columns, keyColumns, rows));
+        log.info("Upserted {} rows into {} in {} ms", count, table, (System.nanoTime() - start) / 1_000_000);
+        return count == null ? 0 : count;
+    }
+
+    private <R> long batch(Connection connection, String sql, List<BulkColumn<R>> columns, List<BulkColumn<R>> keyColumns,
+                           Iterable<? extends R> rows) throws SQLException {
+        long count = 0;
+        // rows of the next batch by conflict key, a later row replacing the earlier one of its key
+        var pending = new LinkedHashMap<List<Object>, R>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (var row : rows) {
+                pending.put(conflictKey(keyColumns, row), row);
+                if (pending.size() == batchSize) {
+                    count += execute(statement, columns, pending.values());
+                    pending.clear();
+                }
+            }
+            if (!pending.isEmpty()) {
+                count += execute(statement, columns, pending.values());
+            }
+        }
+        return count;
+    }
+
+    private static <R> int execute(PreparedStatement statement, List<BulkColumn<R>> columns, Collection<R> rows) throws SQLException {
+        for (var row : rows) {
+            for (int i = 0; i < columns.size(); ++i) {
+                var column = columns.get(i);
+                var value = column.value().apply(row);
+                if (value == null) {
+                    statement.setNull(i + 1, column.type().sqlType());
+                } else {
+                    statement.setObject(i + 1, bindValue(column.type(), value), column.type().sqlType());
+                }
+            }
+            statement.addBatch();
+        }
+        statement.executeBatch();
+        return rows.size();
+    }
+
+    /**
+     * Values of the conflict columns of {@code row}, unique to the row when one is null as nulls never conflict
+     */
+    private static <R> List<Object> conflictKey(List<BulkColumn<R>> keyColumns, R row) {
+        var key = new ArrayList<>(keyColumns.size());
+        for (var column : keyColumns) {
+            var value = column.value().apply(row);
+            if (value == null) {
+                return List.of(new Object());
+            }
+            key.add(value instanceof byte[] bytes ? ByteBuffer.wrap(bytes) : bindValue(column.type(), value));
+        }
+        return key;
+    }
+
+    private static String names(List<? extends BulkColumn<?>> columns) {
+        return columns.stream().map(BulkColumn::name).collect(Collectors.joining(", "));
+    }
+
+    private static void cancel(PGCopyOutputStream copy) {
+        try {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        } catch (SQLException e) {
+            log.warn("Can't cancel copy", e);
+        }
+    }
+
+    private static Object bindValue(BulkColumn.Type type, Object value) {
+        return switch (type) {
+            case TIMESTAMPTZ -> value instanceof Instant instant ? instant.atOffset(ZoneOffset.UTC) : value;
+            case TEXT -> value instanceof Enum<?> e ? e.name() : value.toString();
+            case JSONB -> new String(json(value), StandardCharsets.UTF_8);
+            default -> value;
+        };
+    }
+
+    /**
+     * Field of a binary {@code COPY} tuple: its length in bytes, -1 for null, then the value in network byte order
+     */
+    private static void writeField(DataOutputStream out, BulkColumn.Type type, Object value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        switch (type) {
+            case BIGINT -> {
+                out.writeInt(8);
+                out.writeLong(((Number) value).longValue());
+            }
+            case INTEGER -> {
+                out.writeInt(4);
+                out.writeInt(((Number) value).intValue());
+            }
+            case SMALLINT -> {
+                out.writeInt(2);
+                out.writeShort(((Number) value).shortValue());
+            }
+            case DOUBLE -> {
+                out.writeInt(8);
+                out.writeDouble(((Number) value).doubleValue());
+            }
+            case REAL -> {
+                out.writeInt(4);
+                out.writeFloat(((Number) value).floatValue());
+            }
+            case NUMERIC -> writeNumeric(out, value instanceof BigDecimal d ? d : new BigDecimal(value.toString()));
+            case BOOLEAN -> {
+                out.writeInt(1);
+                out.writeByte((Boolean) value ? 1 : 0);
+            }
+            case TEXT -> writeBytes(out, (value instanceof Enum<?> e ? e.name() : value.toString()).getBytes(StandardCharsets.UTF_8));
+            case UUID -> {
+                var uuid = (UUID) value;
+                out.writeInt(16);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            }
+            case TIMESTAMPTZ -> {
+                var instant = value instanceof OffsetDateTime offset ? offset.toInstant() : (Instant) value;
+                out.writeInt(8);
+                out.writeLong(micros(instant.getEpochSecond(), instant.getNano()));
+            }
+            case TIMESTAMP -> {
+                var dateTime = (LocalDateTime) value;
+                out.writeInt(8);
+                out.writeLong(micros(dateTime.toEpochSecond(ZoneOffset.UTC), dateTime.getNano()));
+            }
+            case DATE -> {
+                out.writeInt(4);
+                out.writeInt((int) (((LocalDate) value).toEpochDay() - POSTGRES_EPOCH_DAYS));
+            }
+            case BYTEA -> writeBytes(out, (byte[]) value);
+            case JSONB -> {
+                var json = json(value);
+                out.writeInt(json.length + 1);
+                // jsonb binary format version
+                out.writeByte(1);
+                out.write(json);
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] json(Object value) {
+        if (value instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (value instanceof String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+        return Json.encode(value);
+    }
+
+    /**
+     * Microseconds since the Postgres epoch, 2000-01-01 UTC
+     */
+    private static long micros(long epochSecond, int nano) {
+        return (epochSecond - POSTGRES_EPOCH_SECONDS) * 1_000_000L + nano / 1_000;
+    }
+
+    /**
+     * Numeric as base 10000 digits: count, weight of the first digit, sign, display scale, then the digits
+     */
+    static void writeNumeric(DataOutputStream out, BigDecimal value) throws IOException {
+        var scale = Math.max(value.scale(), 0);
+        // shift the value so that its last base 10000 digit is a whole one
+        var fractionDigits = (scale + 3) / 4;
+        var unscaled = value.abs().setScale(fractionDigits * 4).unscaledValue();
+        var digits = new ArrayList<Short>();
+        while (unscaled.signum() > 0) {
+            var divided = unscaled.divideAndRemainder(NUMERIC_BASE);
+            digits.add(0, divided[1].shortValue());
+            unscaled = divided[0];
+        }
+        var weight = digits.size() - fractionDigits - 1;
+        while (!digits.isEmpty() && digits.get(digits.size() - 1) == 0) {
+            digits.remove(digits.size() - 1);
+        }
+        if (digits.isEmpty()) {
+            weight = 0;
+        }
+        out.writeInt(8 + 2 * digits.size());
+        out.writeShort(digits.size());
+        out.writeShort(weight);
+        out.writeShort(value.signum() < 0 ? 0x4000 : 0);
+        out.writeShort(scale);
+        for (var digit : digits) {
+            out.writeShort(digit);
+        }
+    }
+}
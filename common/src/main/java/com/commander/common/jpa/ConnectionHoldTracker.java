@@ -0,0 +1,187 @@
+package com.commander.common.jpa;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times how long the connections of a {@link #wrap wrapped} data source are held, from {@code getConnection} to
+ * {@code close}, by controller endpoint: with JPA this is the duration of each transaction. Blocking I/O done by a
+ * thread holding a connection keeps the connection away from the pool for as long as it waits, so outbound calls
+ * {@link #ioStarted started} while holding one are timed as well and logged when slower than {@code slowIo}.
+ * <ul>
+ *   <li>{@code datasource.connection.hold} timer with percentile histogram, tag {@code endpoint}</li>
+ *   <li>{@code datasource.connection.held.io} timer of outbound calls made while holding a connection, tags
+ *   {@code endpoint}, {@code host}, {@code multi} for concurrent calls to several hosts</li>
+ * </ul>
+ * The endpoint is the HTTP method and the matched pattern of the controller, e.g. {@code GET /items/{id}},
+ * {@code none} outside of a request.
+ */
+@Log4j2
+public class ConnectionHoldTracker {
+    static final String NONE = "none";
+    static final String MULTI = "multi";
+    private static final String UNMAPPED = "UNMAPPED";
+    /**
+     * Connections held by each thread, decremented by the thread closing them, which may be another one
+     */
+    private static final ThreadLocal<AtomicInteger> HELD = ThreadLocal.withInitial(AtomicInteger::new);
+
+    private final MeterRegistry registry;
+    private final long slowIoNanos;
+    private final ConcurrentHashMap<String, Timer> holds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> heldIo = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry registry of the timers
+     * @param slowIo   outbound calls made while holding a connection are logged from this duration
+     */
+    public ConnectionHoldTracker(MeterRegistry registry, Duration slowIo) {
+        this.registry = registry;
+        this.slowIoNanos = slowIo.toNanos();
+    }
+
+    /**
+     * Data source timing its connections
+     */
+    public DataSource wrap(DataSource dataSource) {
+        return new TrackingDataSource(dataSource);
+    }
+
+    /**
+     * Whether the current thread holds a connection of a wrapped data source
+     */
+    public static boolean isHoldingConnection() {
+        return HELD.get().get() > 0;
+    }
+
+    /**
+     * Mark the start of an outbound call on the calling thread.
+     *
+     * @return call to mark {@link HeldIo#done} once it completed, null when the thread holds no connection
+     */
+    public HeldIo ioStarted(URI target) {
+        if (!isHoldingConnection()) {
+            return null;
+        }
+        return new HeldIo(endpoint(), host(target), target, System.nanoTime());
+    }
+
+    /**
+     * Mark the start of outbound calls run concurrently while the calling thread waits for all of them, timed as one
+     * call to their host, or to {@code multi} when they go to several hosts.
+     *
+     * @return call to mark {@link HeldIo#done} once all completed, null when the thread holds no connection
+     */
+    public HeldIo ioStarted(Collection<URI> targets) {
+        if (targets.isEmpty() || !isHoldingConnection()) {
+            return null;
+        }
+        var hosts = targets.stream().map(ConnectionHoldTracker::host).distinct().toList();
+        return new HeldIo(endpoint(), hosts.size() == 1 ? hosts.get(0) : MULTI, targets.size() + " calls to " + hosts, System.nanoTime());
+    }
+
+    private Connection track(Connection connection) {
+        var endpoint = endpoint();
+        var start = System.nanoTime();
+        var held = HELD.get();
+        held.incrementAndGet();
+        var closed = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && !closed[0]) {
+                closed[0] = true;
+                // counted by the thread that opened it, even when closed by another one
+                held.decrementAndGet();
+                hold(endpoint).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+
+    private Timer hold(String endpoint) {
+        var timer = holds.get(endpoint);
+        return timer != null ? timer : holds.computeIfAbsent(endpoint, e -> Timer.builder("datasource.connection.hold")
+                .description("Time a connection is held, from its acquisition to its release")
+                .tag("endpoint", e)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    private static String host(URI target) {
+        return target.getHost() == null ? NONE : target.getHost();
+    }
+
+    private static String endpoint() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return NONE;
+        }
+        var request = attributes.getRequest();
+        var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : UNMAPPED);
+    }
+
+    /**
+     * Outbound call started while holding a connection
+     */
+    public final class HeldIo {
+        private final String endpoint;
+        private final String host;
+        private final Object target;
+        private final long start;
+
+        private HeldIo(String endpoint, String host, Object target, long start) {
+            this.endpoint = endpoint;
+            this.host = host;
+            this.target = target;
+            this.start = start;
+        }
+
+        public void done() {
+            var elapsed = System.nanoTime() - start;
+            heldIo.computeIfAbsent(endpoint + " " + host, k -> Timer.builder("datasource.connection.held.io")
+                    .description("Outbound calls made while holding a connection")
+                    .tag("endpoint", endpoint)
+                    .tag("host", host)
+                    .register(registry)).record(elapsed, TimeUnit.NANOSECONDS);
+            if (elapsed >= slowIoNanos) {
+                log.warn("{} held a connection during a {} ms call to {}", endpoint, TimeUnit.NANOSECONDS.toMillis(elapsed), target);
+            }
+        }
+    }
+
+    private class TrackingDataSource extends DelegatingDataSource {
+        private TrackingDataSource(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return track(obtainTargetDataSource().getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return track(obtainTargetDataSource().getConnection(username, password));
+        }
+    }
+}
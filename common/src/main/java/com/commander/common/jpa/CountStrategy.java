@@ -0,0 +1,20 @@
+package com.commander.common.jpa;
+
+/**
+ * How {@link PageFinder} computes the total of a page.
+ */
+public enum CountStrategy {
+    /**
+     * {@code count(*)} on every request.
+     */
+    EXACT,
+    /**
+     * {@code count(*)} once per query shape and parameter values, then served from cache until its TTL expires.
+     */
+    CACHED,
+    /**
+     * Row estimate of the Postgres planner ({@code EXPLAIN}, based on {@code pg_class.reltuples} and column
+     * statistics), exact below a threshold where counting is cheap anyway.
+     */
+    ESTIMATED
+}
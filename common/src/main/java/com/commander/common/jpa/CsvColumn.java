@@ -0,0 +1,16 @@
+package com.commander.common.jpa;
+
+import java.util.function.Function;
+
+/**
+ * Column of a CSV export.
+ *
+ * @param header name written in the header line
+ * @param value  value of the column for a row, written with {@code toString()}, null written as an empty field
+ * @param <R>    type of row
+ */
+public record CsvColumn<R>(String header, Function<? super R, ?> value) {
+    public static <R> CsvColumn<R> of(String header, Function<? super R, ?> value) {
+        return new CsvColumn<>(header, value);
+    }
+}
@@ -0,0 +1,54 @@
+package com.commander.common.jpa;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.function.Supplier;
+
+/**
+ * Turns the queries Hibernate prepares into {@code EXPLAIN (FORMAT JSON)} while {@link #explain(Supplier)} runs, so
+ * the plan of a criteria query can be read with its parameters bound exactly as Hibernate binds them. Other statements,
+ * such as the inserts and updates of an automatic flush, run unchanged.
+ */
+public class ExplainStatementInspector implements StatementInspector {
+    private static final ThreadLocal<Boolean> EXPLAIN = new ThreadLocal<>();
+
+    /**
+     * Run {@code query} with its statements explained instead of executed. The query must select a single
+     * {@code String} column, which receives the JSON plan. It should not flush, see {@code FlushModeType.COMMIT}.
+     */
+    public static <T> T explain(Supplier<T> query) {
+        EXPLAIN.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            EXPLAIN.remove();
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        return EXPLAIN.get() == null || !isQuery(sql) ? sql : "explain (format json) " + sql;
+    }
+
+    /**
+     * Whether {@code sql} starts with {@code select} or {@code with}, after the comments of
+     * {@code hibernate.use_sql_comments}
+     */
+    static boolean isQuery(String sql) {
+        var i = 0;
+        while (i < sql.length()) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                ++i;
+            } else if (sql.startsWith("/*", i)) {
+                var end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return false;
+                }
+                i = end + 2;
+            } else {
+                break;
+            }
+        }
+        return sql.regionMatches(true, i, "select", 0, 6) || sql.regionMatches(true, i, "with", 0, 4);
+    }
+}
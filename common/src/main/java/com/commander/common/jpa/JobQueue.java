@@ -0,0 +1,331 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.Json;
+import com.commander.common.util.JsonObject;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background jobs stored in a Postgres table, shared by every node running a {@link #subscribe subscription} to the
+ * same queue, without a broker.
+ * <p>
+ * A subscription claims due jobs by highest priority then earliest {@code scheduled_at}, as many as it has free
+ * workers, with one {@code FOR UPDATE SKIP LOCKED} statement: nodes never wait on each other's claims. A claim sets
+ * {@code lease_expires_at} and commits at once, so no connection is held while a job runs; jobs of a node that dies
+ * are claimed again once their lease expires. Each job runs on its own virtual thread, then its row is deleted, or
+ * rescheduled with exponential backoff when the handler throws. Jobs failing {@code maxAttempts} times are left in the
+ * table with their last error and {@code scheduled_at = 'infinity'}, out of the partial index claims read.
+ * <p>
+ * {@link #enqueue} notifies {@code channel} in the transaction of the insert, and one connection per node listens to
+ * it, so subscriptions claim a job as soon as it is committed; {@code pollInterval} only bounds the delay of scheduled
+ * jobs, retries and missed notifications. Delivery is at least once: a job outliving its lease may run twice.
+ * The table is created by {@code config/db-mirgration/job.sql}.
+ */
+@Log4j2
+public class JobQueue implements AutoCloseable {
+    private static final int LISTEN_TIMEOUT_MILLIS = 500;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String channel;
+    private final long pollIntervalNanos;
+    private final long leaseMillis;
+    private final RetryPolicy retryPolicy;
+    private final MeterRegistry registry;
+    private final String enqueueSql;
+    private final String claimSql;
+    private final String deleteSql;
+    private final String rescheduleSql;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Thread listener;
+    private volatile boolean running = true;
+
+    /**
+     * @param dataSource   data source of the Postgres database
+     * @param table        job table
+     * @param channel      channel notified of new jobs
+     * @param pollInterval wait between two claims finding less jobs than free workers, cut short by notifications
+     * @param lease        time a claimed job is hidden from other claims, longer than a job can take
+     * @param maxAttempts  attempts before a job is given up
+     * @param backoff      delay before the second attempt, doubled at each attempt
+     * @param maxBackoff   longest delay between two attempts
+     * @param registry     registry of the {@code jobs.run} timer, may be null to disable metrics
+     */
+    public JobQueue(DataSource dataSource, String table, String channel, Duration pollInterval, Duration lease, int maxAttempts,
+                    Duration backoff, Duration maxBackoff, MeterRegistry registry) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.channel = channel;
+        this.pollIntervalNanos = pollInterval.toNanos();
+        this.leaseMillis = lease.toMillis();
+        this.retryPolicy = new RetryPolicy(maxAttempts, backoff, maxBackoff);
+        this.registry = registry;
+        this.enqueueSql = "insert into " + table + " (queue, payload, priority, scheduled_at) values (?, ?, ?, coalesce(?, now()))"
+                + " returning id, pg_notify(?, queue)";
+        // scheduled_at < 'infinity' matches the partial claim index, which leaves given up jobs out
+        this.claimSql = "update " + table + " set lease_expires_at = now() + ? * interval '1 millisecond', attempts = attempts + 1"
+                + " where id in (select id from " + table + " where queue = ? and scheduled_at <= now() and attempts < ?"
+                + " and scheduled_at < 'infinity'"
+                + " and (lease_expires_at is null or lease_expires_at <= now())"
+                + " order by priority desc, scheduled_at, id limit ? for update skip locked)"
+                + " returning id, queue, payload, priority, attempts";
+        this.deleteSql = "delete from " + table + " where id = ?";
+        this.rescheduleSql = "update " + table + " set scheduled_at = coalesce(now() + ? * interval '1 millisecond', 'infinity'),"
+                + " lease_expires_at = null, last_error = ? where id = ?";
+    }
+
+    public long enqueue(String queue, JsonObject payload) {
+        return enqueue(queue, payload, 0, null);
+    }
+
+    /**
+     * Add a job, in the transaction of the caller if there is one: subscriptions see it once that transaction commits.
+     *
+     * @param priority    jobs of higher priority are claimed first
+     * @param scheduledAt time from which the job may run, null to run it now
+     * @return id of the job
+     */
+    public long enqueue(String queue, JsonObject payload, int priority, Instant scheduledAt) {
+        return jdbcTemplate.query(enqueueSql, ps -> {
+            ps.setString(1, queue);
+            ps.setObject(2, payload == null ? null : Json.encodeToString(payload), Types.OTHER);
+            ps.setInt(3, priority);
+            ps.setTimestamp(4, scheduledAt == null ? null : Timestamp.from(scheduledAt));
+            ps.setString(5, channel);
+        }, rs -> {
+            rs.next();
+            return rs.getLong(1);
+        });
+    }
+
+    /**
+     * Run the jobs of {@code queue} on this node with {@code handler}, at most {@code concurrency} at a time. A job is
+     * done when {@code handler} returns, and retried when it throws.
+     */
+    public synchronized void subscribe(String queue, int concurrency, Handler handler) {
+        if (!running) {
+            throw new IllegalStateException("JobQueue is closed");
+        }
+        if (subscriptions.containsKey(queue)) {
+            throw new IllegalStateException("Already subscribed to " + queue);
+        }
+        subscriptions.put(queue, new Subscription(queue, concurrency, handler));
+        if (listener == null) {
+            listener = Thread.ofPlatform().name("job-listener").daemon().start(this::listen);
+        }
+    }
+
+    /**
+     * Stop claiming jobs and wait for the running ones. Jobs not finished in time are claimed again once their lease
+     * expires.
+     */
+    @Override
+    public void close() {
+        running = false;
+        var thread = listener;
+        try {
+            if (thread != null) {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+            for (var subscription : subscriptions.values()) {
+                LockSupport.unpark(subscription.claimer);
+                subscription.claimer.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Jobs still running after 30 s, left to their lease");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hold one connection listening to {@code channel} and wake the subscription of each notified queue up
+     */
+    private void listen() {
+        while (running) {
+            try (var connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (var statement = connection.createStatement()) {
+                    statement.execute("listen \"" + channel.replace("\"", "\"\"") + "\"");
+                }
+                // notifications sent while not listening are lost
+                subscriptions.values().forEach(Subscription::wakeUp);
+                var pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    var notifications = pgConnection.getNotifications(LISTEN_TIMEOUT_MILLIS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (var notification : notifications) {
+                        var subscription = subscriptions.get(notification.getParameter());
+                        if (subscription != null) {
+                            subscription.wakeUp();
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.warn("Can't listen to {}, polling until reconnected", channel, e);
+                    LockSupport.parkNanos(pollIntervalNanos);
+                }
+            }
+        }
+    }
+
+    private List<Job> claim(String queue, int limit) {
+        return jdbcTemplate.query(claimSql, JobQueue::job, leaseMillis, queue, retryPolicy.maxAttempts(), limit);
+    }
+
+    private void run(Subscription subscription, Job job) {
+        var start = System.nanoTime();
+        String outcome;
+        try {
+            subscription.handler.handle(job);
+            jdbcTemplate.update(deleteSql, job.id());
+            outcome = "done";
+        } catch (Exception e) {
+            outcome = fail(subscription, job, e);
+        }
+        if (registry != null) {
+            Timer.builder("jobs.run")
+                    .tag("queue", job.queue())
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String fail(Subscription subscription, Job job, Exception e) {
+        var error = RetryPolicy.lastError(e.toString());
+        var delay = retryPolicy.delayMillis(job.attempts());
+        try {
+            jdbcTemplate.update(rescheduleSql, new SqlParameterValue(Types.BIGINT, delay), error, job.id());
+        } catch (RuntimeException updateError) {
+            // the lease makes the job due again
+            log.error("Can't reschedule job {} of {}", job.id(), job.queue(), updateError);
+        }
+        if (delay == null) {
+            log.error("Job {} of {} given up after {} attempts", job.id(), job.queue(), job.attempts(), e);
+            return "dead";
+        }
+        log.warn("Job {} of {} failed, attempt {} of {} in {} ms: {}", job.id(), job.queue(), job.attempts(), retryPolicy.maxAttempts(),
+                delay, error);
+        if (TimeUnit.MILLISECONDS.toNanos(delay) < pollIntervalNanos) {
+            // no notification for a retry, the next poll would be late
+            executor.execute(() -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+                subscription.wakeUp();
+            });
+        }
+        return "retried";
+    }
+
+    private static Job job(ResultSet rs, int rowNum) throws SQLException {
+        var payload = rs.getString("payload");
+        return new Job(rs.getLong("id"), rs.getString("queue"), payload == null ? null : new JsonObject(payload),
+                rs.getInt("priority"), rs.getInt("attempts"));
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(Job job) throws Exception;
+    }
+
+    /**
+     * @param attempts 1 on the first run
+     */
+    public record Job(long id, String queue, JsonObject payload, int priority, int attempts) {
+    }
+
+    /**
+     * Claims the jobs of one queue for its free workers, from its own virtual thread
+     */
+    private class Subscription {
+        private final String queue;
+        private final Handler handler;
+        private final Semaphore workers;
+        private final Thread claimer;
+        /**
+         * Set by {@link #wakeUp}, as the permit of {@code unpark} can be taken by the wait for a worker
+         */
+        private final AtomicBoolean notified = new AtomicBoolean();
+
+        private Subscription(String queue, int concurrency, Handler handler) {
+            this.queue = queue;
+            this.handler = handler;
+            this.workers = new Semaphore(concurrency);
+            this.claimer = Thread.ofVirtual().name("job-claimer-" + queue).start(this::claimLoop);
+        }
+
+        private void wakeUp() {
+            notified.set(true);
+            LockSupport.unpark(claimer);
+        }
+
+        private void claimLoop() {
+            while (running) {
+                try {
+                    // not interrupted by close, which would close the socket of a connection in use
+                    if (!workers.tryAcquire(LISTEN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                var free = 1 + workers.drainPermits();
+                // jobs notified from now on may be committed after the claim
+                notified.set(false);
+                List<Job> jobs;
+                try {
+                    jobs = claim(queue, free);
+                } catch (RuntimeException e) {
+                    log.error("Can't claim jobs of {}", queue, e);
+                    jobs = List.of();
+                }
+                workers.release(free - jobs.size());
+                for (var job : jobs) {
+                    executor.execute(() -> {
+                        try {
+                            JobQueue.this.run(this, job);
+                        } finally {
+                            workers.release();
+                        }
+                    });
+                }
+                if (jobs.size() < free && running && !notified.getAndSet(false)) {
+                    LockSupport.parkNanos(pollIntervalNanos);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.JsonArray;
+
+public class JsonArrayType extends JsonbType<JsonArray> {
+    public JsonArrayType() {
+        super(JsonArray.class, JsonArray::new, JsonArray::copy);
+    }
+}
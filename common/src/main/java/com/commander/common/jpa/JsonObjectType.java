@@ -0,0 +1,9 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.JsonObject;
+
+public class JsonObjectType extends JsonbType<JsonObject> {
+    public JsonObjectType() {
+        super(JsonObject.class, JsonObject::new, JsonObject::copy);
+    }
+}
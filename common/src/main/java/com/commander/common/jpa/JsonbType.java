@@ -0,0 +1,87 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.Json;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.type.SqlTypes;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Postgres {@code jsonb} column read and written as text through the dsl-json {@link Json} codec. Registered for
+ * {@code JsonObject} and {@code JsonArray} attributes by {@link JsonbTypeContributor}.
+ */
+public abstract class JsonbType<T> implements UserType<T> {
+    private final Class<T> type;
+    private final Function<String, T> decoder;
+    private final UnaryOperator<T> copier;
+
+    protected JsonbType(Class<T> type, Function<String, T> decoder, UnaryOperator<T> copier) {
+        this.type = type;
+        this.decoder = decoder;
+        this.copier = copier;
+    }
+
+    @Override
+    public int getSqlType() {
+        return SqlTypes.JSON;
+    }
+
+    @Override
+    public Class<T> returnedClass() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(T x, T y) {
+        return Objects.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(T x) {
+        return Objects.hashCode(x);
+    }
+
+    @Override
+    public T nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner) throws SQLException {
+        var json = rs.getString(position);
+        return json == null ? null : decoder.apply(json);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, T value, int index, SharedSessionContractImplementor session) throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.OTHER);
+        } else {
+            // untyped text, converted by Postgres to the jsonb of the column
+            st.setObject(index, Json.encodeToString(value), Types.OTHER);
+        }
+    }
+
+    @Override
+    public T deepCopy(T value) {
+        return value == null ? null : copier.apply(value);
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(T value) {
+        return value == null ? null : Json.encodeToString(value);
+    }
+
+    @Override
+    public T assemble(Serializable cached, Object owner) {
+        return cached == null ? null : decoder.apply((String) cached);
+    }
+}
@@ -0,0 +1,17 @@
+package com.commander.common.jpa;
+
+import org.hibernate.boot.model.TypeContributions;
+import org.hibernate.boot.model.TypeContributor;
+import org.hibernate.service.ServiceRegistry;
+
+/**
+ * Maps {@code JsonObject} and {@code JsonArray} attributes to {@code jsonb} columns in every Hibernate session factory,
+ * registered through {@code META-INF/services}.
+ */
+public class JsonbTypeContributor implements TypeContributor {
+    @Override
+    public void contribute(TypeContributions typeContributions, ServiceRegistry serviceRegistry) {
+        typeContributions.contributeType(new JsonObjectType());
+        typeContributions.contributeType(new JsonArrayType());
+    }
+}
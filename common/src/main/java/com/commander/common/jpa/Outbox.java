@@ -0,0 +1,63 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.Json;
+import com.commander.common.util.RestCall;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Types;
+
+/**
+ * Transactional outbox of outbound calls: instead of calling a downstream service inline, a request inserts the call
+ * into the outbox table in its own transaction, and {@link OutboxDispatcher} sends it once that transaction has
+ * committed. The call is then made if and only if the transaction commits, and the request only waits for a local
+ * insert.
+ * <p>
+ * The row is written with {@link JdbcTemplate}, so it joins the JPA or JDBC transaction of the caller; without one it
+ * is committed at once. The table is created by {@code config/db-mirgration/outbox.sql}.
+ */
+public class Outbox {
+    private final JdbcTemplate jdbcTemplate;
+    private final String insertSql;
+    private final Runnable onCommit;
+
+    /**
+     * @param dataSource data source of the Postgres database
+     * @param table      outbox table
+     * @param onCommit   run after the transaction of an insert commits, e.g. {@link OutboxDispatcher#wakeUp}, may be null
+     */
+    public Outbox(DataSource dataSource, String table, Runnable onCommit) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.insertSql = "insert into " + table + " (method, uri, headers, body) values (?, ?, ?, ?)";
+        this.onCommit = onCommit;
+    }
+
+    /**
+     * Queue {@code call} for dispatch once the current transaction commits. Its reader is not used: the call succeeds
+     * on any 2xx response.
+     */
+    public void enqueue(RestCall<?> call) {
+        var headers = call.headers() == null || call.headers().isEmpty() ? null : Json.encodeToString(call.headers());
+        jdbcTemplate.update(insertSql, ps -> {
+            ps.setString(1, call.method());
+            ps.setString(2, call.uri().toString());
+            ps.setObject(3, headers, Types.OTHER);
+            ps.setBytes(4, call.body());
+        });
+        if (onCommit == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    onCommit.run();
+                }
+            });
+        } else {
+            onCommit.run();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.JsonObject;
+import com.commander.common.util.RestCall;
+import com.commander.common.util.RestClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the calls queued by {@link Outbox} through {@link RestClient}, from a single daemon thread.
+ * <p>
+ * Each round claims up to {@code batchSize} due rows with {@code FOR UPDATE SKIP LOCKED}, so several instances share
+ * the table without waiting on each other. Claiming is one autocommit statement that pushes {@code available_at} of
+ * the rows a {@code lease} ahead: no transaction or connection is held while the calls run, and rows of an instance
+ * that dies are claimed again once the lease is over. The calls are sent at most {@code concurrency} at a time, then
+ * sent rows are deleted and failed ones rescheduled with exponential backoff, each with a single statement.
+ * <p>
+ * Delivery is at least once: a call outliving its lease may be sent twice, so every call carries an
+ * {@value #IDEMPOTENCY_KEY} header with the id of its row. Calls answered with a 4xx other than 408 and 429, or failed
+ * {@code maxAttempts} times, are left in the table with their last error and {@code available_at = 'infinity'}, at the
+ * end of the index claims read, so they are never scanned again.
+ */
+@Log4j2
+public class OutboxDispatcher implements AutoCloseable {
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RestClient restClient;
+    private final int batchSize;
+    private final long pollIntervalNanos;
+    private final long leaseMillis;
+    private final RetryPolicy retryPolicy;
+    private final Semaphore inFlight;
+    private final String claimSql;
+    private final String deleteSql;
+    private final String rescheduleSql;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter dead;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * @param dataSource   data source of the Postgres database
+     * @param table        outbox table
+     * @param restClient   client sending the calls
+     * @param batchSize    rows claimed per round
+     * @param concurrency  calls in flight at most
+     * @param pollInterval wait between two rounds finding less than {@code batchSize} rows, cut short by {@link #wakeUp}
+     * @param lease        time a claimed row is hidden from other rounds, longer than a call can take
+     * @param maxAttempts  attempts before a call is given up
+     * @param backoff      delay before the second attempt, doubled at each attempt
+     * @param maxBackoff   longest delay between two attempts
+     * @param registry     registry of the {@code outbox.dispatched} counter, may be null to disable metrics
+     */
+    public OutboxDispatcher(DataSource dataSource, String table, RestClient restClient, int batchSize, int concurrency,
+                            Duration pollInterval, Duration lease, int maxAttempts, Duration backoff, Duration maxBackoff,
+                            MeterRegistry registry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.restClient = restClient;
+        this.batchSize = batchSize;
+        this.pollIntervalNanos = pollInterval.toNanos();
+        this.leaseMillis = lease.toMillis();
+        this.retryPolicy = new RetryPolicy(maxAttempts, backoff, maxBackoff);
+        this.inFlight = new Semaphore(concurrency);
+        this.claimSql = "update " + table + " set available_at = now() + ? * interval '1 millisecond', attempts = attempts + 1"
+                + " where id in (select id from " + table + " where available_at <= now() and attempts < ?"
+                + " order by available_at, id limit ? for update skip locked)"
+                + " returning id, method, uri, headers, body, attempts";
+        this.deleteSql = "delete from " + table + " where id = any(?)";
+        this.rescheduleSql = "update " + table + " o set available_at = coalesce(now() + f.delay * interval '1 millisecond', 'infinity'),"
+                + " attempts = f.attempts, last_error = f.error"
+                + " from unnest(?, ?, ?, ?) f(id, delay, attempts, error) where o.id = f.id";
+        this.sent = registry == null ? null : counter(registry, "sent");
+        this.retried = registry == null ? null : counter(registry, "retried");
+        this.dead = registry == null ? null : counter(registry, "dead");
+        this.worker = Thread.ofPlatform().name("outbox-dispatcher").daemon().start(this::run);
+    }
+
+    /**
+     * Start the next round now instead of after the poll interval
+     */
+    public void wakeUp() {
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Finish the current round and stop the dispatcher thread. Rows not claimed yet stay for the next start.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            int claimed;
+            try {
+                claimed = dispatch();
+            } catch (RuntimeException e) {
+                log.error("Can't dispatch outbox", e);
+                claimed = 0;
+            }
+            if (claimed < batchSize && running) {
+                LockSupport.parkNanos(pollIntervalNanos);
+            }
+        }
+    }
+
+    /**
+     * Claim one batch, send it and record the outcomes
+     *
+     * @return rows claimed
+     */
+    int dispatch() {
+        var rows = jdbcTemplate.query(claimSql, OutboxDispatcher::row, leaseMillis, retryPolicy.maxAttempts(), batchSize);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        var futures = new ArrayList<CompletableFuture<Failure>>(rows.size());
+        for (var row : rows) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                // the leases of the rows not sent make them due again later
+                Thread.currentThread().interrupt();
+                break;
+            }
+            futures.add(send(row).whenComplete((failure, e) -> inFlight.release()));
+        }
+        var done = new ArrayList<Long>(futures.size());
+        var failures = new ArrayList<Failure>();
+        for (int i = 0; i < futures.size(); ++i) {
+            var failure = futures.get(i).join();
+            if (failure == null) {
+                done.add(rows.get(i).id());
+            } else {
+                failures.add(failure);
+            }
+        }
+        if (!done.isEmpty()) {
+            jdbcTemplate.update(con -> {
+                var ps = con.prepareStatement(deleteSql);
+                ps.setArray(1, con.createArrayOf("bigint", done.toArray()));
+                return ps;
+            });
+            increment(sent, done.size());
+        }
+        if (!failures.isEmpty()) {
+            reschedule(failures);
+        }
+        return rows.size();
+    }
+
+    /**
+     * @return the failure of the call, null once it is sent
+     */
+    private CompletableFuture<Failure> send(Row row) {
+        RestCall<?> call;
+        try {
+            var headers = new HashMap<String, String>(row.headers());
+            headers.putIfAbsent(IDEMPOTENCY_KEY, Long.toString(row.id()));
+            call = new RestCall<>(row.method(), URI.create(row.uri()), headers, row.body(), null);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(new Failure(row, false, e.toString()));
+        }
+        try {
+            return restClient.send(call).handle((response, e) -> {
+                if (e != null) {
+                    var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    return new Failure(row, true, cause.toString());
+                }
+                return outcome(row, response);
+            });
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(new Failure(row, true, e.toString()));
+        }
+    }
+
+    private static Failure outcome(Row row, HttpResponse<byte[]> response) {
+        var status = response.statusCode();
+        if (status >= 200 && status < 300) {
+            return null;
+        }
+        var retryable = status >= 500 || status == 408 || status == 429;
+        return new Failure(row, retryable, status + " " + new String(response.body(), StandardCharsets.UTF_8));
+    }
+
+    private void reschedule(List<Failure> failures) {
+        var ids = new Long[failures.size()];
+        var delays = new Long[failures.size()];
+        var attempts = new Integer[failures.size()];
+        var errors = new String[failures.size()];
+        for (int i = 0; i < failures.size(); ++i) {
+            var failure = failures.get(i);
+            var row = failure.row();
+            ids[i] = row.id();
+            delays[i] = failure.retryable() ? retryPolicy.delayMillis(row.attempts()) : null;
+            var given = delays[i] == null;
+            attempts[i] = given ? Math.max(retryPolicy.maxAttempts(), row.attempts()) : row.attempts();
+            errors[i] = RetryPolicy.lastError(failure.error());
+            if (given) {
+                log.error("Outbox call {} {} of row {} given up after {} attempts: {}", row.method(), row.uri(), row.id(),
+                        row.attempts(), errors[i]);
+                increment(dead, 1);
+            } else {
+                log.warn("Outbox call {} {} of row {} failed, attempt {} of {} in {} ms: {}", row.method(), row.uri(), row.id(),
+                        row.attempts(), retryPolicy.maxAttempts(), delays[i], errors[i]);
+                increment(retried, 1);
+            }
+        }
+        jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(rescheduleSql);
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            ps.setArray(2, con.createArrayOf("bigint", delays));
+            ps.setArray(3, con.createArrayOf("integer", attempts));
+            ps.setArray(4, con.createArrayOf("text", errors));
+            return ps;
+        });
+    }
+
+    private static Row row(ResultSet rs, int rowNum) throws SQLException {
+        var headersJson = rs.getString("headers");
+        var headers = new HashMap<String, String>();
+        if (headersJson != null) {
+            new JsonObject(headersJson).forEach(e -> headers.put(e.getKey(), String.valueOf(e.getValue())));
+        }
+        return new Row(rs.getLong("id"), rs.getString("method"), rs.getString("uri"), headers, rs.getBytes("body"),
+                rs.getInt("attempts"));
+    }
+
+    private static Counter counter(MeterRegistry registry, String outcome) {
+        return Counter.builder("outbox.dispatched").tag("outcome", outcome).register(registry);
+    }
+
+    private static void increment(Counter counter, int amount) {
+        if (counter != null) {
+            counter.increment(amount);
+        }
+    }
+
+    private record Row(long id, String method, String uri, Map<String, String> headers, byte[] body, int attempts) {
+    }
+
+    /**
+     * @param retryable whether the call may succeed if sent again
+     */
+    private record Failure(Row row, boolean retryable, String error) {
+    }
+}
@@ -0,0 +1,406 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.Json;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.Attribute;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.query.criteria.JpaExpression;
+import org.hibernate.query.sqm.SqmQuerySource;
+import org.hibernate.query.sqm.tree.SqmCopyContext;
+import org.hibernate.query.sqm.tree.expression.ValueBindJpaCriteriaParameter;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Reads a page of entities matching a {@link Specification} with a choice of how its total is computed.
+ * <p>
+ * The total is only needed when the page is full or not the first one, as with {@code Page} of Spring Data. Otherwise
+ * it is computed with the {@link CountStrategy} of the call:
+ * <ul>
+ *   <li>{@code EXACT} runs {@code count(*)}</li>
+ *   <li>{@code CACHED} keys counts by the HQL of the count query, with its criteria values replaced by parameters and
+ *   aliases normalised, and by the values, compared element by element for arrays, so two calls with the same filter
+ *   share one entry until {@code cacheTtl} expires</li>
+ *   <li>{@code ESTIMATED} reads the row estimate of the planner for the same query through
+ *   {@link ExplainStatementInspector}, and counts exactly when the estimate is below {@code exactBelow}</li>
+ * </ul>
+ * Totals served from cache or estimated are flagged by returning an {@link ApproximatePage}.
+ * <p>
+ * Pages can also be read as a projection to a DTO: only the attributes of the entity named like the components of a
+ * record, or the writable properties of a bean, are selected, and rows are built from them without loading entities
+ * into the persistence context.
+ */
+@Log4j2
+public class PageFinder {
+    private static final Pattern ALIAS = Pattern.compile("alias_-?\\d+");
+
+    private final EntityManager entityManager;
+    private final CountStrategy defaultStrategy;
+    private final long exactBelow;
+    private final Cache<CountKey, Long> counts;
+    private final Map<Class<?>, Map<Class<?>, Projection>> projections = new ConcurrentHashMap<>();
+
+    /**
+     * @param entityManager   shared entity manager
+     * @param defaultStrategy strategy of calls not choosing one
+     * @param cacheTtl        time a cached count is served
+     * @param cacheSize       maximum number of cached counts
+     * @param exactBelow      estimates below this are replaced by an exact count
+     */
+    public PageFinder(EntityManager entityManager, CountStrategy defaultStrategy, Duration cacheTtl, long cacheSize, long exactBelow) {
+        this.entityManager = entityManager;
+        this.defaultStrategy = defaultStrategy;
+        this.exactBelow = exactBelow;
+        this.counts = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtl)
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    public <E> ApproximatePage<E> find(Class<E> entity, Specification<E> specification, Pageable pageable) {
+        return find(entity, specification, pageable, defaultStrategy);
+    }
+
+    /**
+     * @param entity        entity class
+     * @param specification filter of rows, may be null
+     * @param pageable      page to read
+     * @param strategy      how the total is computed
+     * @return ApproximatePage
+     */
+    public <E> ApproximatePage<E> find(Class<E> entity, Specification<E> specification, Pageable pageable, CountStrategy strategy) {
+        var builder = entityManager.getCriteriaBuilder();
+        var query = builder.createQuery(entity);
+        var root = query.from(entity);
+        where(query, root, builder, specification);
+        order(query, root, builder, pageable);
+        var content = page(entityManager.createQuery(query), pageable).getResultList();
+        var approximate = new boolean[1];
+        Page<E> page = PageableExecutionUtils.getPage(content, pageable, () -> total(entity, specification, strategy, approximate));
+        return new ApproximatePage<>(page.getContent(), pageable, page.getTotalElements(), approximate[0]);
+    }
+
+    public <E, R> ApproximatePage<R> find(Class<E> entity, Class<R> type, Specification<E> specification, Pageable pageable) {
+        return find(entity, type, specification, pageable, defaultStrategy);
+    }
+
+    /**
+     * Page of projections of the rows matching {@code specification}.
+     *
+     * @param entity        entity class
+     * @param type          record whose components are all attributes of {@code entity}, or bean whose properties named
+     *                      like attributes of {@code entity} are set, others being left alone; of the same types
+     * @param specification filter of rows, may be null
+     * @param pageable      page to read
+     * @param strategy      how the total is computed
+     * @return ApproximatePage
+     */
+    public <E, R> ApproximatePage<R> find(Class<E> entity, Class<R> type, Specification<E> specification, Pageable pageable,
+                                          CountStrategy strategy) {
+        var projection = projection(entity, type);
+        var attributes = projection.attributes();
+        var builder = entityManager.getCriteriaBuilder();
+        List<R> content;
+        if (type.isRecord()) {
+            var query = builder.createQuery(type);
+            var root = query.from(entity);
+            where(query, root, builder, specification);
+            query.select(builder.construct(type, attributes.stream().map(root::get).toArray(Selection[]::new)));
+            order(query, root, builder, pageable);
+            content = page(entityManager.createQuery(query), pageable).getResultList();
+        } else {
+            var query = builder.createTupleQuery();
+            var root = query.from(entity);
+            where(query, root, builder, specification);
+            query.multiselect(attributes.stream().map(attribute -> root.get(attribute).alias(attribute)).toArray(Selection[]::new));
+            order(query, root, builder, pageable);
+            var tuples = page(entityManager.createQuery(query), pageable).getResultList();
+            content = new ArrayList<>(tuples.size());
+            for (var tuple : tuples) {
+                var bean = BeanUtils.instantiateClass(type);
+                for (int i = 0; i < attributes.size(); ++i) {
+                    ReflectionUtils.invokeMethod(projection.setters()[i], bean, tuple.get(i));
+                }
+                content.add(bean);
+            }
+        }
+        var approximate = new boolean[1];
+        Page<R> page = PageableExecutionUtils.getPage(content, pageable, () -> total(entity, specification, strategy, approximate));
+        return new ApproximatePage<>(page.getContent(), pageable, page.getTotalElements(), approximate[0]);
+    }
+
+    /**
+     * Drop all cached counts, e.g. after a bulk import changed the totals.
+     */
+    public void evictCounts() {
+        counts.invalidateAll();
+    }
+
+    private <E> long total(Class<E> entity, Specification<E> specification, CountStrategy strategy, boolean[] approximate) {
+        return switch (strategy) {
+            case EXACT -> count(entity, specification);
+            case CACHED -> cachedCount(entity, specification, approximate);
+            case ESTIMATED -> estimatedCount(entity, specification, approximate);
+        };
+    }
+
+    /**
+     * Attributes of an entity selected for a type, in the order of the record components or with the setters of the bean
+     */
+    private record Projection(List<String> attributes, Method[] setters) {
+    }
+
+    private Projection projection(Class<?> entity, Class<?> type) {
+        return projections.computeIfAbsent(entity, e -> new ConcurrentHashMap<>()).computeIfAbsent(type, t -> {
+            var attributes = entityManager.getMetamodel().entity(entity).getAttributes().stream()
+                    .map(Attribute::getName)
+                    .collect(Collectors.toSet());
+            if (type.isRecord()) {
+                var components = Arrays.stream(type.getRecordComponents()).map(RecordComponent::getName).toList();
+                var missing = components.stream().filter(name -> !attributes.contains(name)).toList();
+                if (!missing.isEmpty()) {
+                    throw new IllegalArgumentException(type.getSimpleName() + " components " + missing + " are not attributes of " + entity.getSimpleName());
+                }
+                return new Projection(components, null);
+            }
+            var properties = Arrays.stream(BeanUtils.getPropertyDescriptors(type))
+                    .filter(property -> property.getWriteMethod() != null && attributes.contains(property.getName()))
+                    .toList();
+            return new Projection(properties.stream().map(PropertyDescriptor::getName).toList(),
+                    properties.stream().map(PropertyDescriptor::getWriteMethod).toArray(Method[]::new));
+        });
+    }
+
+    private static <T> TypedQuery<T> page(TypedQuery<T> query, Pageable pageable) {
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return query;
+    }
+
+    private static <E> void order(CriteriaQuery<?> query, Root<E> root, CriteriaBuilder builder, Pageable pageable) {
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+        }
+    }
+
+    private <E> long count(Class<E> entity, Specification<E> specification) {
+        return entityManager.createQuery(countQuery(entity, specification)).getSingleResult();
+    }
+
+    private <E> long cachedCount(Class<E> entity, Specification<E> specification, boolean[] approximate) {
+        var query = countQuery(entity, specification);
+        var key = countKey(query);
+        var cached = counts.getIfPresent(key);
+        if (cached != null) {
+            approximate[0] = true;
+            return cached;
+        }
+        long total = entityManager.createQuery(query).getSingleResult();
+        counts.put(key, total);
+        return total;
+    }
+
+    private <E> long estimatedCount(Class<E> entity, Specification<E> specification, boolean[] approximate) {
+        var estimate = estimate(entity, specification);
+        if (estimate < exactBelow) {
+            return count(entity, specification);
+        }
+        approximate[0] = true;
+        return estimate;
+    }
+
+    /**
+     * Planner estimate of the rows matching {@code specification}, -1 when no plan could be read.
+     */
+    private <E> long estimate(Class<E> entity, Specification<E> specification) {
+        var builder = entityManager.getCriteriaBuilder();
+        var query = builder.createQuery(String.class);
+        var root = query.from(entity);
+        var entityType = entityManager.getMetamodel().entity(entity);
+        if (!entityType.hasSingleIdAttribute()) {
+            return -1;
+        }
+        // cast in SQL so the single column of the plan can be read as a String, as() only casts in Java
+        var id = root.get(entityType.getId(entityType.getIdType().getJavaType()));
+        query.select(((JpaExpression<?>) id).cast(String.class));
+        where(query, root, builder, specification);
+        try {
+            // one row at most even if the inspector is not registered and the query really runs, and no flush: its
+            // statements would run while explaining
+            var plan = ExplainStatementInspector.explain(() -> entityManager.createQuery(query)
+                    .setFlushMode(FlushModeType.COMMIT)
+                    .setMaxResults(1)
+                    .getResultList());
+            return plan.isEmpty() ? -1 : planRows(plan.get(0));
+        } catch (RuntimeException e) {
+            log.warn("Can't estimate count of {}, counting exactly", entity.getSimpleName(), e);
+            return -1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long planRows(String json) {
+        var explain = Json.decode(json.getBytes(StandardCharsets.UTF_8), List.class);
+        var plan = (Map<String, Object>) ((Map<String, Object>) explain.get(0)).get("Plan");
+        // skip the limit added by setMaxResults
+        if ("Limit".equals(plan.get("Node Type"))) {
+            plan = ((List<Map<String, Object>>) plan.get("Plans")).get(0);
+        }
+        return ((Number) plan.get("Plan Rows")).longValue();
+    }
+
+    private <E> CriteriaQuery<Long> countQuery(Class<E> entity, Specification<E> specification) {
+        var builder = entityManager.getCriteriaBuilder();
+        var query = builder.createQuery(Long.class);
+        var root = query.from(entity);
+        where(query, root, builder, specification);
+        query.select(query.isDistinct() ? builder.countDistinct(root) : builder.count(root));
+        // order by is not needed by count, and Specifications may have set one
+        query.orderBy(List.of());
+        return query;
+    }
+
+    private static <E> void where(CriteriaQuery<?> query, Root<E> root, CriteriaBuilder builder, Specification<E> specification) {
+        if (specification == null) {
+            return;
+        }
+        var predicate = specification.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+    }
+
+    /**
+     * Key of the count of {@code query}, rendered from a copy whose criteria values are replaced by parameters
+     */
+    static CountKey countKey(CriteriaQuery<?> query) {
+        var context = new ParameterizingCopyContext();
+        var copy = ((SqmSelectStatement<?>) query).copy(context);
+        return new CountKey(normalize(copy.toHqlString()), context.values.toArray());
+    }
+
+    /**
+     * Key of a cached count: HQL of the count query with parameters in place of its values, and the values
+     */
+    record CountKey(String hql, Object[] values) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CountKey other && hql.equals(other.hql) && Arrays.deepEquals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * hql.hashCode() + Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return hql + " " + Arrays.deepToString(values);
+        }
+    }
+
+    /**
+     * Copies a criteria query replacing each value bound by the criteria builder, which renders as its
+     * {@code toString()}, by a parameter {@code :v<n>} whose value is the n-th of {@link #values}
+     */
+    private static class ParameterizingCopyContext implements SqmCopyContext {
+        private final SqmCopyContext delegate = SqmCopyContext.simpleContext(SqmQuerySource.CRITERIA);
+        private final List<Object> values = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getCopy(T original) {
+            var copy = delegate.getCopy(original);
+            if (copy == null && original instanceof ValueBindJpaCriteriaParameter<?> parameter && !(original instanceof Placeholder<?>)) {
+                copy = delegate.registerCopy(original, (T) new Placeholder<>(parameter, values.size()));
+                values.add(parameter.getValue());
+            }
+            return copy;
+        }
+
+        @Override
+        public <T> T registerCopy(T original, T copy) {
+            return delegate.registerCopy(original, copy);
+        }
+
+        @Override
+        public boolean copyFetchedFlag() {
+            return delegate.copyFetchedFlag();
+        }
+
+        @Override
+        public SqmQuerySource getQuerySource() {
+            return delegate.getQuerySource();
+        }
+    }
+
+    private static class Placeholder<T> extends ValueBindJpaCriteriaParameter<T> {
+        private final int index;
+
+        private Placeholder(ValueBindJpaCriteriaParameter<T> parameter, int index) {
+            super(parameter.getAnticipatedType(), parameter.getValue(), parameter.nodeBuilder());
+            this.index = index;
+        }
+
+        @Override
+        public void appendHqlString(StringBuilder sb) {
+            sb.append(":v").append(index);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    /**
+     * Replace the random aliases of a criteria query by their order of appearance
+     */
+    static String normalize(String hql) {
+        var matcher = ALIAS.matcher(hql);
+        var aliases = new HashMap<String, String>();
+        var sb = new StringBuilder(hql.length());
+        while (matcher.find()) {
+            var alias = aliases.computeIfAbsent(matcher.group(), a -> "a" + aliases.size());
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(alias));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
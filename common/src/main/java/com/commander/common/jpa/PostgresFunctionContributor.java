@@ -0,0 +1,94 @@
+package com.commander.common.jpa;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.query.ReturnableType;
+import org.hibernate.query.sqm.function.AbstractSqmSelfRenderingFunctionDescriptor;
+import org.hibernate.query.sqm.produce.function.StandardArgumentsValidators;
+import org.hibernate.query.sqm.produce.function.StandardFunctionReturnTypeResolvers;
+import org.hibernate.sql.ast.SqlAstTranslator;
+import org.hibernate.sql.ast.spi.SqlAppender;
+import org.hibernate.sql.ast.tree.SqlAstNode;
+import org.hibernate.type.BasicType;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.util.List;
+
+/**
+ * Postgres functions and operators used by {@code Specifications}, registered with every Hibernate session factory
+ * through {@code META-INF/services}.
+ * <ul>
+ *   <li>{@code fts_match(config, text, query)}: {@code to_tsvector(config, text) @@ plainto_tsquery(config, query)}</li>
+ *   <li>{@code fts_rank(config, text, query)}: {@code ts_rank} of the same vector and query</li>
+ *   <li>{@code in_array(value, array)}: {@code value = any(array)}, with the array bound as one parameter</li>
+ *   <li>{@code in_values_<type>(value, setId)}: {@code value} is in the set loaded by {@link ValueTable}, one function
+ *   per column type of its temporary tables</li>
+ *   <li>{@code jsonb_contains(json, value)}: {@code json @> value}</li>
+ *   <li>{@code jsonb_has_key(json, key)}: {@code json ? key}, sent as {@code ??} so the JDBC driver does not take it for
+ *   a parameter</li>
+ *   <li>{@code jsonb_path_exists(json, path)}: {@code json @? path}</li>
+ *   <li>{@code jsonb_path_match(json, path)}: {@code json @@ path}</li>
+ * </ul>
+ * {@code config} should be a literal so the expression matches a {@code to_tsvector('config', column)} index. The
+ * jsonb operators can use a GIN index on the column, {@code jsonb_path_ops} ones only for {@code @>}, {@code @?} and
+ * {@code @@}.
+ */
+public class PostgresFunctionContributor implements FunctionContributor {
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        var types = functionContributions.getTypeConfiguration().getBasicTypeRegistry();
+        var registry = functionContributions.getFunctionRegistry();
+        registry.patternDescriptorBuilder("fts_match", "(to_tsvector(cast(?1 as regconfig),?2) @@ plainto_tsquery(cast(?1 as regconfig),?3))")
+                .setExactArgumentCount(3)
+                .setInvariantType(types.resolve(StandardBasicTypes.BOOLEAN))
+                .register();
+        registry.patternDescriptorBuilder("fts_rank", "ts_rank(to_tsvector(cast(?1 as regconfig),?2),plainto_tsquery(cast(?1 as regconfig),?3))")
+                .setExactArgumentCount(3)
+                .setInvariantType(types.resolve(StandardBasicTypes.DOUBLE))
+                .register();
+        registry.patternDescriptorBuilder("in_array", "(?1 = any(?2))")
+                .setExactArgumentCount(2)
+                .setInvariantType(types.resolve(StandardBasicTypes.BOOLEAN))
+                .register();
+        var bool = types.resolve(StandardBasicTypes.BOOLEAN);
+        registry.register("jsonb_contains", new OperatorFunction("jsonb_contains", "@>", "jsonb", bool));
+        registry.register("jsonb_has_key", new OperatorFunction("jsonb_has_key", "??", "text", bool));
+        registry.register("jsonb_path_exists", new OperatorFunction("jsonb_path_exists", "@??", "jsonpath", bool));
+        registry.register("jsonb_path_match", new OperatorFunction("jsonb_path_match", "@@", "jsonpath", bool));
+        for (var table : ValueTable.TABLES.values()) {
+            registry.patternDescriptorBuilder(table, "(?1 in (select v from " + table + " where set_id = ?2))")
+                    .setExactArgumentCount(2)
+                    .setInvariantType(types.resolve(StandardBasicTypes.BOOLEAN))
+                    .register();
+        }
+    }
+
+    /**
+     * {@code (left operator cast(right as type))}, rendered directly as patterns cannot contain a {@code ?} that is not a
+     * parameter
+     */
+    private static final class OperatorFunction extends AbstractSqmSelfRenderingFunctionDescriptor {
+        private final String operator;
+        private final String rightType;
+
+        private OperatorFunction(String name, String operator, String rightType, BasicType<Boolean> type) {
+            super(name, StandardArgumentsValidators.exactly(2), StandardFunctionReturnTypeResolvers.invariant(type), null);
+            this.operator = operator;
+            this.rightType = rightType;
+        }
+
+        @Override
+        public void render(SqlAppender sqlAppender, List<? extends SqlAstNode> arguments, ReturnableType<?> returnType,
+                           SqlAstTranslator<?> translator) {
+            sqlAppender.appendSql('(');
+            arguments.get(0).accept(translator);
+            sqlAppender.appendSql(' ');
+            sqlAppender.appendSql(operator);
+            sqlAppender.appendSql(" cast(");
+            arguments.get(1).accept(translator);
+            sqlAppender.appendSql(" as ");
+            sqlAppender.appendSql(rightType);
+            sqlAppender.appendSql("))");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.commander.common.jpa;
+
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+/**
+ * Sends the reads of a request to the primary once one of its read-write transactions has committed, as replicas may
+ * not have replayed the write yet. Registered with the transaction managers as a bean.
+ */
+public class PrimaryAfterWriteListener implements TransactionExecutionListener {
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        if (commitFailure == null && transaction.isNewTransaction() && !transaction.isReadOnly()) {
+            ReplicaDataSource.usePrimaryForRequest();
+        }
+    }
+}
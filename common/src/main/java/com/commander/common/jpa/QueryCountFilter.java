@@ -0,0 +1,43 @@
+package com.commander.common.jpa;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Count the statements of each inbound request with {@link QueryCounter}, logging the requests going over
+ * {@code threshold} with their most repeated statement, or failing them in {@link QueryCounter.Mode#FAIL} mode.
+ */
+@Log4j2
+public class QueryCountFilter extends OncePerRequestFilter {
+    private final long threshold;
+    private final QueryCounter.Mode mode;
+
+    public QueryCountFilter(long threshold, QueryCounter.Mode mode) {
+        this.threshold = threshold;
+        this.mode = mode;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryCounter.start(threshold, mode);
+        QueryCounter.Count count;
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            count = QueryCounter.stop();
+        }
+        if (count.isExceeded()) {
+            var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            log.warn("{} {} ran {} queries, more than {}, most repeated: {}", request.getMethod(),
+                    pattern != null ? pattern : request.getRequestURI(), count.getQueries(), threshold, count.mostRepeated());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.commander.common.jpa;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts the statements Hibernate prepares on the current thread between {@link #start} and {@link #stop}, to catch
+ * lazy associations loaded one by one (N+1 queries) when entities are mapped. {@link QueryCountFilter} counts the
+ * statements of each request.
+ * <p>
+ * Registered as the Hibernate statement inspector, in front of the inspector given to the constructor.
+ */
+public class QueryCounter implements StatementInspector {
+    private static final ThreadLocal<Count> COUNT = new ThreadLocal<>();
+    private static final int MAX_DISTINCT_STATEMENTS = 20;
+
+    private final StatementInspector next;
+
+    public QueryCounter() {
+        this(sql -> sql);
+    }
+
+    public QueryCounter(StatementInspector next) {
+        this.next = next;
+    }
+
+    /**
+     * What to do once a count goes over its threshold
+     */
+    public enum Mode {
+        /**
+         * Log the count and the most repeated statement once counting stops
+         */
+        LOG,
+        /**
+         * Fail the statement going over the threshold with an {@code IllegalStateException}
+         */
+        FAIL
+    }
+
+    @Override
+    public String inspect(String sql) {
+        for (var count = COUNT.get(); count != null; count = count.outer) {
+            count.add(sql);
+        }
+        return next.inspect(sql);
+    }
+
+    /**
+     * Start counting the statements of the current thread, inside any count already started
+     *
+     * @param threshold statements allowed before {@code mode} applies
+     */
+    public static Count start(long threshold, Mode mode) {
+        var count = new Count(threshold, mode, COUNT.get());
+        COUNT.set(count);
+        return count;
+    }
+
+    /**
+     * Stop the count started last on the current thread
+     */
+    public static Count stop() {
+        var count = COUNT.get();
+        if (count == null) {
+            throw new IllegalStateException("No query count started");
+        }
+        if (count.outer == null) {
+            COUNT.remove();
+        } else {
+            COUNT.set(count.outer);
+        }
+        return count;
+    }
+
+    /**
+     * Statements of one count, the distinct ones kept up to a limit
+     */
+    public static final class Count {
+        private final long threshold;
+        private final Mode mode;
+        private final Count outer;
+        private final Map<String, Integer> statements = new LinkedHashMap<>();
+        private long queries;
+
+        private Count(long threshold, Mode mode, Count outer) {
+            this.threshold = threshold;
+            this.mode = mode;
+            this.outer = outer;
+        }
+
+        private void add(String sql) {
+            ++queries;
+            if (statements.size() < MAX_DISTINCT_STATEMENTS || statements.containsKey(sql)) {
+                statements.merge(sql, 1, Integer::sum);
+            }
+            if (mode == Mode.FAIL && queries == threshold + 1) {
+                throw new IllegalStateException("More than " + threshold + " queries, most repeated: " + mostRepeated());
+            }
+        }
+
+        public long getQueries() {
+            return queries;
+        }
+
+        public boolean isExceeded() {
+            return queries > threshold;
+        }
+
+        /**
+         * Statement prepared the most times with its count, the usual sign of N+1 queries
+         */
+        public String mostRepeated() {
+            return statements.entrySet().stream()
+                    .max(Map.Entry.comparingByValue())
+                    .map(e -> e.getValue() + " x " + e.getKey())
+                    .orElse("none");
+        }
+    }
+}
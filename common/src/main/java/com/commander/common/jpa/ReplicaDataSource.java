@@ -0,0 +1,178 @@
+package com.commander.common.jpa;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only data source spreading connections over replicas, to be set as
+ * {@link LazyConnectionDataSourceProxy#setReadOnlyDataSource} of a proxy of the primary: connections of
+ * {@code @Transactional(readOnly = true)} work come from here, others from the primary.
+ * <p>
+ * Replicas are taken in turn among the healthy ones, falling back to the primary when none is. A replica is healthy
+ * when its replay lag, checked every {@code checkInterval}, is at most {@code maxLag}, and unhealthy from a failed
+ * check or connection until the next successful check. Once a read-write transaction of the current request has
+ * committed (see {@link PrimaryAfterWriteListener}), the rest of the request reads from the primary, so it sees its own
+ * writes.
+ * <p>
+ * With a {@code MeterRegistry}, {@code datasource.replica.lag} (seconds) and {@code datasource.replica.healthy} gauges
+ * are tagged by {@code replica}.
+ */
+@Log4j2
+public class ReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+    static final String PRIMARY_AFTER_WRITE = ReplicaDataSource.class.getName() + ".PRIMARY_AFTER_WRITE";
+    /**
+     * Seconds since the last replayed transaction, 0 on a primary or a replica that replayed all it received
+     */
+    private static final String LAG_QUERY = "select case when not pg_is_in_recovery() or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0"
+            + " else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final double maxLagSeconds;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param primary       data source used when no replica can be
+     * @param replicas      replica data sources by name
+     * @param maxLag        replicas lagging more are not used
+     * @param checkInterval time between two lag checks, none if zero
+     * @param registry      registry of the gauges, may be null
+     */
+    public ReplicaDataSource(DataSource primary, Map<String, DataSource> replicas, Duration maxLag, Duration checkInterval, MeterRegistry registry) {
+        this.primary = primary;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        if (registry != null) {
+            for (var replica : this.replicas) {
+                Gauge.builder("datasource.replica.lag", replica, r -> r.lagSeconds).tag("replica", replica.name).baseUnit("seconds").register(registry);
+                Gauge.builder("datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0).tag("replica", replica.name).register(registry);
+            }
+        }
+        if (checkInterval.isZero() || this.replicas.isEmpty()) {
+            scheduler = null;
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("replica-lag-check").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::checkLag, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Make the rest of the current request read from the primary. Does nothing outside of a request.
+     */
+    public static void usePrimaryForRequest() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(PRIMARY_AFTER_WRITE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    private static boolean isPrimaryForRequest() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null && attributes.getAttribute(PRIMARY_AFTER_WRITE, RequestAttributes.SCOPE_REQUEST) != null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!isPrimaryForRequest()) {
+            var start = Math.floorMod(next.getAndIncrement(), Math.max(replicas.size(), 1));
+            for (int i = 0; i < replicas.size(); ++i) {
+                var replica = replicas.get((start + i) % replicas.size());
+                if (!replica.healthy) {
+                    continue;
+                }
+                try {
+                    return replica.dataSource.getConnection();
+                } catch (SQLException e) {
+                    replica.unhealthy("connection failed", e);
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the credentials of their pool");
+    }
+
+    /**
+     * Check the lag of every replica now, also done every {@code checkInterval}
+     */
+    public void checkLag() {
+        for (var replica : replicas) {
+            try (var connection = replica.dataSource.getConnection(); var statement = connection.createStatement();
+                 var rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                replica.lagSeconds = rs.getDouble(1);
+                if (replica.lagSeconds > maxLagSeconds) {
+                    replica.unhealthy("lag is " + replica.lagSeconds + "s", null);
+                } else if (!replica.healthy) {
+                    log.info("Replica {} is back, lag {}s", replica.name, replica.lagSeconds);
+                    replica.healthy = true;
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.unhealthy("lag check failed", e);
+            }
+        }
+    }
+
+    /**
+     * Health of each replica by name, for monitoring
+     */
+    public Map<String, Boolean> getStates() {
+        var states = new LinkedHashMap<String, Boolean>();
+        replicas.forEach(replica -> states.put(replica.name, replica.healthy));
+        return states;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (var replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+        private volatile double lagSeconds;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private void unhealthy(String reason, Exception e) {
+            if (healthy) {
+                log.warn("Replica {} is not used, {}", name, reason, e);
+            }
+            healthy = false;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.commander.common.jpa;
+
+import java.time.Duration;
+
+/**
+ * Attempts and exponential backoff of the rows retried by {@link OutboxDispatcher} and {@link JobQueue}. Given up rows
+ * stay in their table with their last error, parked at {@code 'infinity'} so claims never read them again.
+ *
+ * @param maxAttempts      attempts before a row is given up
+ * @param backoffMillis    delay before the second attempt, doubled at each attempt
+ * @param maxBackoffMillis longest delay between two attempts
+ */
+record RetryPolicy(int maxAttempts, long backoffMillis, long maxBackoffMillis) {
+    private static final int MAX_ERROR_CHARS = 1000;
+
+    RetryPolicy(int maxAttempts, Duration backoff, Duration maxBackoff) {
+        this(maxAttempts, backoff.toMillis(), maxBackoff.toMillis());
+    }
+
+    /**
+     * @param attempts attempts made so far, 1 after the first
+     * @return delay before the next attempt, null once given up
+     */
+    Long delayMillis(int attempts) {
+        if (attempts >= maxAttempts) {
+            return null;
+        }
+        // shifts of at most 62, the delay is capped anyway
+        return Math.min(maxBackoffMillis, backoffMillis << Math.min(attempts - 1, 62));
+    }
+
+    /**
+     * Error as stored in {@code last_error}, cut to a bounded length
+     */
+    static String lastError(String error) {
+        return error.length() > MAX_ERROR_CHARS ? error.substring(0, MAX_ERROR_CHARS) : error;
+    }
+}
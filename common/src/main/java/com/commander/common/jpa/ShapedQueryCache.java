@@ -0,0 +1,137 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.ShapedSpecification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.query.sqm.tree.SqmVisitableNode;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs {@link ShapedSpecification} queries from HQL rendered once per shape.
+ * <p>
+ * Hibernate does not cache the interpretation of criteria queries, so each call of a {@code Specification} builds a
+ * criteria tree and translates it to SQL again. Here the criteria query of a shape is built once with its values as
+ * parameters and rendered to HQL; later calls of the same entity, shape and sort take the HQL from the cache, whose
+ * SQL translation Hibernate keeps in its query plan cache, and only bind the values.
+ * <p>
+ * With a {@code MeterRegistry}, the cache is reported as {@code cache.gets}, {@code cache.size} and
+ * {@code cache.evictions} tagged {@code cache=jpa.query.shapes}.
+ */
+public class ShapedQueryCache {
+    private static final String ALL = "all";
+
+    private final EntityManager entityManager;
+    private final Cache<String, String> queries;
+
+    /**
+     * @param entityManager shared entity manager
+     * @param maximumSize   maximum number of cached queries, a shape with a sort and its count being two
+     * @param registry      registry of the cache metrics, may be null
+     */
+    public ShapedQueryCache(EntityManager entityManager, long maximumSize, MeterRegistry registry) {
+        this.entityManager = entityManager;
+        this.queries = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        if (registry != null) {
+            GuavaCacheMetrics.monitor(registry, queries, "jpa.query.shapes");
+        }
+    }
+
+    /**
+     * @param specification filter of rows, may be null
+     * @param sort          order of rows
+     * @return query with the values of {@code specification} bound, paging left to the caller
+     */
+    public <E> TypedQuery<E> query(Class<E> entity, ShapedSpecification<E> specification, Sort sort) {
+        var hql = hql(entity.getName() + "|select|" + shape(specification) + "|" + sort, () -> render(entity, specification, sort, false));
+        return bind(entityManager.createQuery(hql, entity), specification);
+    }
+
+    /**
+     * @param specification filter of rows, may be null
+     * @return {@code count(*)} query with the values of {@code specification} bound, {@code count(distinct)} of the
+     * rows when {@code specification} made the query distinct
+     */
+    public <E> TypedQuery<Long> countQuery(Class<E> entity, ShapedSpecification<E> specification) {
+        var hql = hql(entity.getName() + "|count|" + shape(specification), () -> render(entity, specification, Sort.unsorted(), true));
+        return bind(entityManager.createQuery(hql, Long.class), specification);
+    }
+
+    /**
+     * Page of rows, counted only when needed like {@code Page} of Spring Data
+     */
+    public <E> Page<E> find(Class<E> entity, ShapedSpecification<E> specification, Pageable pageable) {
+        var query = query(entity, specification, pageable.getSort());
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(query.getResultList(), pageable, () -> countQuery(entity, specification).getSingleResult());
+    }
+
+    /**
+     * Drop all cached queries, e.g. when entities were remapped in tests
+     */
+    public void clear() {
+        queries.invalidateAll();
+    }
+
+    private String hql(String key, Callable<String> render) {
+        try {
+            return queries.get(key, render);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Can't render query " + key, e.getCause());
+        }
+    }
+
+    private <E> String render(Class<E> entity, ShapedSpecification<E> specification, Sort sort, boolean count) {
+        var builder = entityManager.getCriteriaBuilder();
+        var query = builder.createQuery();
+        var root = query.from(entity);
+        // the selection is only implied by the root when executed, not when rendered
+        query.select(root);
+        if (specification != null) {
+            query.where(specification.toParameterizedPredicate(root, query, builder));
+        }
+        if (count) {
+            if (query.isDistinct()) {
+                // count of the distinct rows, like the count queries of Spring Data and PageFinder
+                return ((SqmVisitableNode) query.select(builder.countDistinct(root)).distinct(false)).toHqlString();
+            }
+            // count(x) of a criteria query is rendered as an empty count(), so the count is made from the select
+            var select = ((SqmVisitableNode) query).toHqlString();
+            return "select count(*)" + select.substring(select.indexOf(" from "));
+        }
+        if (sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, builder));
+        }
+        return ((SqmVisitableNode) query).toHqlString();
+    }
+
+    private static String shape(ShapedSpecification<?> specification) {
+        return specification == null ? ALL : specification.shape();
+    }
+
+    private static <T> TypedQuery<T> bind(TypedQuery<T> query, ShapedSpecification<?> specification) {
+        if (specification != null) {
+            var values = specification.values();
+            for (int i = 0; i < values.size(); ++i) {
+                query.setParameter("p" + i, values.get(i));
+            }
+        }
+        return query;
+    }
+}
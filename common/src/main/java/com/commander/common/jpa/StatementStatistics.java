@@ -0,0 +1,435 @@
+package com.commander.common.jpa;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Times the statements of a {@link #wrap wrapped} data source and keeps their statistics by fingerprint: the SQL with
+ * literals, parameters and lists of parameters replaced by {@code ?}, so statements differing only by their values
+ * share an entry. Once {@code maxFingerprints} exist, other statements are counted under {@code OTHER}.
+ * <p>
+ * The time of a query is the time of its execution, until the driver returns the result set. Its rows, those read from
+ * the result set, are only counted for slow queries and a {@code sampleRate} of the statements, the others handing out
+ * the result set of the driver unwrapped. Statements slower than {@code slowThreshold} are logged, at most once per
+ * {@code logInterval} for a fingerprint with the count of those not logged in between. With {@code explain}, slow
+ * queries are run again by a background thread as {@code EXPLAIN (ANALYZE, BUFFERS)} in a read-only transaction that is
+ * rolled back, with the same parameters, at most once per {@code explainInterval} for a fingerprint; the plan is logged
+ * and kept with the statistics. Parameters are only kept by statements for this, when {@code explain} is set.
+ */
+@Log4j2
+public class StatementStatistics implements AutoCloseable {
+    static final String OTHER = "OTHER";
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|\\$\\d+|\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern SPACE = Pattern.compile("\\s+");
+    private static final int EXPLAIN_TIMEOUT_SECONDS = 30;
+    private static final double DEFAULT_SAMPLE_RATE = 0.1;
+
+    private final long slowNanos;
+    private final long logIntervalNanos;
+    private final long explainIntervalNanos;
+    private final int maxFingerprints;
+    private final double sampleRate;
+    private final ThreadPoolExecutor explainer;
+    private final ConcurrentHashMap<String, String> fingerprints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Stats> statistics = new ConcurrentHashMap<>();
+
+    public StatementStatistics(Duration slowThreshold, Duration logInterval, boolean explain, Duration explainInterval, int maxFingerprints) {
+        this(slowThreshold, logInterval, explain, explainInterval, maxFingerprints, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * @param slowThreshold   statements from this duration are logged
+     * @param logInterval     minimum time between two logs of slow statements with the same fingerprint
+     * @param explain         whether to explain slow queries
+     * @param explainInterval minimum time between two explains of queries with the same fingerprint
+     * @param maxFingerprints fingerprints with their own statistics
+     * @param sampleRate      part of the statements, from 0 to 1, whose rows are counted when they are not slow
+     */
+    public StatementStatistics(Duration slowThreshold, Duration logInterval, boolean explain, Duration explainInterval, int maxFingerprints,
+                               double sampleRate) {
+        this.slowNanos = slowThreshold.toNanos();
+        this.logIntervalNanos = logInterval.toNanos();
+        this.explainIntervalNanos = explainInterval.toNanos();
+        this.maxFingerprints = maxFingerprints;
+        this.sampleRate = sampleRate;
+        // a single connection for explains, those arriving while the queue is full are dropped
+        this.explainer = !explain ? null : new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16),
+                Thread.ofPlatform().name("statement-explain").daemon().factory(), new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Data source timing the statements of its connections
+     */
+    public DataSource wrap(DataSource dataSource) {
+        return new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return connection(obtainTargetDataSource().getConnection(), obtainTargetDataSource());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return connection(obtainTargetDataSource().getConnection(username, password), obtainTargetDataSource());
+            }
+        };
+    }
+
+    /**
+     * Statistics with the highest total time first
+     */
+    public List<Entry> top(int limit) {
+        return statistics.entrySet().stream()
+                .map(e -> e.getValue().entry(e.getKey()))
+                .sorted(Comparator.comparingDouble(Entry::totalMillis).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    public void reset() {
+        statistics.clear();
+    }
+
+    @Override
+    public void close() {
+        if (explainer != null) {
+            explainer.shutdownNow();
+        }
+    }
+
+    /**
+     * SQL with literals, parameters and lists of parameters replaced by {@code ?} and whitespace collapsed
+     */
+    static String fingerprint(String sql) {
+        var fingerprint = LITERAL.matcher(sql).replaceAll("?");
+        fingerprint = PARAMETER_LIST.matcher(fingerprint).replaceAll("(?...)");
+        return SPACE.matcher(fingerprint).replaceAll(" ").trim();
+    }
+
+    private String fingerprintOf(String sql) {
+        var fingerprint = fingerprints.get(sql);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+        if (fingerprints.size() >= maxFingerprints * 10) {
+            fingerprints.clear();
+        }
+        fingerprint = fingerprint(sql);
+        fingerprints.put(sql, fingerprint);
+        return fingerprint;
+    }
+
+    private Stats stats(String fingerprint) {
+        var stats = statistics.get(fingerprint);
+        if (stats != null) {
+            return stats;
+        }
+        if (statistics.size() >= maxFingerprints) {
+            return statistics.computeIfAbsent(OTHER, f -> new Stats());
+        }
+        return statistics.computeIfAbsent(fingerprint, f -> new Stats());
+    }
+
+    /**
+     * @param rows rows of the statement, negative when they were not counted
+     */
+    private void record(DataSource dataSource, String sql, long nanos, long rows, List<Parameter> parameters) {
+        var fingerprint = fingerprintOf(sql);
+        var stats = stats(fingerprint);
+        stats.count.increment();
+        stats.nanos.add(nanos);
+        if (rows >= 0) {
+            stats.counted.increment();
+            stats.rows.add(rows);
+        }
+        stats.max.accumulateAndGet(nanos, Math::max);
+        if (nanos < slowNanos) {
+            return;
+        }
+        stats.slow.increment();
+        var now = System.nanoTime();
+        stats.slowSinceLog.increment();
+        if (stats.due(stats.lastLogged, now, logIntervalNanos)) {
+            var skipped = stats.slowSinceLog.sumThenReset() - 1;
+            log.warn("Slow statement took {} ms and returned {} rows{}: {}", TimeUnit.NANOSECONDS.toMillis(nanos), rows,
+                    skipped > 0 ? " (" + skipped + " more not logged)" : "", sql);
+        }
+        if (explainer != null && parameters != null && isQuery(fingerprint) && stats.due(stats.lastExplained, now, explainIntervalNanos)) {
+            explainer.execute(() -> explain(dataSource, stats, sql, parameters));
+        }
+    }
+
+    private static boolean isQuery(String fingerprint) {
+        var start = fingerprint.substring(0, Math.min(fingerprint.length(), 6)).toLowerCase(Locale.ROOT);
+        return start.startsWith("select") || start.startsWith("with");
+    }
+
+    private static void explain(DataSource dataSource, Stats stats, String sql, List<Parameter> parameters) {
+        try (var connection = dataSource.getConnection()) {
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            try (var statement = connection.prepareStatement("explain (analyze, buffers) " + sql)) {
+                for (var parameter : parameters) {
+                    parameter.method.invoke(statement, parameter.args);
+                }
+                statement.setQueryTimeout(EXPLAIN_TIMEOUT_SECONDS);
+                var plan = new StringBuilder();
+                try (var rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+                stats.plan = plan.toString();
+                log.info("Plan of slow statement {}\n{}", sql, plan);
+            } finally {
+                connection.rollback();
+            }
+        } catch (SQLException | ReflectiveOperationException | RuntimeException e) {
+            log.warn("Explain of slow statement failed: {}", sql, e);
+        }
+    }
+
+    private Connection connection(Connection connection, DataSource dataSource) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            var result = invoke(connection, method, args);
+            return switch (method.getName()) {
+                case "createStatement" -> statement(Statement.class, (Statement) result, null, dataSource);
+                case "prepareStatement" -> statement(PreparedStatement.class, (Statement) result, (String) args[0], dataSource);
+                case "prepareCall" -> statement(CallableStatement.class, (Statement) result, (String) args[0], dataSource);
+                default -> result;
+            };
+        });
+    }
+
+    private <S extends Statement> S statement(Class<S> type, Statement statement, String sql, DataSource dataSource) {
+        return proxy(type, statement, new TrackedStatement(statement, sql, dataSource));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * Statistics of one fingerprint, {@code rows} being those of the {@code counted} executions: updates, slow queries and
+     * sampled ones
+     */
+    public record Entry(String fingerprint, long count, double totalMillis, double meanMillis, double maxMillis, long rows, long counted,
+                        long slow, String plan) {
+    }
+
+    private record Parameter(Method method, Object[] args) {
+    }
+
+    private static final class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder counted = new LongAdder();
+        private final LongAdder slow = new LongAdder();
+        private final LongAdder slowSinceLog = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLong lastLogged = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong lastExplained = new AtomicLong(Long.MIN_VALUE);
+        private volatile String plan;
+
+        /**
+         * Whether {@code interval} passed since {@code last}, which is then set to {@code now} by a single caller
+         */
+        private boolean due(AtomicLong last, long now, long interval) {
+            var previous = last.get();
+            return (previous == Long.MIN_VALUE || now - previous >= interval) && last.compareAndSet(previous, now);
+        }
+
+        private Entry entry(String fingerprint) {
+            var total = count.sum();
+            var millis = nanos.sum() / 1e6;
+            return new Entry(fingerprint, total, millis, total == 0 ? 0 : millis / total, max.get() / 1e6, rows.sum(), counted.sum(), slow.sum(), plan);
+        }
+    }
+
+    /**
+     * Execution of a query whose rows are counted, recorded once its result set or statement is closed
+     */
+    private static final class Execution {
+        private final String sql;
+        private final long nanos;
+        private final List<Parameter> parameters;
+        private long rows;
+
+        private Execution(String sql, long nanos, List<Parameter> parameters) {
+            this.sql = sql;
+            this.nanos = nanos;
+            this.parameters = parameters;
+        }
+    }
+
+    private final class TrackedStatement implements InvocationHandler {
+        private final Statement statement;
+        private final String sql;
+        private final DataSource dataSource;
+        private final boolean sampled;
+        // only kept to explain slow queries
+        private final TreeMap<Integer, Parameter> parameters;
+        private Execution execution;
+
+        private TrackedStatement(Statement statement, String sql, DataSource dataSource) {
+            this.statement = statement;
+            this.sql = sql;
+            this.dataSource = dataSource;
+            this.sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+            this.parameters = explainer != null && sql != null ? new TreeMap<>() : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            var name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (parameters != null && name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                parameters.put(index, new Parameter(method, args.clone()));
+            } else if (parameters != null && "clearParameters".equals(name)) {
+                parameters.clear();
+            } else if ("close".equals(name)) {
+                finish();
+            }
+            var result = StatementStatistics.invoke(statement, method, args);
+            if ("getResultSet".equals(name) && result != null && execution != null) {
+                return resultSet((ResultSet) result, execution);
+            }
+            return result;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finish();
+            var plain = args != null && args.length > 0 && args[0] instanceof String;
+            var executed = plain ? (String) args[0] : sql;
+            var start = System.nanoTime();
+            var result = StatementStatistics.invoke(statement, method, args);
+            var nanos = System.nanoTime() - start;
+            if (executed == null) {
+                return result;
+            }
+            var countRows = sampled || nanos >= slowNanos;
+            switch (method.getName()) {
+                case "executeQuery" -> {
+                    if (!countRows) {
+                        record(dataSource, executed, nanos, -1, null);
+                        return result;
+                    }
+                    execution = new Execution(executed, nanos, parametersIfSlow(plain, nanos));
+                    return resultSet((ResultSet) result, execution);
+                }
+                case "execute" -> {
+                    if ((Boolean) result && !countRows) {
+                        record(dataSource, executed, nanos, -1, null);
+                    } else if ((Boolean) result) {
+                        execution = new Execution(executed, nanos, parametersIfSlow(plain, nanos));
+                    } else {
+                        record(dataSource, executed, nanos, Math.max(0, statement.getUpdateCount()), null);
+                    }
+                }
+                case "executeUpdate", "executeLargeUpdate" -> record(dataSource, executed, nanos, ((Number) result).longValue(), null);
+                case "executeBatch" -> record(dataSource, executed, nanos, sum((int[]) result), null);
+                case "executeLargeBatch" -> record(dataSource, executed, nanos, sum((long[]) result), null);
+                default -> {
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Parameters to explain a slow query with, null for fast statements or parameters that cannot be set again
+         */
+        private List<Parameter> parametersIfSlow(boolean plain, long nanos) {
+            if (nanos < slowNanos || explainer == null) {
+                return null;
+            }
+            if (plain) {
+                return List.of();
+            }
+            if (parameters == null) {
+                return null;
+            }
+            for (var parameter : parameters.values()) {
+                var name = parameter.method.getName();
+                if (name.contains("Stream") || name.contains("Reader") || name.contains("Blob") || name.contains("Clob")) {
+                    return null;
+                }
+            }
+            return new ArrayList<>(parameters.values());
+        }
+
+        private ResultSet resultSet(ResultSet resultSet, Execution current) {
+            return proxy(ResultSet.class, resultSet, (proxy, method, args) -> {
+                var name = method.getName();
+                if ("close".equals(name)) {
+                    finish();
+                }
+                var result = StatementStatistics.invoke(resultSet, method, args);
+                if ("next".equals(name) && (Boolean) result) {
+                    current.rows++;
+                }
+                return result;
+            });
+        }
+
+        private void finish() {
+            if (execution != null) {
+                record(dataSource, execution.sql, execution.nanos, execution.rows, execution.parameters);
+                execution = null;
+            }
+        }
+
+        private static long sum(int[] counts) {
+            long sum = 0;
+            for (var count : counts) {
+                sum += Math.max(0, count);
+            }
+            return sum;
+        }
+
+        private static long sum(long[] counts) {
+            long sum = 0;
+            for (var count : counts) {
+                sum += Math.max(0, count);
+            }
+            return sum;
+        }
+    }
+}
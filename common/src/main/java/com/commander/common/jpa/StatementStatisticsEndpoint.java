@@ -0,0 +1,32 @@
+package com.commander.common.jpa;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/statements}: the statements of the highest total time with their plan when explained, reset by a
+ * {@code DELETE}
+ */
+@Endpoint(id = "statements")
+public class StatementStatisticsEndpoint {
+    private final StatementStatistics statistics;
+    private final int top;
+
+    public StatementStatisticsEndpoint(StatementStatistics statistics, int top) {
+        this.statistics = statistics;
+        this.top = top;
+    }
+
+    @ReadOperation
+    public List<StatementStatistics.Entry> statements() {
+        return statistics.top(top);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        statistics.reset();
+    }
+}
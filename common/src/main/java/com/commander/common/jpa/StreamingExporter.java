@@ -0,0 +1,216 @@
+package com.commander.common.jpa;
+
+import com.commander.common.mapper.BeanMapper;
+import com.commander.common.util.Json;
+import com.dslplatform.json.JsonWriter;
+import jakarta.persistence.EntityManager;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Streams the rows matching a {@link Specification} straight to the response, for exports too big for a page.
+ * <p>
+ * Rows are read through {@code getResultStream()} with a JDBC fetch size inside a read-only transaction, which makes
+ * the Postgres driver use a server-side cursor and hold only {@code fetchSize} rows at a time. Entities are read-only
+ * (no dirty-checking snapshot) and the persistence context is cleared every {@code clearEvery} rows, so the heap
+ * stays flat however many rows are exported. The body is written on the MVC async thread once the controller has
+ * returned; exports longer than {@code timeout} are cut off. The timeout applies to the export response only, other
+ * async requests keep {@code spring.mvc.async.request-timeout}.
+ */
+@Log4j2
+public class StreamingExporter {
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    public static final MediaType CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int fetchSize;
+    private final int clearEvery;
+    private final CallableProcessingInterceptor timeoutInterceptor;
+
+    /**
+     * @param entityManager      shared entity manager, bound to the transaction of each export
+     * @param transactionManager transaction manager of {@code entityManager}
+     * @param fetchSize          rows fetched from the cursor per round trip
+     * @param clearEvery         rows read between two clears of the persistence context
+     * @param timeout            time an export response may take to be written
+     */
+    public StreamingExporter(EntityManager entityManager, PlatformTransactionManager transactionManager, int fetchSize, int clearEvery,
+                             Duration timeout) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.fetchSize = fetchSize;
+        this.clearEvery = clearEvery;
+        var timeoutMillis = timeout.toMillis();
+        this.timeoutInterceptor = new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                if (request instanceof AsyncWebRequest asyncRequest) {
+                    asyncRequest.setTimeout(timeoutMillis);
+                }
+            }
+        };
+    }
+
+    /**
+     * Export rows as newline delimited JSON, one object per line.
+     *
+     * @param entity        entity class
+     * @param specification filter of rows, may be null
+     * @param sort          order of rows
+     * @param mapper        maps an entity to the exported object
+     * @param writer        encoder of the exported object
+     */
+    public <E, R> ResponseEntity<StreamingResponseBody> ndjson(Class<E> entity, Specification<E> specification, Sort sort,
+                                                              BeanMapper<E, R> mapper, JsonWriter.WriteObject<R> writer) {
+        StreamingResponseBody body = output -> {
+            var out = new BufferedOutputStream(output, BUFFER_SIZE);
+            stream(entity, specification, sort, row -> {
+                try {
+                    out.write(Json.encode(mapper.map(row), writer));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        applyTimeout();
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Export rows as RFC 4180 CSV with a header line, as an attachment named {@code filename}.
+     *
+     * @param entity        entity class
+     * @param specification filter of rows, may be null
+     * @param sort          order of rows
+     * @param mapper        maps an entity to the exported object
+     * @param columns       columns of the exported object
+     * @param filename      name of the downloaded file
+     */
+    public <E, R> ResponseEntity<StreamingResponseBody> csv(Class<E> entity, Specification<E> specification, Sort sort,
+                                                           BeanMapper<E, R> mapper, List<CsvColumn<R>> columns, String filename) {
+        StreamingResponseBody body = output -> {
+            var out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+            for (int i = 0; i < columns.size(); ++i) {
+                writeCsvField(out, i, columns.get(i).header());
+            }
+            out.write("\r\n");
+            stream(entity, specification, sort, row -> {
+                var mapped = mapper.map(row);
+                try {
+                    for (int i = 0; i < columns.size(); ++i) {
+                        writeCsvField(out, i, columns.get(i).value().apply(mapped));
+                    }
+                    out.write("\r\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        applyTimeout();
+        return ResponseEntity.ok()
+                .contentType(CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+
+    /**
+     * Pass every matching row to {@code consumer} in a read-only transaction, without keeping them in memory.
+     * Entities must not be used once the consumer returns, they may already be detached.
+     *
+     * @return number of rows read
+     */
+    public <E> long stream(Class<E> entity, Specification<E> specification, Sort sort, Consumer<? super E> consumer) {
+        var start = System.nanoTime();
+        Long count = transactionTemplate.execute(status -> {
+            var builder = entityManager.getCriteriaBuilder();
+            var query = builder.createQuery(entity);
+            var root = query.from(entity);
+            if (specification != null) {
+                var predicate = specification.toPredicate(root, query, builder);
+                if (predicate != null) {
+                    query.where(predicate);
+                }
+            }
+            if (sort != null && sort.isSorted()) {
+                query.orderBy(QueryUtils.toOrders(sort, root, builder));
+            }
+            long rows = 0;
+            try (var stream = entityManager.createQuery(query)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .getResultStream()) {
+                var iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    consumer.accept(iterator.next());
+                    if (++rows % clearEvery == 0) {
+                        entityManager.clear();
+                    }
+                }
+            }
+            return rows;
+        });
+        log.info("Exported {} rows of {} in {} ms", count, entity.getSimpleName(), (System.nanoTime() - start) / 1_000_000);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Give the async processing of the current request, which writes the returned body, the export timeout
+     */
+    private void applyTimeout() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            WebAsyncUtils.getAsyncManager(attributes.getRequest()).registerCallableInterceptor(StreamingExporter.class.getName(), timeoutInterceptor);
+        }
+    }
+
+    private static void writeCsvField(Writer out, int index, Object value) throws IOException {
+        if (index > 0) {
+            out.write(',');
+        }
+        if (value == null) {
+            return;
+        }
+        var text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            out.write(text);
+            return;
+        }
+        out.write('"');
+        out.write(text.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,124 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.Specifications;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.Session;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.CollectionUtils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code IN} predicates over sets too large for one array parameter, loaded into a temporary table of the current
+ * transaction and matched with a semi-join.
+ * <p>
+ * Values are inserted with a single {@code insert ... select unnest(?)} and the table is analyzed, so the planner sees
+ * the real size of the set and can pick a hash join instead of probing the index once per value. Temporary tables are
+ * created per connection with {@code on commit delete rows}: the query must run in the transaction that loaded the
+ * set, and nothing is left behind once it ends.
+ * <p>
+ * Loading and analyzing the table costs more than binding the array: {@code InBenchmarkTest} has the array ahead at
+ * every size up to 1M ids, the whole table (1.5s against 5.5s). The table only pays off when one large set filters
+ * several queries of a transaction, since the returned {@code Specification} can be reused without loading the set
+ * again, so {@link #DEFAULT_THRESHOLD} leaves every set to the array and callers opt in with a threshold.
+ * <p>
+ * PostgreSQL cannot create a temporary table in a read-only transaction or on a standby, so there, which includes
+ * {@code @Transactional(readOnly = true)} work routed to a {@link ReplicaDataSource}, the set is bound as an array
+ * whatever its size.
+ */
+public class ValueTable {
+    /**
+     * Temporary table of each column type, also the name of its predicate function in {@link PostgresFunctionContributor}
+     */
+    static final Map<String, String> TABLES = Map.of(
+            "bigint", "in_values_bigint",
+            "uuid", "in_values_uuid",
+            "text", "in_values_text");
+    /**
+     * Sets smaller than this are bound as one array parameter by {@link Specifications#inArray}: all of them, as a
+     * single query is never faster with the table
+     */
+    public static final int DEFAULT_THRESHOLD = Integer.MAX_VALUE;
+
+    private static final AtomicInteger SET_IDS = new AtomicInteger();
+
+    private ValueTable() {
+    }
+
+    public static <E, T> Specification<E> in(EntityManager entityManager, SingularAttribute<E, T> attribute, Collection<T> values) {
+        return in(entityManager, attribute, values, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Rows whose {@code attribute} is one of {@code values}, read from a temporary table when there are at least
+     * {@code threshold} of them and the transaction can write. Must be called in the transaction running the query.
+     *
+     * @param attribute attribute of type {@code Long}, {@code Integer}, {@code Short}, {@code UUID} or {@code String}
+     */
+    public static <E, T> Specification<E> in(EntityManager entityManager, SingularAttribute<E, T> attribute, Collection<T> values, int threshold) {
+        if (CollectionUtils.isEmpty(values)) {
+            return null;
+        }
+        if (values.size() < threshold) {
+            return Specifications.inArray(attribute, values);
+        }
+        var sqlType = sqlType(attribute.getJavaType());
+        var table = TABLES.get(sqlType);
+        var setId = SET_IDS.incrementAndGet();
+        var loaded = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            if (connection.getAutoCommit()) {
+                throw new IllegalStateException("Temporary table of " + attribute.getName() + " needs a transaction");
+            }
+            // also true on a standby, whatever the connection was asked for
+            try (var statement = connection.createStatement();
+                 var resultSet = statement.executeQuery("select current_setting('transaction_read_only')::boolean")) {
+                resultSet.next();
+                if (resultSet.getBoolean(1)) {
+                    return false;
+                }
+            }
+            try (var statement = connection.createStatement()) {
+                statement.execute("create temporary table if not exists " + table
+                        + " (set_id integer not null, v " + sqlType + " not null, primary key (set_id, v)) on commit delete rows");
+            }
+            var array = connection.createArrayOf(sqlType, values.toArray());
+            try (var insert = connection.prepareStatement("insert into " + table + " select ?, v from unnest(?) v on conflict do nothing")) {
+                insert.setInt(1, setId);
+                insert.setArray(2, array);
+                insert.executeUpdate();
+            } finally {
+                array.free();
+            }
+            try (var statement = connection.createStatement()) {
+                statement.execute("analyze " + table);
+            }
+            return true;
+        });
+        if (!loaded) {
+            return Specifications.inArray(attribute, values);
+        }
+        // the set id is bound, so the statement is the same for every set
+        return (root, query, builder) -> builder.isTrue(builder.function(table, Boolean.class, root.get(attribute),
+                ((HibernateCriteriaBuilder) builder).value(setId)));
+    }
+
+    private static String sqlType(Class<?> type) {
+        var boxed = ClassUtils.resolvePrimitiveIfNecessary(type);
+        if (boxed == Long.class || boxed == Integer.class || boxed == Short.class) {
+            return "bigint";
+        }
+        if (boxed == UUID.class) {
+            return "uuid";
+        }
+        if (boxed == String.class) {
+            return "text";
+        }
+        throw new IllegalArgumentException("No temporary table for values of " + type.getName());
+    }
+}
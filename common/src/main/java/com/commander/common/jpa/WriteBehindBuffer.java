@@ -0,0 +1,212 @@
+package com.commander.common.jpa;
+
+import com.commander.common.exception.BusinessException;
+import com.commander.common.util.ErrorCode;
+import com.commander.common.util.MpscRingBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer of rows written often and read later, such as audit records or events: the calling thread only
+ * offers the row into a lock-free ring buffer, and a single daemon thread writes the buffered rows in batches of at
+ * most {@code batchSize}, each with one statement and one commit, instead of one transaction per row on the request
+ * path.
+ * <p>
+ * A batch is written once {@code batchSize} rows are buffered or {@code flushInterval} after the previous one. Memory
+ * is bounded by {@code capacity} rows: when the buffer is full, {@link #add} waits up to {@code offerTimeout} for the
+ * writer thread to catch up, then fails with {@link ErrorCode#SERVICE_UNAVAILABLE}. A batch failing 3 times is dropped
+ * and logged. {@link #close} writes everything still buffered, so a buffer declared as a bean is flushed when the
+ * context shuts down; rows are lost if the process dies before.
+ *
+ * @param <R> type of row
+ */
+@Log4j2
+public class WriteBehindBuffer<R> implements AutoCloseable {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final String name;
+    private final Consumer<List<R>> writer;
+    private final MpscRingBuffer<R> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long offerTimeoutNanos;
+    private final Timer flushes;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter rejected;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile boolean closed;
+    private volatile boolean flushing;
+
+    /**
+     * @param name          name of the writer thread and tag of the meters, e.g. the table
+     * @param writer        writes one batch, a failure is retried with the same rows
+     * @param capacity      rows buffered at most
+     * @param batchSize     rows written at most per call to {@code writer}
+     * @param flushInterval time rows wait at most for a batch to fill up
+     * @param offerTimeout  time {@link #add} waits for room in a full buffer
+     * @param registry      registry of the {@code write.behind} meters, may be null to disable metrics
+     */
+    public WriteBehindBuffer(String name, Consumer<List<R>> writer, int capacity, int batchSize, Duration flushInterval,
+                             Duration offerTimeout, MeterRegistry registry) {
+        this.name = name;
+        this.writer = writer;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        if (registry == null) {
+            flushes = null;
+            written = null;
+            dropped = null;
+            rejected = null;
+        } else {
+            Gauge.builder("write.behind.buffered", buffer, MpscRingBuffer::size).tag("name", name).register(registry);
+            flushes = Timer.builder("write.behind.flush").tag("name", name).register(registry);
+            written = rows(registry, "written");
+            dropped = rows(registry, "dropped");
+            rejected = rows(registry, "rejected");
+        }
+        this.worker = Thread.ofPlatform().name("write-behind-" + name).daemon().start(this::run);
+    }
+
+    /**
+     * Buffer that copies its batches into {@code table} with {@link BulkWriter#copy}
+     */
+    public static <R> WriteBehindBuffer<R> copy(BulkWriter bulkWriter, String table, List<BulkColumn<R>> columns, int capacity,
+                                                int batchSize, Duration flushInterval, Duration offerTimeout, MeterRegistry registry) {
+        return new WriteBehindBuffer<>(table, rows -> bulkWriter.copyRows(table, columns, rows.iterator()), capacity, batchSize,
+                flushInterval, offerTimeout, registry);
+    }
+
+    /**
+     * Buffer {@code row} for the next batch, waiting for room when the buffer is full.
+     *
+     * @throws BusinessException {@link ErrorCode#SERVICE_UNAVAILABLE} when there is still no room after the offer
+     *                           timeout
+     */
+    public void add(R row) {
+        if (closed) {
+            throw new IllegalStateException("Write-behind buffer " + name + " is closed");
+        }
+        if (buffer.offer(row)) {
+            if (buffer.size() >= batchSize) {
+                LockSupport.unpark(worker);
+            }
+            return;
+        }
+        LockSupport.unpark(worker);
+        var deadline = System.nanoTime() + offerTimeoutNanos;
+        while (!buffer.offer(row)) {
+            if (System.nanoTime() - deadline >= 0) {
+                increment(rejected, 1);
+                throw new BusinessException(ErrorCode.SERVICE_UNAVAILABLE, "Write-behind buffer " + name + " is full");
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Wait until the rows buffered so far are written, or dropped after failing
+     */
+    public void flush() {
+        LockSupport.unpark(worker);
+        while ((buffer.size() > 0 || flushing) && worker.isAlive()) {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    /**
+     * Refuse new rows, write the buffered ones and stop the writer thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (buffer.size() > 0) {
+            log.error("Write-behind buffer {} closed with {} rows not written", name, buffer.size());
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(flushIntervalNanos);
+            writeAll();
+        }
+        writeAll();
+    }
+
+    private void writeAll() {
+        while (buffer.size() > 0) {
+            // set before draining, so flush() never sees an empty buffer while a batch is not written
+            flushing = true;
+            try {
+                var batch = new ArrayList<R>(Math.min(batchSize, buffer.size()));
+                buffer.drain(batch::add, batchSize);
+                if (batch.isEmpty()) {
+                    // a producer claimed a slot but has not published into it yet
+                    Thread.onSpinWait();
+                    continue;
+                }
+                write(batch);
+            } finally {
+                flushing = false;
+            }
+        }
+    }
+
+    private void write(List<R> batch) {
+        for (int attempt = 1; ; ++attempt) {
+            var start = System.nanoTime();
+            try {
+                writer.accept(batch);
+                if (flushes != null) {
+                    flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                increment(written, batch.size());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    log.error("Write-behind buffer {} dropped {} rows after {} attempts", name, batch.size(), attempt, e);
+                    increment(dropped, batch.size());
+                    return;
+                }
+                log.warn("Write-behind buffer {} failed to write {} rows, attempt {} of {}", name, batch.size(), attempt,
+                        MAX_ATTEMPTS, e);
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+    }
+
+    private Counter rows(MeterRegistry registry, String outcome) {
+        return Counter.builder("write.behind.rows").tag("name", name).tag("outcome", outcome).register(registry);
+    }
+
+    private static void increment(Counter counter, int amount) {
+        if (counter != null) {
+            counter.increment(amount);
+        }
+    }
+}
@@ -6,7 +6,9 @@ import org.springframework.data.domain.Page;
 import com.commander.common.exception.BusinessErrorCode;
 import com.commander.common.exception.BusinessException;
 import com.commander.common.exception.FieldViolation;
+import com.commander.common.jpa.ApproximatePage;
 import com.commander.common.util.Constant;
+import com.commander.common.util.KeysetSlice;
 
 import java.util.List;
 
@@ -43,6 +45,18 @@ public class Response<T> {
         response.meta.page = data.getNumber();
         response.meta.size = data.getSize();
         response.meta.total = data.getTotalElements();
+        if (data instanceof ApproximatePage<T> approximatePage && approximatePage.isApproximate()) {
+            response.meta.approximate = true;
+        }
+        return response;
+    }
+
+    public static <T> Response<List<T>> ofSucceeded(KeysetSlice<T> data) {
+        Response<List<T>> response = new Response<>();
+        response.data = data.content();
+        response.meta.code = Metadata.OK_CODE;
+        response.meta.size = data.size();
+        response.meta.nextCursor = data.nextCursor();
         return response;
     }
 
@@ -85,18 +99,27 @@ public class Response<T> {
         Integer page;
         Integer size;
         Long total;
+        Boolean approximate;
+        String nextCursor;
         String message;
         List<FieldViolation> errors;
 
         public Metadata() {
         }
 
-        @CompiledJson
         public Metadata(String code, Integer page, Integer size, Long total, String message, List<FieldViolation> errors) {
+            this(code, page, size, total, null, null, message, errors);
+        }
+
+        @CompiledJson
+        public Metadata(String code, Integer page, Integer size, Long total, Boolean approximate, String nextCursor, String message,
+                        List<FieldViolation> errors) {
             this.code = code;
             this.page = page;
             this.size = size;
             this.total = total;
+            this.approximate = approximate;
+            this.nextCursor = nextCursor;
             this.message = message;
             this.errors = errors;
         }
@@ -117,6 +140,17 @@ public class Response<T> {
             return total;
         }
 
+        /**
+         * @return true if {@code total} is an estimate or a cached count, null if it is exact
+         */
+        public Boolean getApproximate() {
+            return approximate;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
         public String getMessage() {
             return message;
         }
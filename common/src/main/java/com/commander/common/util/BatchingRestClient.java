@@ -0,0 +1,169 @@
+package com.commander.common.util;
+
+import com.commander.common.exception.BusinessException;
+import com.dslplatform.json.JsonReader;
+import com.dslplatform.json.JsonWriter;
+import lombok.extern.log4j.Log4j2;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups single-item calls into one POST to a bulk endpoint.
+ * <p>
+ * Callers {@link #submit(Object)} one item and get their own future back. Pending items are sent as a JSON array
+ * once {@code maxBatchSize} items are queued or {@code maxLinger} has passed since the first one, whichever comes
+ * first. The bulk endpoint must answer with a JSON array of the same length, where the n-th element is the result
+ * of the n-th item; each element is completed into the future of the caller that submitted it.
+ *
+ * @param <T> type of a single request item
+ * @param <R> type of a single result item
+ */
+@Log4j2
+public class BatchingRestClient<T, R> implements AutoCloseable {
+    private final RestClient restClient;
+    private final URI uri;
+    private final Map<String, String> headers;
+    private final JsonWriter.WriteObject<List<T>> batchWriter;
+    private final JsonReader.ReadObject<List<R>> batchReader;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private List<Pending<T, R>> pending;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed;
+
+    public BatchingRestClient(RestClient restClient, URI uri, JsonWriter.WriteObject<T> itemWriter, JsonReader.ReadObject<R> itemReader,
+                              int maxBatchSize, Duration maxLinger, ScheduledExecutorService scheduler) {
+        this(restClient, uri, null, itemWriter, itemReader, maxBatchSize, maxLinger, scheduler);
+    }
+
+    /**
+     * @param restClient client used to send the bulk request
+     * @param uri        bulk endpoint
+     * @param headers    headers added to every bulk request, may be null
+     * @param itemWriter encoder of a single request item
+     * @param itemReader decoder of a single result item
+     * @param maxBatchSize maximum number of items in one bulk request
+     * @param maxLinger  maximum time the first item of a batch waits for others
+     * @param scheduler  scheduler of the linger timer, not shut down by {@link #close()}
+     */
+    public BatchingRestClient(RestClient restClient, URI uri, Map<String, String> headers, JsonWriter.WriteObject<T> itemWriter,
+                              JsonReader.ReadObject<R> itemReader, int maxBatchSize, Duration maxLinger, ScheduledExecutorService scheduler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than zero");
+        }
+        this.restClient = restClient;
+        this.uri = uri;
+        this.headers = headers;
+        this.batchWriter = (writer, items) -> writer.serialize(items, itemWriter);
+        this.batchReader = reader -> reader.readCollection(itemReader);
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = maxLinger.toNanos();
+        this.scheduler = scheduler;
+        this.pending = new ArrayList<>(maxBatchSize);
+    }
+
+    /**
+     * Queue one item for the next bulk request.
+     *
+     * @param item request item
+     * @return future completed with the result of this item, or exceptionally when the bulk request fails
+     */
+    public CompletableFuture<R> submit(T item) {
+        var future = new CompletableFuture<R>();
+        List<Pending<T, R>> full = null;
+        synchronized (lock) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("BatchingRestClient is closed"));
+                return future;
+            }
+            pending.add(new Pending<>(item, future));
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (pending.size() == 1) {
+                lingerTask = scheduler.schedule(this::flush, maxLingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return future;
+    }
+
+    /**
+     * Send pending items now without waiting for the batch to fill up.
+     */
+    public void flush() {
+        List<Pending<T, R>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = drain();
+        }
+        send(batch);
+    }
+
+    /**
+     * Send pending items and reject further submissions.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+    }
+
+    private List<Pending<T, R>> drain() {
+        var batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        return batch;
+    }
+
+    private void send(List<Pending<T, R>> batch) {
+        var items = new ArrayList<T>(batch.size());
+        for (var p : batch) {
+            items.add(p.item());
+        }
+        CompletableFuture<List<R>> response;
+        try {
+            response = restClient.postForObject(uri, headers, items, batchWriter, batchReader);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((results, e) -> {
+            if (e == null && (results == null || results.size() != batch.size())) {
+                e = new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "Bulk response of " + uri + " has "
+                        + (results == null ? 0 : results.size()) + " results for " + batch.size() + " items");
+            }
+            if (e != null) {
+                log.error("Send batch of {} items to {} failed", batch.size(), uri, e);
+                for (var p : batch) {
+                    p.future().completeExceptionally(e);
+                }
+                return;
+            }
+            for (int i = 0; i < batch.size(); ++i) {
+                batch.get(i).future().complete(results.get(i));
+            }
+        });
+    }
+
+    private record Pending<T, R>(T item, CompletableFuture<R> future) {
+    }
+}
@@ -11,12 +11,18 @@ import java.util.HashSet;
 public class ErrorCode {
     public static final BusinessErrorCode INTERNAL_SERVER_ERROR =
             new BusinessErrorCode(5000, "Internal server error", 500);
+    public static final BusinessErrorCode SERVICE_UNAVAILABLE =
+            new BusinessErrorCode(5003, "Service is overloaded, retry later", 503);
+    public static final BusinessErrorCode GATEWAY_TIMEOUT =
+            new BusinessErrorCode(5004, "Downstream service did not respond in time", 504);
     public static final BusinessErrorCode INVALID_PARAMETERS =
             new BusinessErrorCode(4000, "Invalid parameters", 400);
     public static final BusinessErrorCode UNAUTHORIZED =
             new BusinessErrorCode(4001, "You need to login to to access this resource", 401);
     public static final BusinessErrorCode FORBIDDEN =
             new BusinessErrorCode(4002, "You don't have permission to to access this resource", 403);
+    public static final BusinessErrorCode TOO_MANY_REQUESTS =
+            new BusinessErrorCode(4029, "Downstream service is throttling requests", 429);
 
     static {
         var codes = new HashSet<Integer>();
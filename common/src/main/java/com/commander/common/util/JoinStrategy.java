@@ -0,0 +1,34 @@
+package com.commander.common.util;
+
+/**
+ * How {@link Specifications#equalsJoin} keeps the rows having a matching row in another entity. All strategies return
+ * the same rows; which one Postgres plans best depends on how many rows match on each side.
+ */
+public enum JoinStrategy {
+    /**
+     * {@code exists (select 1 from sub where sub.key = root.key and ...)}, good when few root rows are read, e.g. a
+     * small page over a selective filter of the root.
+     */
+    EXISTS,
+    /**
+     * {@code root.key in (select sub.key from sub where ...)}, lets the subquery be read first when its filter is the
+     * selective one.
+     */
+    IN_SUBQUERY,
+    /**
+     * {@code select distinct root from root join sub on sub.key = root.key where ...}, the planner is free to order the
+     * join but the distinct sorts or hashes the rows read.
+     * <p>
+     * The distinct applies to the whole query, and Postgres only sorts a distinct query by expressions it selects: a
+     * sort on a joined path or a computed one such as {@code fts_rank} fails with "for SELECT DISTINCT, ORDER BY
+     * expressions must appear in select list". Only for queries of the root entity sorted by its own attributes.
+     */
+    INNER_JOIN_DISTINCT,
+    /**
+     * Keys of the matching rows are read by a query of their own, then bound as one array with
+     * {@link Specifications#inArray}. Two round trips, but the root query is planned knowing the keys; only for
+     * filters matching a limited number of rows. The keys are read when the specification is first applied, and past
+     * {@link Specifications#MAX_RESOLVED_IDS} of them it falls back to {@link #IN_SUBQUERY}.
+     */
+    RESOLVED_IDS
+}
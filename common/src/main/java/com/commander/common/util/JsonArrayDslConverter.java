@@ -0,0 +1,24 @@
+package com.commander.common.util;
+
+import com.dslplatform.json.JsonConverter;
+import com.dslplatform.json.JsonReader;
+import com.dslplatform.json.JsonWriter;
+import com.dslplatform.json.ObjectConverter;
+
+@JsonConverter(target = JsonArray.class)
+public class JsonArrayDslConverter {
+    public static final JsonReader.ReadObject<JsonArray> JSON_READER = reader -> {
+        if (reader.wasNull()) {
+            return null;
+        }
+        return new JsonArray(ObjectConverter.deserializeList(reader));
+    };
+
+    public static final JsonWriter.WriteObject<JsonArray> JSON_WRITER = (writer, value) -> {
+        if (value == null) {
+            writer.writeNull();
+        } else {
+            writer.serializeObject(value.getList());
+        }
+    };
+}
@@ -76,6 +76,10 @@ public final class JsonUtil {
         } else if (val instanceof CharSequence) {
             // CharSequences are not immutable, so we force toString() to become immutable
             val = val.toString();
+        } else if (val instanceof JsonObject) {
+            val = ((JsonObject) val).copy(copier);
+        } else if (val instanceof JsonArray) {
+            val = ((JsonArray) val).copy(copier);
         } else if (val instanceof Map) {
             val = (new JsonObject((Map) val)).copy(copier);
         } else if (val instanceof List) {
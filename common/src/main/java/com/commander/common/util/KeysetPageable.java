@@ -0,0 +1,92 @@
+package com.commander.common.util;
+
+import com.commander.common.exception.FieldViolation;
+import com.commander.common.exception.ValidateException;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request of one page by keyset (seek) pagination, built by {@link Pageables#keyset(String, int, String, String)}.
+ * <p>
+ * Rows are read in {@code sort} order, which always ends with a unique attribute, starting right after the row whose
+ * sort keys are {@code after}. The cursor handed to clients is a hash of the sort followed by those keys, as a base64url
+ * encoded JSON array, so it is opaque to them but needs no server-side state, and a cursor of another sort is
+ * rejected. Sort attributes must not be nullable.
+ *
+ * @param sort  order of rows, ending with a unique attribute
+ * @param size  maximum number of rows in the page
+ * @param after sort keys of the last row of the previous page, null for the first page
+ */
+public record KeysetPageable(Sort sort, int size, List<Object> after) {
+
+    public boolean isFirst() {
+        return after == null;
+    }
+
+    /**
+     * @param row last row of a page
+     * @return cursor of the page following {@code row}
+     */
+    public String cursorOf(Object row) {
+        var accessor = PropertyAccessorFactory.forBeanPropertyAccess(row);
+        var keys = new ArrayList<Object>();
+        keys.add(signature(sort));
+        for (var order : sort) {
+            keys.add(toJsonValue(accessor.getPropertyValue(order.getProperty())));
+        }
+        return JsonUtil.BASE64_ENCODER.encodeToString(Json.encode(keys));
+    }
+
+    /**
+     * @param cursor cursor returned by {@link #cursorOf(Object)} for the same sort
+     * @param sort   order of rows
+     * @return sort keys encoded in {@code cursor}
+     */
+    static List<Object> decodeCursor(String cursor, Sort sort) {
+        List<?> keys;
+        try {
+            keys = Json.decode(JsonUtil.BASE64_DECODER.decode(cursor), List.class);
+        } catch (RuntimeException e) {
+            throw invalidCursor();
+        }
+        if (keys == null || keys.size() != sort.stream().count() + 1
+                || !(keys.get(0) instanceof Number n) || n.longValue() != signature(sort)) {
+            throw invalidCursor();
+        }
+        return new ArrayList<>(keys.subList(1, keys.size()));
+    }
+
+    /**
+     * Hash of the attributes and directions of {@code sort}
+     */
+    private static int signature(Sort sort) {
+        var hash = 1;
+        for (var order : sort) {
+            hash = 31 * hash + order.getProperty().hashCode();
+            hash = 31 * hash + order.getDirection().name().hashCode();
+            hash = 31 * hash + Boolean.hashCode(order.isIgnoreCase());
+        }
+        return hash;
+    }
+
+    private static Object toJsonValue(Object value) {
+        if (value == null) {
+            throw new IllegalStateException("Keyset pagination needs non null sort attributes");
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Enum<?> e) {
+            return e.name();
+        }
+        // Instant, LocalDate(Time), OffsetDateTime, UUID... are parsed back from their toString()
+        return value.toString();
+    }
+
+    private static ValidateException invalidCursor() {
+        return new ValidateException(List.of(new FieldViolation("cursor", "Cursor is invalid or does not match the sort")));
+    }
+}
@@ -0,0 +1,30 @@
+package com.commander.common.util;
+
+import java.util.List;
+
+/**
+ * One page read by keyset pagination. Unlike a {@code Page} it carries no total, so reading it needs no count query.
+ *
+ * @param content    rows of the page
+ * @param size       requested page size
+ * @param nextCursor cursor of the following page, null on the last page
+ * @param <T>        type of row
+ */
+public record KeysetSlice<T>(List<T> content, int size, String nextCursor) {
+
+    /**
+     * @param rows     rows read with a limit of {@code pageable.size() + 1}, the extra row only tells a next page exists
+     * @param pageable request of the page
+     */
+    public static <T> KeysetSlice<T> of(List<T> rows, KeysetPageable pageable) {
+        if (rows.size() <= pageable.size()) {
+            return new KeysetSlice<>(rows, pageable.size(), null);
+        }
+        var content = rows.subList(0, pageable.size());
+        return new KeysetSlice<>(content, pageable.size(), pageable.cursorOf(content.get(content.size() - 1)));
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
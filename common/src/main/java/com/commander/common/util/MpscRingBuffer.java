@@ -0,0 +1,81 @@
+package com.commander.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * Producers claim a slot with one CAS and never block: {@link #offer(Object)} returns false when the buffer is full,
+ * leaving it to the caller to drop or fall back. Only one thread at a time may call {@link #drain(Consumer, int)}.
+ *
+ * @param <E> type of element
+ */
+public class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of elements, rounded up to a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        var size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return false if the buffer is full and the element was not added
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head.get() >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+        slots.lazySet((int) (seq & mask), element);
+        return true;
+    }
+
+    /**
+     * Remove up to {@code max} elements in insertion order. Must only be called by the consumer thread.
+     *
+     * @return number of elements passed to {@code consumer}
+     */
+    public int drain(Consumer<? super E> consumer, int max) {
+        var seq = head.get();
+        int count = 0;
+        while (count < max) {
+            var index = (int) (seq & mask);
+            var element = slots.get(index);
+            if (element == null) {
+                // empty, or a producer claimed the slot but has not published into it yet
+                break;
+            }
+            slots.lazySet(index, null);
+            head.lazySet(++seq);
+            consumer.accept(element);
+            ++count;
+        }
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+}
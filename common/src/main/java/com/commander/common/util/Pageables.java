@@ -5,6 +5,8 @@ import com.commander.common.exception.ValidateException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -24,6 +26,42 @@ public class Pageables {
         return PageRequest.of(page, size, sort);
     }
 
+    /**
+     * Keyset pagination: the page after {@code cursor} instead of the n-th page, so deep pages cost as much as the
+     * first one and no count is needed.
+     *
+     * @param cursor     {@code meta.nextCursor} of the previous page, null or empty for the first page
+     * @param size       page size
+     * @param sorts      order as for {@link #of(int, int, String)}, sort attributes must not be nullable
+     * @param uniqueAttr unique attribute, e.g. the id, appended ascending as tie-breaker unless already sorted on
+     * @return KeysetPageable
+     */
+    public static KeysetPageable keyset(String cursor, int size, String sorts, String uniqueAttr) {
+        if (size < 1) {
+            throw new ValidateException(List.of(new FieldViolation("size", "Page size: " + size + " less then one")));
+        }
+        var sort = sorts == null ? Sort.unsorted() : parseSort(sorts);
+        if (sort.getOrderFor(uniqueAttr) == null) {
+            sort = sort.and(Sort.by(Sort.Direction.ASC, uniqueAttr));
+        }
+        var after = cursor == null || cursor.isEmpty() ? null : KeysetPageable.decodeCursor(cursor, sort);
+        return new KeysetPageable(sort, size, after);
+    }
+
+    /**
+     * Read one page by keyset pagination, no count query is executed.
+     *
+     * @param repository   repository of the entity
+     * @param specification filter of rows, may be null
+     * @param pageable     page to read
+     * @return KeysetSlice
+     */
+    public static <E> KeysetSlice<E> find(JpaSpecificationExecutor<E> repository, Specification<E> specification, KeysetPageable pageable) {
+        var rows = repository.findBy(Specification.where(specification).and(Specifications.seek(pageable)),
+                query -> query.sortBy(pageable.sort()).limit(pageable.size() + 1).all());
+        return KeysetSlice.of(rows, pageable);
+    }
+
     private static Sort parseSort(String sorts) {
         var orders = new ArrayList<Sort.Order>();
         var matcher = ORDER_PATTERN.matcher(sorts);
@@ -31,7 +69,7 @@ public class Pageables {
         Sort.Direction direction;
         while (matcher.find()) {
             fieldName = matcher.group(1);
-            direction = Sort.Direction.valueOf(matcher.group(1));
+            direction = Sort.Direction.valueOf(matcher.group(2));
             orders.add(new Sort.Order(direction, fieldName));
         }
         return orders.isEmpty() ? Sort.unsorted() : Sort.by(orders);
@@ -0,0 +1,48 @@
+package com.commander.common.util;
+
+import com.dslplatform.json.JsonReader;
+import com.dslplatform.json.JsonWriter;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Description of one blocking call made through {@link RestClient#call(RestCall)}.
+ *
+ * @param method  HTTP method
+ * @param uri     destination url
+ * @param headers headers, may be null
+ * @param body    encoded request body, may be null
+ * @param reader  decoder of the response body
+ * @param <R>     type response data
+ */
+public record RestCall<R>(String method, URI uri, Map<String, String> headers, byte[] body, JsonReader.ReadObject<R> reader) {
+
+    public static <R> RestCall<R> get(URI uri, JsonReader.ReadObject<R> reader) {
+        return get(uri, null, reader);
+    }
+
+    public static <R> RestCall<R> get(URI uri, Map<String, String> headers, JsonReader.ReadObject<R> reader) {
+        return new RestCall<>("GET", uri, headers, null, reader);
+    }
+
+    public static <T, R> RestCall<R> post(URI uri, T request, JsonWriter.WriteObject<T> writer, JsonReader.ReadObject<R> reader) {
+        return post(uri, null, request, writer, reader);
+    }
+
+    public static <T, R> RestCall<R> post(URI uri, Map<String, String> headers, T request, JsonWriter.WriteObject<T> writer, JsonReader.ReadObject<R> reader) {
+        return new RestCall<>("POST", uri, headers, Json.encode(request, writer), reader);
+    }
+
+    public static <T, R> RestCall<R> put(URI uri, T request, JsonWriter.WriteObject<T> writer, JsonReader.ReadObject<R> reader) {
+        return put(uri, null, request, writer, reader);
+    }
+
+    public static <T, R> RestCall<R> put(URI uri, Map<String, String> headers, T request, JsonWriter.WriteObject<T> writer, JsonReader.ReadObject<R> reader) {
+        return new RestCall<>("PUT", uri, headers, request == null ? null : Json.encode(request, writer), reader);
+    }
+
+    public static <R> RestCall<R> delete(URI uri, Map<String, String> headers, JsonReader.ReadObject<R> reader) {
+        return new RestCall<>("DELETE", uri, headers, null, reader);
+    }
+}
@@ -5,14 +5,25 @@ import com.dslplatform.json.JsonWriter;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import com.commander.common.exception.BusinessException;
+import com.commander.common.http.Deadline;
+import com.commander.common.http.HostRateLimiter;
+import com.commander.common.http.RestAuditor;
+import com.commander.common.http.RestClientMetrics;
+import com.commander.common.jpa.ConnectionHoldTracker;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 @Getter
@@ -20,9 +31,46 @@ import java.util.concurrent.TimeUnit;
 public class RestClient {
   private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
   private final HttpClient httpClient;
+  private final RestClientMetrics metrics;
+  private final HostRateLimiter rateLimiter;
+  private final RestAuditor auditor;
+  private final ConnectionHoldTracker holdTracker;
 
   public RestClient(HttpClient httpClient) {
+    this(httpClient, null, null, null);
+  }
+
+  public RestClient(HttpClient httpClient, RestClientMetrics metrics) {
+    this(httpClient, metrics, null, null);
+  }
+
+  /**
+   * @param httpClient  client used to send requests
+   * @param metrics     meters recording every call, may be null to disable metrics
+   * @param rateLimiter per-host rate limits of outbound calls, may be null to disable rate limiting
+   * @param auditor     audit log of requests and responses, may be null to disable auditing
+   */
+  public RestClient(HttpClient httpClient, RestClientMetrics metrics, HostRateLimiter rateLimiter, RestAuditor auditor) {
+    this(httpClient, metrics, rateLimiter, auditor, null);
+  }
+
+  /**
+   * @param holdTracker times calls made while holding a database connection, may be null to disable tracking
+   */
+  public RestClient(HttpClient httpClient, RestClientMetrics metrics, HostRateLimiter rateLimiter, RestAuditor auditor,
+                    ConnectionHoldTracker holdTracker) {
     this.httpClient = httpClient;
+    this.metrics = metrics;
+    this.rateLimiter = rateLimiter;
+    this.auditor = auditor;
+    this.holdTracker = holdTracker;
+  }
+
+  /**
+   * Builder of a client with its own HttpClient * * @return Builder
+   */
+  public static Builder builder() {
+    return new Builder();
   }
 
   public <R> CompletableFuture<R> getForObject(URI uri, JsonReader.ReadObject<R> reader) {
@@ -45,8 +93,7 @@ public class RestClient {
    */
   public CompletableFuture<HttpResponse<byte[]>> get(URI uri, Map<String, String> headers) {
     var httpRequest = newHttpRequestBuilder(uri, headers).GET().build();
-    log.info(() -> "URL :" + uri);
-    return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    return send(httpRequest, null);
   }
 
   public <T, R> CompletableFuture<R> putForObject(URI uri, T request, JsonWriter.WriteObject<T> writer, JsonReader.ReadObject<R> reader) {
@@ -68,9 +115,10 @@ public class RestClient {
    * Call API for PUT method * * @param request Object Body * @param writer encoder body request * @param uri destination url * @param headers headers * @param <T> class request body * @return CompletableFuture<HttpResponse < byte [ ]>>
    */
   public <T> CompletableFuture<HttpResponse<byte[]>> put(URI uri, Map<String, String> headers, T request, JsonWriter.WriteObject<T> writer) {
-    HttpRequest.BodyPublisher bodyPublisher = (request == null) ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(Json.encode(request, writer));
+    var body = request == null ? null : Json.encode(request, writer);
+    HttpRequest.BodyPublisher bodyPublisher = (body == null) ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body);
     var httpRequest = newHttpRequestBuilder(uri, headers).PUT(bodyPublisher).build();
-    return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    return send(httpRequest, body);
   }
 
   public <T, R> CompletableFuture<R> postForObject(URI uri, T request, JsonWriter.WriteObject<T> writer, JsonReader.ReadObject<R> reader) {
@@ -94,8 +142,7 @@ public class RestClient {
   public <T> CompletableFuture<HttpResponse<byte[]>> post(URI uri, Map<String, String> headers, T request, JsonWriter.WriteObject<T> writer) {
     var body = Json.encode(request, writer);
     var httpRequest = newHttpRequestBuilder(uri, headers).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
-    log.info(() -> "URL :" + uri + ", body " + new String(body, StandardCharsets.UTF_8));
-    return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    return send(httpRequest, body);
   }
 
   public CompletableFuture<HttpResponse<byte[]>> post(URI uri, byte[] body) {
@@ -107,8 +154,7 @@ public class RestClient {
    */
   public CompletableFuture<HttpResponse<byte[]>> post(URI uri, Map<String, String> headers, byte[] body) {
     var httpRequest = newHttpRequestBuilder(uri, headers).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
-    log.info(() -> "URL :" + uri + ", body " + new String(body, StandardCharsets.UTF_8));
-    return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    return send(httpRequest, body);
   }
 
   public CompletableFuture<HttpResponse<byte[]>> post(URI uri, Object body) {
@@ -117,9 +163,9 @@ public class RestClient {
 
   public CompletableFuture<HttpResponse<byte[]>> post(URI uri, Map<String, String> headers, Object body) {
     try {
-      var httpRequest = newHttpRequestBuilder(uri, headers).POST(HttpRequest.BodyPublishers.ofByteArray(Json.encode(body))).build();
-      log.info("URL: {}, body: {}", uri, body);
-      return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      var bytes = Json.encode(body);
+      var httpRequest = newHttpRequestBuilder(uri, headers).POST(HttpRequest.BodyPublishers.ofByteArray(bytes)).build();
+      return send(httpRequest, bytes);
     } catch (BusinessException e) {
       log.error("can't deserialize body to byte[]", e);
       var exFut = new CompletableFuture<HttpResponse<byte[]>>();
@@ -128,14 +174,50 @@ public class RestClient {
     }
   }
 
+  /**
+   * Call API and wait for the result, meant to be used from virtual threads * Handle if this call has errors, (ex: 400, 500, ...) * * @param call method, url, headers, body and decoder of the call * @param <R> type response data * @return R
+   */
+  public <R> R call(RestCall<R> call) {
+    var bodyPublisher = call.body() == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(call.body());
+    var requestBuilder = newHttpRequestBuilder(call.uri(), call.headers()).method(call.method(), bodyPublisher);
+    return handleResponse(call.uri(), call.reader(), sendBlocking(requestBuilder, call.uri(), call.headers(), call.body()));
+  }
+
+  /**
+   * Send a call without blocking and without decoding its response, whatever its status * * @param call method, url, headers and body of the call, its reader is not used * @return CompletableFuture<HttpResponse < byte [ ]>>
+   */
+  public CompletableFuture<HttpResponse<byte[]>> send(RestCall<?> call) {
+    var bodyPublisher = call.body() == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(call.body());
+    var httpRequest = newHttpRequestBuilder(call.uri(), call.headers()).method(call.method(), bodyPublisher).build();
+    return send(httpRequest, call.body());
+  }
+
+  /**
+   * Run calls concurrently on virtual threads under one deadline, cancel the others when one fails * * @param calls calls to run * @param timeout deadline of all calls * @param <R> type response data * @return List<R> in the order of calls
+   */
+  public <R> List<R> callAll(List<RestCall<R>> calls, Duration timeout) {
+    // the calls run on other threads while this one waits, holding its connection if any
+    var heldIo = holdTracker == null ? null : holdTracker.ioStarted(calls.stream().map(RestCall::uri).toList());
+    try {
+      return StructuredFanOut.invokeAll(calls.stream().<Callable<R>>map(c -> () -> call(c)).toList(), timeout);
+    } finally {
+      if (heldIo != null) {
+        heldIo.done();
+      }
+    }
+  }
+
   /**
    * Handle response * throw Exception when * * @param reader * @param uri * @param response * @param <R> * @return
    */
   private <R> R handleResponse(URI uri, JsonReader.ReadObject<R> reader, HttpResponse<byte[]> response) {
-    var body = new String(response.body(), StandardCharsets.UTF_8);
     if (response.statusCode() == 200) {
-      log.info("Send result {} to {} successful", body, uri);
       return Json.decode(response.body(), reader);
+    }
+    var body = new String(response.body(), StandardCharsets.UTF_8);
+    if (response.statusCode() == ErrorCode.TOO_MANY_REQUESTS.httpStatus()) {
+      log.error("Send result to {} throttled, because: {}", uri, body);
+      throw new BusinessException(ErrorCode.TOO_MANY_REQUESTS, body);
     } else if (response.statusCode() >= 400 && response.statusCode() <= 500) {
       log.error("Send result to {} rejected, because: {}", uri, body);
       throw new BusinessException(ErrorCode.INVALID_PARAMETERS, body);
@@ -154,7 +236,139 @@ public class RestClient {
    */
   public CompletableFuture<HttpResponse<byte[]>> delete(URI uri, Map<String, String> headers) {
     var httpRequest = newHttpRequestBuilder(uri, headers).DELETE().build();
-    return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    return send(httpRequest, null);
+  }
+
+  /**
+   * Send request once the rate limit of its host allows it, without blocking the caller * Fail without sending when the deadline of the current request is spent before * * @param httpRequest request * @param body request body, may be null * @return CompletableFuture<HttpResponse < byte [ ]>>
+   */
+  private CompletableFuture<HttpResponse<byte[]>> send(HttpRequest httpRequest, byte[] body) {
+    var heldIo = holdTracker == null ? null : holdTracker.ioStarted(httpRequest.uri());
+    if (heldIo == null) {
+      return rateLimited(httpRequest, body);
+    }
+    return rateLimited(httpRequest, body).whenComplete((response, e) -> heldIo.done());
+  }
+
+  private CompletableFuture<HttpResponse<byte[]>> rateLimited(HttpRequest httpRequest, byte[] body) {
+    var deadline = Deadline.current();
+    if (rateLimiter == null) {
+      return exchange(httpRequest, body, deadline);
+    }
+    var uri = httpRequest.uri();
+    var wait = rateLimiter.reserve(uri);
+    if (deadline != null && wait >= deadline.remainingNanos()) {
+      return CompletableFuture.failedFuture(deadlineExceeded(uri));
+    }
+    var future = wait <= 0 ? exchange(httpRequest, body, deadline) : HostRateLimiter.delay(wait).thenCompose(v -> exchange(httpRequest, body, deadline));
+    return future.whenComplete((response, e) -> {
+      if (response != null) {
+        rateLimiter.onResponse(uri, response);
+      }
+    });
+  }
+
+  /**
+   * Send request with the remaining budget of the deadline, audit it and record it into metrics if enabled * * @param request request * @param body request body, may be null * @return CompletableFuture<HttpResponse < byte [ ]>>
+   */
+  private CompletableFuture<HttpResponse<byte[]>> exchange(HttpRequest request, byte[] body, Deadline deadline) {
+    var uri = request.uri();
+    var timeoutMillis = timeoutMillis(deadline);
+    if (timeoutMillis <= 0) {
+      return CompletableFuture.failedFuture(deadlineExceeded(uri));
+    }
+    // the budget left is only known now, after any rate limit wait
+    var httpRequest = deadline == null || request.headers().firstValue(Deadline.HEADER).isPresent() ? request
+        : HttpRequest.newBuilder(request, (name, value) -> true).header(Deadline.HEADER, Long.toString(deadline.remainingMillis())).build();
+    var sampled = auditor != null && auditor.request(httpRequest.method(), uri, body);
+    if (metrics == null && auditor == null) {
+      return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    var requestSize = body == null ? 0 : body.length;
+    var start = metrics == null ? 0 : metrics.start(uri);
+    return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((response, e) -> {
+      if (e == null) {
+        onResponse(httpRequest, start, requestSize, response, sampled);
+      } else {
+        recordFailure(uri, start, requestSize, e);
+      }
+    });
+  }
+
+  /**
+   * Send request blocking the current thread, audit it and record it into metrics if enabled * * @param requestBuilder request, its timeout and deadline header are set after the rate limit wait * @param uri destination url * @param headers headers of the call * @param body request body, may be null * @return HttpResponse<byte[]>
+   */
+  private HttpResponse<byte[]> sendBlocking(HttpRequest.Builder requestBuilder, URI uri, Map<String, String> headers, byte[] body) {
+    var heldIo = holdTracker == null ? null : holdTracker.ioStarted(uri);
+    try {
+      return rateLimitedBlocking(requestBuilder, uri, headers, body);
+    } finally {
+      if (heldIo != null) {
+        heldIo.done();
+      }
+    }
+  }
+
+  private HttpResponse<byte[]> rateLimitedBlocking(HttpRequest.Builder requestBuilder, URI uri, Map<String, String> headers, byte[] body) {
+    var deadline = Deadline.current();
+    var wait = rateLimiter == null ? 0 : rateLimiter.reserve(uri);
+    if (deadline != null && (deadline.isExpired() || wait >= deadline.remainingNanos())) {
+      throw deadlineExceeded(uri);
+    }
+    if (wait > 0) {
+      try {
+        Thread.sleep(Duration.ofNanos(wait));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "Call to " + uri + " interrupted", e);
+      }
+    }
+    // timeout and forwarded budget are what is left after the rate limit wait
+    var timeoutMillis = timeoutMillis(deadline);
+    if (timeoutMillis <= 0) {
+      throw deadlineExceeded(uri);
+    }
+    requestBuilder.timeout(Duration.ofMillis(timeoutMillis));
+    if (deadline != null && (headers == null || !headers.containsKey(Deadline.HEADER))) {
+      requestBuilder.header(Deadline.HEADER, Long.toString(deadline.remainingMillis()));
+    }
+    var httpRequest = requestBuilder.build();
+    var sampled = auditor != null && auditor.request(httpRequest.method(), uri, body);
+    var requestSize = body == null ? 0 : body.length;
+    var start = metrics == null ? 0 : metrics.start(uri);
+    try {
+      var response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+      onResponse(httpRequest, start, requestSize, response, sampled);
+      if (rateLimiter != null) {
+        rateLimiter.onResponse(uri, response);
+      }
+      return response;
+    } catch (HttpTimeoutException e) {
+      recordFailure(uri, start, requestSize, e);
+      throw new BusinessException(ErrorCode.GATEWAY_TIMEOUT, "Call to " + uri + " timed out", e);
+    } catch (IOException e) {
+      recordFailure(uri, start, requestSize, e);
+      throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "Call to " + uri + " failed", e);
+    } catch (InterruptedException e) {
+      recordFailure(uri, start, requestSize, e);
+      Thread.currentThread().interrupt();
+      throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "Call to " + uri + " interrupted", e);
+    }
+  }
+
+  private void onResponse(HttpRequest httpRequest, long start, int requestSize, HttpResponse<byte[]> response, boolean sampled) {
+    if (metrics != null) {
+      metrics.stop(httpRequest.uri(), start, response.statusCode(), requestSize, response.body().length);
+    }
+    if (auditor != null) {
+      auditor.response(httpRequest.method(), httpRequest.uri(), response.statusCode(), response.body(), sampled);
+    }
+  }
+
+  private void recordFailure(URI uri, long start, int requestSize, Throwable e) {
+    if (metrics != null) {
+      metrics.failed(uri, start, requestSize, e);
+    }
   }
 
   /**
@@ -167,4 +381,83 @@ public class RestClient {
     }
     return requestBuilder;
   }
-}
\ No newline at end of file
+
+  /**
+   * Timeout of a call: the remaining budget of the deadline, at most the default timeout * * @param deadline deadline of the current request, may be null * @return long
+   */
+  private static long timeoutMillis(Deadline deadline) {
+    return deadline == null ? DEFAULT_TIMEOUT_MILLIS : Math.min(DEFAULT_TIMEOUT_MILLIS, deadline.remainingMillis());
+  }
+
+  private static BusinessException deadlineExceeded(URI uri) {
+    return new BusinessException(ErrorCode.GATEWAY_TIMEOUT, "Deadline exceeded before calling " + uri);
+  }
+
+  /**
+   * Configure the HttpClient of a RestClient together with its collaborators.
+   * <p>
+   * Defaults to HTTP/2, which falls back to HTTP/1.1 for servers that do not support it, so one connection per host
+   * carries concurrent calls instead of one connection per in-flight call.
+   */
+  public static class Builder {
+    private HttpClient.Version version = HttpClient.Version.HTTP_2;
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Executor executor;
+    private RestClientMetrics metrics;
+    private HostRateLimiter rateLimiter;
+    private RestAuditor auditor;
+    private ConnectionHoldTracker holdTracker;
+
+    private Builder() {
+    }
+
+    public Builder version(HttpClient.Version version) {
+      this.version = version;
+      return this;
+    }
+
+    public Builder connectTimeout(Duration connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /**
+     * Executor of response handling and dependent stages, the HttpClient default pool if null * * @param executor Executor * @return Builder
+     */
+    public Builder executor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    public Builder metrics(RestClientMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public Builder rateLimiter(HostRateLimiter rateLimiter) {
+      this.rateLimiter = rateLimiter;
+      return this;
+    }
+
+    public Builder auditor(RestAuditor auditor) {
+      this.auditor = auditor;
+      return this;
+    }
+
+    public Builder holdTracker(ConnectionHoldTracker holdTracker) {
+      this.holdTracker = holdTracker;
+      return this;
+    }
+
+    public RestClient build() {
+      var httpClientBuilder = HttpClient.newBuilder().version(version);
+      if (connectTimeout != null) {
+        httpClientBuilder.connectTimeout(connectTimeout);
+      }
+      if (executor != null) {
+        httpClientBuilder.executor(executor);
+      }
+      return new RestClient(httpClientBuilder.build(), metrics, rateLimiter, auditor, holdTracker);
+    }
+  }
+}
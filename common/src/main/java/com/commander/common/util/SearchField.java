@@ -0,0 +1,31 @@
+package com.commander.common.util;
+
+import jakarta.persistence.metamodel.SingularAttribute;
+
+/**
+ * Attribute searched by {@link Specifications#search(java.util.List, String, boolean)} and how it is matched.
+ *
+ * @param attribute        searched attribute
+ * @param mode             how the attribute is matched
+ * @param textSearchConfig Postgres text search configuration of {@code FULL_TEXT}, e.g. {@code simple} or {@code english}
+ * @param <E>              type of entity
+ */
+public record SearchField<E>(SingularAttribute<E, String> attribute, SearchMode mode, String textSearchConfig) {
+    public static final String DEFAULT_TEXT_SEARCH_CONFIG = "simple";
+
+    public static <E> SearchField<E> contains(SingularAttribute<E, String> attribute) {
+        return new SearchField<>(attribute, SearchMode.CONTAINS, null);
+    }
+
+    public static <E> SearchField<E> trigram(SingularAttribute<E, String> attribute) {
+        return new SearchField<>(attribute, SearchMode.TRIGRAM, null);
+    }
+
+    public static <E> SearchField<E> fullText(SingularAttribute<E, String> attribute) {
+        return fullText(attribute, DEFAULT_TEXT_SEARCH_CONFIG);
+    }
+
+    public static <E> SearchField<E> fullText(SingularAttribute<E, String> attribute, String textSearchConfig) {
+        return new SearchField<>(attribute, SearchMode.FULL_TEXT, textSearchConfig);
+    }
+}
@@ -0,0 +1,21 @@
+package com.commander.common.util;
+
+/**
+ * How {@link Specifications#search} matches an attribute, each needing its own index to avoid a sequential scan.
+ */
+public enum SearchMode {
+    /**
+     * {@code upper(column) like '%VALUE%'}, no index can be used.
+     */
+    CONTAINS,
+    /**
+     * {@code column ilike '%value%'}, backed by a {@code pg_trgm} GIN index {@code using gin (column gin_trgm_ops)}.
+     * Values shorter than three characters still scan.
+     */
+    TRIGRAM,
+    /**
+     * {@code to_tsvector(config, column) @@ plainto_tsquery(config, value)}, backed by a GIN index
+     * {@code using gin (to_tsvector('config', column))}. Matches whole words after stemming, not substrings.
+     */
+    FULL_TEXT
+}
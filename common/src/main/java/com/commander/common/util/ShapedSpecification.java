@@ -0,0 +1,232 @@
+package com.commander.common.util;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * {@link Specification} that knows its shape, the attributes and operators it filters on without their values, and
+ * the values apart. Queries of the same shape render the same HQL with the values as parameters {@code :p0, :p1, ...},
+ * which {@code ShapedQueryCache} renders once and Hibernate parses once, each call only binding new values.
+ * <p>
+ * Factories return null for null or empty values like {@link Specifications}, and {@link #and} / {@link #or} skip
+ * them, so optional filters compose into one of a few shapes. Used as a plain {@code Specification}, values are bound
+ * directly and the shape is ignored.
+ *
+ * @param <E> entity
+ */
+public final class ShapedSpecification<E> implements Specification<E> {
+    private final String shape;
+    private final List<Object> values;
+    private final Shape<E> predicate;
+
+    private ShapedSpecification(String shape, List<?> values, Shape<E> predicate) {
+        this.shape = shape;
+        this.values = List.copyOf(values);
+        this.predicate = predicate;
+    }
+
+    /**
+     * Predicate of a shape, reading its values through {@code binder} by index
+     */
+    @FunctionalInterface
+    public interface Shape<E> {
+        Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder builder, Binder binder);
+    }
+
+    /**
+     * Expression of the value at an index of a specification, either the value itself or a named parameter
+     */
+    @FunctionalInterface
+    public interface Binder {
+        <T> Expression<T> value(int index, Class<T> type);
+    }
+
+    /**
+     * @param shape     key of the predicate without values, equal for predicates equal up to their values
+     * @param values    values read by {@code predicate}, by index
+     * @param predicate predicate reading its values from the binder
+     */
+    public static <E> ShapedSpecification<E> of(String shape, List<?> values, Shape<E> predicate) {
+        return new ShapedSpecification<>(shape, values, predicate);
+    }
+
+    public String shape() {
+        return shape;
+    }
+
+    public List<Object> values() {
+        return values;
+    }
+
+    @Override
+    public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder builder) {
+        return predicate.toPredicate(root, query, builder, new Binder() {
+            @Override
+            public <T> Expression<T> value(int index, Class<T> type) {
+                @SuppressWarnings("unchecked")
+                var value = (T) values.get(index);
+                return builder instanceof HibernateCriteriaBuilder hibernateBuilder ? hibernateBuilder.value(value) : builder.literal(value);
+            }
+        });
+    }
+
+    /**
+     * Predicate with every value read as parameter {@code p<index>}
+     */
+    public Predicate toParameterizedPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder builder) {
+        return predicate.toPredicate(root, query, builder, new Binder() {
+            @Override
+            public <T> Expression<T> value(int index, Class<T> type) {
+                return builder.parameter(type, "p" + index);
+            }
+        });
+    }
+
+    @SafeVarargs
+    public static <E> ShapedSpecification<E> and(ShapedSpecification<E>... specifications) {
+        return compose("and", specifications);
+    }
+
+    @SafeVarargs
+    public static <E> ShapedSpecification<E> or(ShapedSpecification<E>... specifications) {
+        return compose("or", specifications);
+    }
+
+    @SafeVarargs
+    private static <E> ShapedSpecification<E> compose(String operator, ShapedSpecification<E>... specifications) {
+        var parts = Arrays.stream(specifications).filter(Objects::nonNull).toList();
+        if (parts.isEmpty()) {
+            return null;
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        var values = new ArrayList<Object>();
+        var offsets = new int[parts.size()];
+        for (int i = 0; i < parts.size(); ++i) {
+            offsets[i] = values.size();
+            values.addAll(parts.get(i).values);
+        }
+        var shape = parts.stream().map(ShapedSpecification::shape).collect(Collectors.joining(",", operator + "(", ")"));
+        return new ShapedSpecification<>(shape, values, (root, query, builder, binder) -> {
+            var predicates = new Predicate[parts.size()];
+            for (int i = 0; i < predicates.length; ++i) {
+                var offset = offsets[i];
+                predicates[i] = parts.get(i).predicate.toPredicate(root, query, builder, new Binder() {
+                    @Override
+                    public <T> Expression<T> value(int index, Class<T> type) {
+                        return binder.value(offset + index, type);
+                    }
+                });
+            }
+            return "and".equals(operator) ? builder.and(predicates) : builder.or(predicates);
+        });
+    }
+
+    public static <E, T> ShapedSpecification<E> equals(SingularAttribute<E, T> attribute, T value) {
+        if (value == null) {
+            return null;
+        }
+        return of("eq(" + attribute.getName() + ")", List.of(value),
+                (root, query, builder, binder) -> builder.equal(root.get(attribute), binder.value(0, type(attribute))));
+    }
+
+    public static <E, T> ShapedSpecification<E> notEquals(SingularAttribute<E, T> attribute, T value) {
+        if (value == null) {
+            return null;
+        }
+        return of("ne(" + attribute.getName() + ")", List.of(value),
+                (root, query, builder, binder) -> builder.notEqual(root.get(attribute), binder.value(0, type(attribute))));
+    }
+
+    public static <E> ShapedSpecification<E> contain(SingularAttribute<E, String> attribute, String value) {
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+        return of("contain(" + attribute.getName() + ")", List.of("%" + value.toUpperCase() + "%"),
+                (root, query, builder, binder) -> builder.like(builder.upper(root.get(attribute)), binder.value(0, String.class)));
+    }
+
+    /**
+     * {@link Specifications#inArray}, the whole collection being one value so the shape does not depend on its size
+     */
+    public static <E, T> ShapedSpecification<E> in(SingularAttribute<E, T> attribute, Collection<T> values) {
+        if (CollectionUtils.isEmpty(values)) {
+            return null;
+        }
+        var type = type(attribute);
+        @SuppressWarnings("unchecked")
+        var array = values.toArray((T[]) Array.newInstance(type, values.size()));
+        @SuppressWarnings("unchecked")
+        var arrayType = (Class<T[]>) array.getClass();
+        return of("in(" + attribute.getName() + ")", List.of((Object) array), (root, query, builder, binder) ->
+                builder.isTrue(builder.function("in_array", Boolean.class, root.get(attribute), binder.value(0, arrayType))));
+    }
+
+    public static <E, T extends Comparable<? super T>> ShapedSpecification<E> greaterThanOrEqualTo(SingularAttribute<E, T> attribute, T value) {
+        if (value == null) {
+            return null;
+        }
+        return of("ge(" + attribute.getName() + ")", List.of(value),
+                (root, query, builder, binder) -> builder.greaterThanOrEqualTo(root.get(attribute), binder.value(0, type(attribute))));
+    }
+
+    public static <E, T extends Comparable<? super T>> ShapedSpecification<E> greaterThan(SingularAttribute<E, T> attribute, T value) {
+        if (value == null) {
+            return null;
+        }
+        return of("gt(" + attribute.getName() + ")", List.of(value),
+                (root, query, builder, binder) -> builder.greaterThan(root.get(attribute), binder.value(0, type(attribute))));
+    }
+
+    public static <E, T extends Comparable<? super T>> ShapedSpecification<E> lessThan(SingularAttribute<E, T> attribute, T value) {
+        if (value == null) {
+            return null;
+        }
+        return of("lt(" + attribute.getName() + ")", List.of(value),
+                (root, query, builder, binder) -> builder.lessThan(root.get(attribute), binder.value(0, type(attribute))));
+    }
+
+    public static <E, T extends Comparable<? super T>> ShapedSpecification<E> lessThanOrEqualTo(SingularAttribute<E, T> attribute, T value) {
+        if (value == null) {
+            return null;
+        }
+        return of("le(" + attribute.getName() + ")", List.of(value),
+                (root, query, builder, binder) -> builder.lessThanOrEqualTo(root.get(attribute), binder.value(0, type(attribute))));
+    }
+
+    public static <E, T> ShapedSpecification<E> isNull(SingularAttribute<E, T> attribute) {
+        return of("null(" + attribute.getName() + ")", List.of(), (root, query, builder, binder) -> builder.isNull(root.get(attribute)));
+    }
+
+    public static <E, T> ShapedSpecification<E> isNotNull(SingularAttribute<E, T> attribute) {
+        return of("notNull(" + attribute.getName() + ")", List.of(), (root, query, builder, binder) -> builder.isNotNull(root.get(attribute)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E, T> Class<T> type(SingularAttribute<E, T> attribute) {
+        return (Class<T>) ClassUtils.resolvePrimitiveIfNecessary(attribute.getJavaType());
+    }
+
+    @Override
+    public String toString() {
+        return shape + values;
+    }
+}
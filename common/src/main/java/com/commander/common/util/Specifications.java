@@ -1,13 +1,45 @@
 package com.commander.common.util;
 
+import com.commander.common.exception.FieldViolation;
+import com.commander.common.exception.ValidateException;
+import com.commander.common.jpa.ValueTable;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.Session;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaRoot;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Specifications {
+    /**
+     * Most keys a {@link JoinStrategy#RESOLVED_IDS} join binds as an array, 100k take about 200ms in {@code InBenchmarkTest}
+     */
+    public static final int MAX_RESOLVED_IDS = 100_000;
+
     private Specifications() {
     }
 
@@ -26,6 +58,76 @@ public class Specifications {
         return attr;
     }
 
+    /**
+     * Match {@code value} against each field with its own {@link SearchMode}, any field matching.
+     *
+     * @param ranked order rows by the summed {@code ts_rank} of the full-text fields, best first; only applied to
+     *               queries without sort, as a {@code Pageable} sort replaces it
+     */
+    public static <E> Specification<E> search(List<SearchField<E>> fields, String value, boolean ranked) {
+        if (!StringUtils.hasText(value) || fields.isEmpty()) {
+            return null;
+        }
+        return (root, query, builder) -> {
+            var predicates = new Predicate[fields.size()];
+            Expression<Double> rank = null;
+            for (int i = 0; i < fields.size(); ++i) {
+                var field = fields.get(i);
+                predicates[i] = match(root, builder, field, value);
+                if (ranked && field.mode() == SearchMode.FULL_TEXT) {
+                    var fieldRank = builder.function("fts_rank", Double.class, builder.literal(field.textSearchConfig()),
+                            root.get(field.attribute()), bind(builder, value));
+                    rank = rank == null ? fieldRank : builder.sum(rank, fieldRank);
+                }
+            }
+            if (rank != null && isRowQuery(query) && query.getOrderList().isEmpty()) {
+                query.orderBy(builder.desc(rank));
+            }
+            return predicates.length == 1 ? predicates[0] : builder.or(predicates);
+        };
+    }
+
+    public static <E> Specification<E> contain(SingularAttribute<E, String> attribute, String value, SearchMode mode) {
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+        var field = mode == SearchMode.FULL_TEXT ? SearchField.fullText(attribute) : new SearchField<>(attribute, mode, null);
+        return (root, query, builder) -> match(root, builder, field, value);
+    }
+
+    private static <E> Predicate match(Root<E> root, CriteriaBuilder builder, SearchField<E> field, String value) {
+        Expression<String> path = root.get(field.attribute());
+        return switch (field.mode()) {
+            case CONTAINS -> builder.like(builder.upper(path), "%" + value.toUpperCase() + "%");
+            case TRIGRAM -> {
+                var pattern = "%" + escapeLike(value) + "%";
+                yield builder instanceof HibernateCriteriaBuilder hibernateBuilder
+                        ? hibernateBuilder.ilike(path, pattern, '\\')
+                        : builder.like(builder.lower(path), pattern.toLowerCase(), '\\');
+            }
+            case FULL_TEXT -> builder.isTrue(builder.function("fts_match", Boolean.class,
+                    builder.literal(field.textSearchConfig()), path, bind(builder, value)));
+        };
+    }
+
+    /**
+     * Search value as a bind parameter, so queries differing only by the value share one statement
+     */
+    private static Expression<String> bind(CriteriaBuilder builder, String value) {
+        return builder instanceof HibernateCriteriaBuilder hibernateBuilder ? hibernateBuilder.value(value) : builder.literal(value);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Whether the query reads rows rather than counting them, as an order by breaks {@code count(*)}
+     */
+    private static boolean isRowQuery(CriteriaQuery<?> query) {
+        return query.getResultType() != Long.class && query.getResultType() != long.class;
+    }
+
     public static <E, T> Specification<E> equals(SingularAttribute<E, T> attribute, T value) {
         if (value == null) {
             return null;
@@ -72,6 +174,70 @@ public class Specifications {
         return (root, query, builder) -> root.get(attribute).in(values);
     }
 
+    /**
+     * Same as {@link #in} with {@code values} bound as a single array parameter, {@code attribute = any(?)}, so the
+     * statement and its plan do not change with the number of values and there is no limit on it. It stays faster than
+     * {@link ValueTable} at any size for one query, see there for sets reused by several queries of a transaction.
+     */
+    public static <E, T> Specification<E> inArray(SingularAttribute<E, T> attribute, Collection<T> values) {
+        if (CollectionUtils.isEmpty(values)) {
+            return null;
+        }
+        return (root, query, builder) -> {
+            if (!(builder instanceof HibernateCriteriaBuilder hibernateBuilder)) {
+                return root.get(attribute).in(values);
+            }
+            @SuppressWarnings("unchecked")
+            var array = values.toArray((T[]) Array.newInstance(ClassUtils.resolvePrimitiveIfNecessary(attribute.getJavaType()), values.size()));
+            return builder.isTrue(builder.function("in_array", Boolean.class, root.get(attribute), hibernateBuilder.value(array)));
+        };
+    }
+
+    /**
+     * {@code attribute @> value}: the jsonb attribute contains {@code value}, a {@code JsonObject}, {@code JsonArray} or
+     * any value the {@link Json} codec encodes. Can use a GIN index of the column.
+     */
+    public static <E, T> Specification<E> jsonContains(SingularAttribute<E, T> attribute, Object value) {
+        if (value == null) {
+            return null;
+        }
+        var json = Json.encodeToString(value);
+        return (root, query, builder) -> builder.isTrue(builder.function("jsonb_contains", Boolean.class, root.get(attribute), bind(builder, json)));
+    }
+
+    /**
+     * {@code attribute ? key}: the jsonb attribute has {@code key} as a top-level key or array element. Can use a GIN
+     * index of the column with the default {@code jsonb_ops}.
+     */
+    public static <E, T> Specification<E> jsonHasKey(SingularAttribute<E, T> attribute, String key) {
+        if (key == null) {
+            return null;
+        }
+        return (root, query, builder) -> builder.isTrue(builder.function("jsonb_has_key", Boolean.class, root.get(attribute), bind(builder, key)));
+    }
+
+    /**
+     * {@code attribute @? path}: the jsonpath {@code path} returns an item, e.g. {@code $.items[*] ? (@.price > 10)}.
+     * Can use a GIN index of the column.
+     */
+    public static <E, T> Specification<E> jsonPathExists(SingularAttribute<E, T> attribute, String path) {
+        if (path == null) {
+            return null;
+        }
+        return (root, query, builder) -> builder.isTrue(builder.function("jsonb_path_exists", Boolean.class, root.get(attribute), bind(builder, path)));
+    }
+
+    /**
+     * {@code attribute @@ path}: the jsonpath predicate {@code path} is true, e.g. {@code $.status == "open"}. Can use a
+     * GIN index of the column.
+     */
+    public static <E, T> Specification<E> jsonPathMatch(SingularAttribute<E, T> attribute, String path) {
+        if (path == null) {
+            return null;
+        }
+        return (root, query, builder) -> builder.isTrue(builder.function("jsonb_path_match", Boolean.class, root.get(attribute), bind(builder, path)));
+    }
+
     public static <E, T> Specification<E> isNull(SingularAttribute<E, T> attribute) {
         return (root, query, builder) -> builder.isNull(root.get(attribute));
     }
@@ -127,15 +293,193 @@ public class Specifications {
     }
 
     public static <E, F, T> Specification<E> equalsJoin(SingularAttribute<E, Long> joinAttr, Class<F> subEntity, SingularAttribute<F, Long> joinSubAttr, SingularAttribute<F, T> attribute, T value) {
+        return equalsJoin(joinAttr, subEntity, joinSubAttr, attribute, value, JoinStrategy.EXISTS);
+    }
+
+    /**
+     * Rows of {@code E} having a row of {@code subEntity} with {@code joinSubAttr = joinAttr} and {@code attribute = value},
+     * as a subquery or join chosen by {@code strategy}.
+     *
+     * @param strategy any strategy but {@link JoinStrategy#RESOLVED_IDS}, which needs the entity manager
+     */
+    public static <E, F, T> Specification<E> equalsJoin(SingularAttribute<E, Long> joinAttr, Class<F> subEntity, SingularAttribute<F, Long> joinSubAttr,
+                                                        SingularAttribute<F, T> attribute, T value, JoinStrategy strategy) {
         if (value == null) {
             return null;
         }
+        return switch (strategy) {
+            case EXISTS -> (root, query, builder) -> {
+                var subquery = query.subquery(Integer.class);
+                var subRoot = subquery.from(subEntity);
+                subquery.select(builder.literal(1))
+                        .where(builder.equal(root.get(joinAttr), subRoot.get(joinSubAttr)), equals(attribute, value).toPredicate(subRoot, query, builder));
+                return builder.exists(subquery);
+            };
+            case IN_SUBQUERY -> (root, query, builder) -> {
+                var subquery = query.subquery(Long.class);
+                var subRoot = subquery.from(subEntity);
+                subquery.select(subRoot.get(joinSubAttr)).where(equals(attribute, value).toPredicate(subRoot, query, builder));
+                return root.get(joinAttr).in(subquery);
+            };
+            case INNER_JOIN_DISTINCT -> (root, query, builder) -> {
+                var join = ((JpaRoot<E>) root).join(subEntity);
+                join.on(builder.equal(join.get(joinSubAttr), root.get(joinAttr)));
+                // count queries of Spring Data and PageFinder switch to count(distinct) as well
+                query.distinct(true);
+                return builder.equal(join.get(attribute), value);
+            };
+            case RESOLVED_IDS -> throw new IllegalArgumentException("RESOLVED_IDS join needs an EntityManager");
+        };
+    }
+
+    /**
+     * Same as {@link #equalsJoin(SingularAttribute, Class, SingularAttribute, SingularAttribute, Object, JoinStrategy)},
+     * also supporting {@link JoinStrategy#RESOLVED_IDS}, whose keys are read with {@code entityManager} the first time
+     * the specification is applied, in the transaction running the query, and reused by its later queries such as the
+     * count of a page. The keys are kept for the Hibernate session that read them: a specification applied in another
+     * transaction, or kept in a field and applied from other threads, reads them again from its own session.
+     */
+    public static <E, F, T> Specification<E> equalsJoin(EntityManager entityManager, SingularAttribute<E, Long> joinAttr, Class<F> subEntity,
+                                                        SingularAttribute<F, Long> joinSubAttr, SingularAttribute<F, T> attribute, T value,
+                                                        JoinStrategy strategy) {
+        if (value == null || strategy != JoinStrategy.RESOLVED_IDS) {
+            return equalsJoin(joinAttr, subEntity, joinSubAttr, attribute, value, strategy);
+        }
+        var resolved = new AtomicReference<ResolvedIds>();
+        return (root, query, builder) -> {
+            // the session of the current transaction, the shared entity manager being the same for all of them
+            var session = entityManager.unwrap(Session.class);
+            var last = resolved.get();
+            List<Long> ids;
+            if (last != null && last.session() == session) {
+                ids = last.ids();
+            } else {
+                var idQuery = builder.createQuery(Long.class);
+                var subRoot = idQuery.from(subEntity);
+                idQuery.select(subRoot.get(joinSubAttr)).distinct(true).where(builder.equal(subRoot.get(attribute), value));
+                ids = entityManager.createQuery(idQuery).setMaxResults(MAX_RESOLVED_IDS + 1).getResultList();
+                resolved.set(new ResolvedIds(session, ids));
+            }
+            if (ids.size() > MAX_RESOLVED_IDS) {
+                return equalsJoin(joinAttr, subEntity, joinSubAttr, attribute, value, JoinStrategy.IN_SUBQUERY).toPredicate(root, query, builder);
+            }
+            if (ids.isEmpty()) {
+                return builder.disjunction();
+            }
+            return inArray(joinAttr, ids).toPredicate(root, query, builder);
+        };
+    }
+
+    /**
+     * Rows strictly after the cursor of a keyset page, in the order of its sort:
+     * {@code a > :a or (a = :a and b > :b) or ...}, with {@code >} turned into {@code <} for descending attributes.
+     * A redundant {@code a >= :a} on the leading attribute lets the database seek its index.
+     *
+     * @return null for the first page
+     */
+    public static <E> Specification<E> seek(KeysetPageable pageable) {
+        if (pageable.isFirst()) {
+            return null;
+        }
         return (root, query, builder) -> {
-            var subquery = query.subquery(Integer.class);
-            var subRoot = subquery.from(subEntity);
-            subquery.select(builder.literal(1))
-                    .where(builder.equal(root.get(joinAttr), subRoot.get(joinSubAttr)), equals(attribute, value).toPredicate(subRoot, query, builder));
-            return builder.exists(subquery);
+            var orders = pageable.sort().toList();
+            var paths = new ArrayList<Path<Comparable<Object>>>(orders.size());
+            var values = new ArrayList<Comparable<Object>>(orders.size());
+            for (int i = 0; i < orders.size(); ++i) {
+                Path<Comparable<Object>> path = path(root, orders.get(i).getProperty());
+                paths.add(path);
+                values.add(keyValue(path.getJavaType(), pageable.after().get(i), orders.get(i).getProperty()));
+            }
+            var alternatives = new Predicate[orders.size()];
+            for (int i = 0; i < orders.size(); ++i) {
+                var conjunction = new Predicate[i + 1];
+                for (int j = 0; j < i; ++j) {
+                    conjunction[j] = builder.equal(paths.get(j), values.get(j));
+                }
+                conjunction[i] = after(builder, paths.get(i), values.get(i), orders.get(i).getDirection(), false);
+                alternatives[i] = builder.and(conjunction);
+            }
+            var leading = after(builder, paths.get(0), values.get(0), orders.get(0).getDirection(), true);
+            return builder.and(leading, builder.or(alternatives));
         };
     }
+
+    private static <E, T> Path<T> path(Root<E> root, String property) {
+        Path<?> path = root;
+        for (var name : property.split("\\.")) {
+            path = path.get(name);
+        }
+        @SuppressWarnings("unchecked")
+        var result = (Path<T>) path;
+        return result;
+    }
+
+    private static Predicate after(CriteriaBuilder builder, Expression<Comparable<Object>> path, Comparable<Object> value,
+                                   Sort.Direction direction, boolean inclusive) {
+        if (direction.isAscending()) {
+            return inclusive ? builder.greaterThanOrEqualTo(path, value) : builder.greaterThan(path, value);
+        }
+        return inclusive ? builder.lessThanOrEqualTo(path, value) : builder.lessThan(path, value);
+    }
+
+    /**
+     * Convert a sort key decoded from a cursor back to the type of its attribute
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparable<Object> keyValue(Class<?> type, Object value, String property) {
+        try {
+            Object result;
+            if (value instanceof Number n) {
+                if (type == Long.class || type == long.class) {
+                    result = n.longValue();
+                } else if (type == Integer.class || type == int.class) {
+                    result = n.intValue();
+                } else if (type == Short.class || type == short.class) {
+                    result = n.shortValue();
+                } else if (type == Double.class || type == double.class) {
+                    result = n.doubleValue();
+                } else if (type == Float.class || type == float.class) {
+                    result = n.floatValue();
+                } else if (type == BigDecimal.class) {
+                    result = new BigDecimal(n.toString());
+                } else if (type == BigInteger.class) {
+                    result = new BigInteger(n.toString());
+                } else {
+                    result = n;
+                }
+            } else if (value instanceof String s && type != String.class) {
+                if (type == Instant.class) {
+                    result = Instant.parse(s);
+                } else if (type == LocalDateTime.class) {
+                    result = LocalDateTime.parse(s);
+                } else if (type == LocalDate.class) {
+                    result = LocalDate.parse(s);
+                } else if (type == OffsetDateTime.class) {
+                    result = OffsetDateTime.parse(s);
+                } else if (type == ZonedDateTime.class) {
+                    result = ZonedDateTime.parse(s);
+                } else if (type == UUID.class) {
+                    result = UUID.fromString(s);
+                } else if (type.isEnum()) {
+                    result = Enum.valueOf((Class) type, s);
+                } else {
+                    result = s;
+                }
+            } else {
+                result = value;
+            }
+            if (!(result instanceof Comparable<?>) || !type.isInstance(result) && !type.isPrimitive()) {
+                throw new IllegalArgumentException(property);
+            }
+            return (Comparable<Object>) result;
+        } catch (RuntimeException e) {
+            throw new ValidateException(List.of(new FieldViolation("cursor", "Cursor value of " + property + " is invalid")));
+        }
+    }
+
+    /**
+     * Keys of a {@link JoinStrategy#RESOLVED_IDS} join and the session that read them
+     */
+    private record ResolvedIds(Session session, List<Long> ids) {
+    }
 }
@@ -0,0 +1,74 @@
+package com.commander.common.util;
+
+import com.commander.common.exception.BusinessException;
+import com.commander.common.http.Deadline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run a group of blocking tasks concurrently, one virtual thread each, and wait for all of them.
+ * <p>
+ * The group is structured: it never outlives the call. When any task fails or the deadline passes, the remaining
+ * tasks are interrupted and the call returns only after every task has finished. The group deadline is the earlier
+ * of {@code timeout} and the {@link Deadline} of the calling thread, and it is bound to every task's thread.
+ */
+public final class StructuredFanOut {
+    private StructuredFanOut() {
+    }
+
+    /**
+     * @param tasks   tasks to run
+     * @param timeout deadline of the whole group
+     * @param <T>     type of a task result
+     * @return results in the order of {@code tasks}
+     * @throws BusinessException {@link ErrorCode#GATEWAY_TIMEOUT} when the deadline passes; the failure of the first
+     *                           failed task is rethrown as is when it is a {@link RuntimeException}
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<? extends T>> tasks, Duration timeout) {
+        var deadline = Deadline.after(timeout).min(Deadline.current());
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var completion = new ExecutorCompletionService<T>(executor);
+            var futures = new ArrayList<Future<T>>(tasks.size());
+            try {
+                for (var task : tasks) {
+                    futures.add(completion.submit(() -> {
+                        Deadline.set(deadline);
+                        return task.call();
+                    }));
+                }
+                for (int i = 0; i < futures.size(); ++i) {
+                    var done = completion.poll(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        throw new BusinessException(ErrorCode.GATEWAY_TIMEOUT, "Fan-out of " + tasks.size() + " tasks exceeded " + timeout);
+                    }
+                    done.get();
+                }
+                var results = new ArrayList<T>(futures.size());
+                for (var future : futures) {
+                    results.add(future.resultNow());
+                }
+                return results;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "Fan-out interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "Fan-out task failed", e.getCause());
+            } finally {
+                for (var future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+}
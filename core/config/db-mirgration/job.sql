@@ -0,0 +1,22 @@
+-- Table of JobQueue (persistence.jobs), rename it with persistence.jobs.table.
+-- Rows are deleted once done; rows left with attempts >= persistence.jobs.max-attempts were given up, see last_error.
+-- Given up rows are parked at scheduled_at = 'infinity', out of the claim index.
+
+create table if not exists job
+(
+    id               bigserial primary key,
+    queue            text        not null,
+    payload          jsonb,
+    -- higher first
+    priority         integer     not null default 0,
+    -- when the job may run: enqueue, schedule, or next retry; 'infinity' once given up
+    scheduled_at     timestamptz not null default now(),
+    -- set by a claim, the job is claimed again once it is over
+    lease_expires_at timestamptz,
+    attempts         integer     not null default 0,
+    last_error       text,
+    created_at       timestamptz not null default now()
+);
+
+-- claims read the due jobs of a queue in this order, given up jobs left out
+create index if not exists job_due_idx on job (queue, priority desc, scheduled_at, id) where scheduled_at < 'infinity';
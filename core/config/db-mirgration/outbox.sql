@@ -0,0 +1,20 @@
+-- Table of Outbox / OutboxDispatcher (persistence.outbox), rename it with persistence.outbox.table.
+-- Rows are deleted once sent; rows left with attempts >= persistence.outbox.max-attempts were given up, see last_error.
+-- Given up rows are parked at available_at = 'infinity', after every due row of the claim index.
+
+create table if not exists outbox
+(
+    id           bigserial primary key,
+    method       text        not null,
+    uri          text        not null,
+    headers      jsonb,
+    body         bytea,
+    attempts     integer     not null default 0,
+    -- when the row is due: insertion, end of the lease of a claim, or next retry; 'infinity' once given up
+    available_at timestamptz not null default now(),
+    last_error   text,
+    created_at   timestamptz not null default now()
+);
+
+-- claims read the due rows in this order
+create index if not exists outbox_available_at_idx on outbox (available_at, id);
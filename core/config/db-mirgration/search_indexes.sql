@@ -0,0 +1,14 @@
+-- Indexes backing the search modes of Specifications.search / Specifications.contain.
+-- Create one per searched attribute, replacing <table> and <column>; CONCURRENTLY avoids locking writes on big tables
+-- (it cannot run inside a transaction block).
+
+create extension if not exists pg_trgm;
+
+-- SearchMode.TRIGRAM: column ilike '%value%'
+-- create index concurrently if not exists <table>_<column>_trgm_idx on <table> using gin (<column> gin_trgm_ops);
+
+-- SearchMode.FULL_TEXT: the configuration must be the one of the SearchField ('simple' by default), or the index is not
+-- used
+-- create index concurrently if not exists <table>_<column>_fts_idx on <table> using gin (to_tsvector('simple', <column>));
+
+-- SearchMode.CONTAINS (upper(column) like '%VALUE%') cannot use any index, switch the attribute to TRIGRAM instead.
@@ -0,0 +1,107 @@
+package com.commander.common.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Results of a previous benchmark run, stored as properties under {@code src/test/resources/benchmark}.
+ * <p>
+ * A measurement is a regression when it is worse than the stored value by more than the tolerance
+ * ({@code benchmark.tolerance}, 0.25 by default); lower-is-better values also get an absolute slack
+ * ({@code benchmark.slack}, 2 by default) so millisecond latencies do not fail on scheduler noise. Run with
+ * {@code -Dbenchmark.updateBaseline=true} to store the current measurements instead of comparing them.
+ * <p>
+ * Absolute timings only compare on the machine that stored them: regressions fail the run when
+ * {@code -Dbenchmark.environment} names the environment stored with the baseline, and are only printed as warnings
+ * otherwise. Checks that must hold anywhere compare measurements of the same run, e.g. a cached query against the
+ * uncached one.
+ */
+public class Baseline {
+    private static final String ENVIRONMENT = "environment";
+
+    private final String name;
+    private final Properties stored = new Properties();
+    private final TreeMap<String, String> measured = new TreeMap<>();
+    private final List<String> regressions = new ArrayList<>();
+    private final double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.25"));
+    private final double slack = Double.parseDouble(System.getProperty("benchmark.slack", "2"));
+    private final boolean update = Boolean.getBoolean("benchmark.updateBaseline");
+    private final String environment = System.getProperty("benchmark.environment");
+
+    public Baseline(String name) {
+        this.name = name;
+        try (InputStream in = Baseline.class.getResourceAsStream("/benchmark/" + name + ".properties")) {
+            if (in != null) {
+                stored.load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Record a measurement where lower is better, such as a latency.
+     */
+    public void atMost(String key, double value) {
+        measured.put(key, format(value));
+        var base = stored.getProperty(key);
+        if (!update && base != null && value > Double.parseDouble(base) * (1 + tolerance) + slack) {
+            regressions.add(key + ": " + format(value) + " > baseline " + base);
+        }
+    }
+
+    /**
+     * Record a measurement where higher is better, such as a throughput.
+     */
+    public void atLeast(String key, double value) {
+        measured.put(key, format(value));
+        var base = stored.getProperty(key);
+        if (!update && base != null && value < Double.parseDouble(base) * (1 - tolerance)) {
+            regressions.add(key + ": " + format(value) + " < baseline " + base);
+        }
+    }
+
+    /**
+     * Print the measurements, store them when updating, and fail on regressions.
+     */
+    public void verify() {
+        measured.forEach((k, v) -> System.out.println(name + " " + k + " = " + v + " (baseline " + stored.getProperty(k, "-") + ")"));
+        if (update) {
+            var path = Path.of("src/test/resources/benchmark/" + name + ".properties");
+            var properties = new Properties();
+            properties.putAll(measured);
+            if (environment != null) {
+                properties.setProperty(ENVIRONMENT, environment);
+            }
+            try (OutputStream out = Files.newOutputStream(path)) {
+                properties.store(out, name + " baseline");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        if (regressions.isEmpty()) {
+            return;
+        }
+        var message = "Benchmark regressions in " + name + ":\n" + String.join("\n", regressions);
+        var storedEnvironment = stored.getProperty(ENVIRONMENT);
+        if (environment == null || !environment.equals(storedEnvironment)) {
+            System.out.println("WARNING " + message + "\n(baseline of environment " + storedEnvironment + ", this run "
+                    + environment + ", not failing)");
+            return;
+        }
+        throw new AssertionError(message);
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
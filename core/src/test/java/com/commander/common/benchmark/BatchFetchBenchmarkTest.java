@@ -0,0 +1,104 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.QueryCounter;
+import com.commander.common.jpa.QueryCounts;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.Table;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Queries and latency of mapping a page of 100 orders with their lazy lines, without and with
+ * {@code hibernate.default_batch_fetch_size}. Needs {@code -Dbenchmark.jdbc.url}, see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class BatchFetchBenchmarkTest {
+    private static final int ORDERS = 10_000;
+    private static final int LINES_PER_ORDER = 3;
+    private static final int PAGE = 100;
+
+    @Test
+    void batchFetch() throws Exception {
+        var inspector = Map.of(AvailableSettings.STATEMENT_INSPECTOR, QueryCounter.class.getName());
+        var batching = Map.of(AvailableSettings.STATEMENT_INSPECTOR, QueryCounter.class.getName(),
+                AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, "100");
+        try (var db = BenchmarkDatabase.open(inspector, BatchOrder.class, BatchLine.class);
+             var batched = BenchmarkDatabase.open(batching, BatchOrder.class, BatchLine.class)) {
+            if (db.count("benchmark_batch_line") != (long) ORDERS * LINES_PER_ORDER) {
+                db.execute("drop table if exists benchmark_batch_line",
+                        "drop table if exists benchmark_batch_order",
+                        "create table benchmark_batch_order (id bigint primary key, customer text not null)",
+                        "create table benchmark_batch_line (id bigint primary key, order_id bigint not null references benchmark_batch_order,"
+                                + " product text not null)",
+                        "insert into benchmark_batch_order select i, 'customer-' || i from generate_series(1, " + ORDERS + ") i",
+                        "insert into benchmark_batch_line select i, (i - 1) / " + LINES_PER_ORDER + " + 1, 'product-' || i"
+                                + " from generate_series(1, " + ORDERS * LINES_PER_ORDER + ") i",
+                        "create index on benchmark_batch_line (order_id)",
+                        "analyze benchmark_batch_order, benchmark_batch_line");
+            }
+            var baseline = new Baseline("batchfetch");
+
+            // one query for the page, then one per order, or one per 100 orders
+            QueryCounts.assertQueryCount(PAGE + 1, () -> assertEquals(PAGE * LINES_PER_ORDER, mapPage(db, 0)));
+            QueryCounts.assertQueryCount(2, () -> assertEquals(PAGE * LINES_PER_ORDER, mapPage(batched, 0)));
+
+            var unbatched = BenchmarkDatabase.measure(10, 50, () -> mapPage(db, 1));
+            baseline.atMost("batchfetch.unbatched.p50.ms", BenchmarkDatabase.millis(unbatched, 50));
+            var batch = BenchmarkDatabase.measure(10, 50, () -> mapPage(batched, 1));
+            baseline.atMost("batchfetch.batched.p50.ms", BenchmarkDatabase.millis(batch, 50));
+            baseline.verify();
+            assertTrue(batch.getValueAtPercentile(50) < unbatched.getValueAtPercentile(50), "batch fetching is not faster");
+        }
+    }
+
+    /**
+     * Load page {@code page} of orders and touch the lines of each, as a mapper to a DTO would
+     *
+     * @return lines read
+     */
+    private static int mapPage(BenchmarkDatabase db, int page) {
+        return db.inTransaction(em -> {
+            var orders = em.createQuery("select o from BatchOrder o order by o.id", BatchOrder.class)
+                    .setFirstResult(page * PAGE)
+                    .setMaxResults(PAGE)
+                    .getResultList();
+            var lines = 0;
+            for (var order : orders) {
+                lines += order.lines.size();
+            }
+            return lines;
+        });
+    }
+
+    @Entity(name = "BatchOrder")
+    @Table(name = "benchmark_batch_order")
+    public static class BatchOrder {
+        @Id
+        private Long id;
+        private String customer;
+        @OneToMany(mappedBy = "order")
+        private List<BatchLine> lines;
+    }
+
+    @Entity(name = "BatchLine")
+    @Table(name = "benchmark_batch_line")
+    public static class BatchLine {
+        @Id
+        private Long id;
+        @ManyToOne(fetch = FetchType.LAZY)
+        @JoinColumn(name = "order_id")
+        private BatchOrder order;
+        private String product;
+    }
+}
@@ -0,0 +1,170 @@
+package com.commander.common.benchmark;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.HdrHistogram.Histogram;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import javax.sql.DataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Postgres database of benchmarks, given by {@code -Dbenchmark.jdbc.url} (with {@code benchmark.jdbc.user} and
+ * {@code benchmark.jdbc.password}); benchmarks using it are skipped when it is not set.
+ * <p>
+ * Tables are created by each benchmark and kept between runs, so large fixtures are only loaded once.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private static final String URL = System.getProperty("benchmark.jdbc.url");
+    private static final String USER = System.getProperty("benchmark.jdbc.user", "postgres");
+    private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "postgres");
+
+    private final SessionFactory sessionFactory;
+    private final ThreadLocal<EntityManager> current = new ThreadLocal<>();
+
+    private BenchmarkDatabase(Map<String, String> properties, Class<?>... entities) {
+        var configuration = new Configuration()
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.connection.username", USER)
+                .setProperty("hibernate.connection.password", PASSWORD)
+                .setProperty("hibernate.connection.pool_size", "8")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        properties.forEach(configuration::setProperty);
+        for (var entity : entities) {
+            configuration.addAnnotatedClass(entity);
+        }
+        sessionFactory = configuration.buildSessionFactory();
+    }
+
+    /**
+     * @param entities entities mapped by the session factory, their tables are not created
+     */
+    public static BenchmarkDatabase open(Class<?>... entities) {
+        return open(Map.of(), entities);
+    }
+
+    /**
+     * @param properties Hibernate properties added to the defaults
+     * @param entities   entities mapped by the session factory, their tables are not created
+     */
+    public static BenchmarkDatabase open(Map<String, String> properties, Class<?>... entities) {
+        assumeTrue(URL != null, "benchmark.jdbc.url not set");
+        return new BenchmarkDatabase(properties, entities);
+    }
+
+    /**
+     * Url of the database with extra driver parameters, e.g. {@code reWriteBatchedInserts=true}
+     */
+    public static String url(String parameters) {
+        return URL + (URL.contains("?") ? "&" : "?") + parameters;
+    }
+
+    /**
+     * Unpooled data source, for components taking one
+     */
+    public DataSource dataSource(String parameters) {
+        var dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(url(parameters));
+        dataSource.setUser(USER);
+        dataSource.setPassword(PASSWORD);
+        return dataSource;
+    }
+
+    public Connection connection() throws SQLException {
+        return DriverManager.getConnection(URL, USER, PASSWORD);
+    }
+
+    /**
+     * Run statements in autocommit mode, e.g. DDL or fixtures.
+     */
+    public void execute(String... statements) throws SQLException {
+        try (var connection = connection(); var statement = connection.createStatement()) {
+            for (var sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    public long count(String table) throws SQLException {
+        try (var connection = connection(); var statement = connection.createStatement()) {
+            var rs = statement.executeQuery("select count(*) from (select 1 from " + table + " limit 100000000) t");
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            // table does not exist yet
+            return -1;
+        }
+    }
+
+    public <T> T inTransaction(Function<EntityManager, T> work) {
+        return sessionFactory.fromTransaction(session -> {
+            current.set(session);
+            try {
+                return work.apply(session);
+            } finally {
+                current.remove();
+            }
+        });
+    }
+
+    public void inTransaction(Consumer<EntityManager> work) {
+        inTransaction(em -> {
+            work.accept(em);
+            return null;
+        });
+    }
+
+    /**
+     * Entity manager delegating to the one of the {@link #inTransaction} running on the calling thread, standing for
+     * the shared entity manager of Spring in components built once.
+     */
+    public EntityManager sharedEntityManager() {
+        return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(), new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+            var entityManager = current.get();
+            if (entityManager == null) {
+                throw new IllegalStateException("No transaction on " + Thread.currentThread());
+            }
+            try {
+                return method.invoke(entityManager, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * Run {@code work} {@code warmups + runs} times and record the duration of the last {@code runs} ones.
+     */
+    public static Histogram measure(int warmups, int runs, Runnable work) {
+        var histogram = new Histogram(TimeUnit.MINUTES.toNanos(10), 3);
+        for (int i = 0; i < warmups + runs; ++i) {
+            var start = System.nanoTime();
+            work.run();
+            if (i >= warmups) {
+                histogram.recordValue(System.nanoTime() - start);
+            }
+        }
+        return histogram;
+    }
+
+    public static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    @Override
+    public void close() {
+        sessionFactory.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.BulkColumn;
+import com.commander.common.jpa.BulkWriter;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rows per second written by JPA {@code persist} without and with JDBC batching, {@link BulkWriter#upsert} and
+ * {@link BulkWriter#copy}. Needs {@code -Dbenchmark.jdbc.url}, see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class BulkBenchmarkTest {
+    private static final int ROWS = 100_000;
+    private static final int UNBATCHED_ROWS = 10_000;
+    private static final Instant CREATED_AT = Instant.parse("2024-01-01T00:00:00Z");
+    private static final List<BulkColumn<BulkItem>> COLUMNS = List.of(
+            BulkColumn.of("id", BulkColumn.Type.BIGINT, BulkItem::getId),
+            BulkColumn.of("name", BulkColumn.Type.TEXT, BulkItem::getName),
+            BulkColumn.of("amount", BulkColumn.Type.NUMERIC, BulkItem::getAmount),
+            BulkColumn.of("created_at", BulkColumn.Type.TIMESTAMPTZ, BulkItem::getCreatedAt),
+            BulkColumn.of("tag", BulkColumn.Type.UUID, BulkItem::getTag));
+
+    @Test
+    void bulkWrites() throws Exception {
+        var batching = Map.of("hibernate.connection.url", BenchmarkDatabase.url("reWriteBatchedInserts=true"),
+                "hibernate.jdbc.batch_size", "50",
+                "hibernate.order_inserts", "true");
+        try (var db = BenchmarkDatabase.open(BulkItem.class); var batched = BenchmarkDatabase.open(batching, BulkItem.class)) {
+            db.execute("drop table if exists benchmark_bulk_item",
+                    "drop sequence if exists benchmark_bulk_item_seq",
+                    "create sequence benchmark_bulk_item_seq increment by 50",
+                    "create table benchmark_bulk_item (id bigint primary key, name text not null, amount numeric(12, 2) not null,"
+                            + " created_at timestamptz not null, tag uuid not null)");
+            var writer = new BulkWriter(db.dataSource("reWriteBatchedInserts=true"), 1000, 64 * 1024);
+            var baseline = new Baseline("bulk");
+
+            var unbatched = rowsPerSecond(db, UNBATCHED_ROWS, rows -> db.inTransaction(em -> {
+                for (long i = 0; i < rows; ++i) {
+                    em.persist(item(null, i));
+                }
+            }));
+            baseline.atLeast("bulk.jpa.unbatched.rows.per.s", unbatched);
+            var jpa = rowsPerSecond(db, ROWS, rows -> batched.inTransaction(em -> {
+                for (long i = 0; i < rows; ++i) {
+                    em.persist(item(null, i));
+                    if (i % 1000 == 999) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+            }));
+            baseline.atLeast("bulk.jpa.batched.rows.per.s", jpa);
+            var upsert = rowsPerSecond(db, ROWS, rows -> writer.upsert("benchmark_bulk_item", COLUMNS, List.of("id"),
+                    () -> LongStream.range(0, rows).mapToObj(i -> item(i + 1, i)).iterator()));
+            baseline.atLeast("bulk.upsert.rows.per.s", upsert);
+            var copy = rowsPerSecond(db, ROWS, rows -> writer.copy("benchmark_bulk_item", COLUMNS,
+                    LongStream.range(0, rows).mapToObj(i -> item(i + 1, i)).iterator()));
+            baseline.atLeast("bulk.copy.rows.per.s", copy);
+
+            // copied values read back as written
+            try (var connection = db.connection(); var statement = connection.createStatement()) {
+                var rs = statement.executeQuery("select name, amount, created_at, tag from benchmark_bulk_item where id = 12346");
+                assertTrue(rs.next());
+                assertEquals("item-12345", rs.getString(1));
+                assertEquals(new BigDecimal("-123.45"), rs.getBigDecimal(2));
+                assertEquals(CREATED_AT.plus(12345, ChronoUnit.SECONDS), rs.getTimestamp(3).toInstant());
+                assertEquals(new UUID(0, 12345), rs.getObject(4));
+            }
+            baseline.verify();
+            assertTrue(jpa > unbatched, "batched persist is not faster than unbatched");
+            assertTrue(copy > jpa, "copy is not faster than batched persist");
+        }
+    }
+
+    /**
+     * Best of two runs writing {@code rows} rows into an empty table
+     */
+    private static double rowsPerSecond(BenchmarkDatabase db, int rows, LongConsumer write) throws Exception {
+        var best = 0d;
+        for (int run = 0; run < 2; ++run) {
+            db.execute("truncate benchmark_bulk_item");
+            var start = System.nanoTime();
+            write.accept(rows);
+            best = Math.max(best, rows * 1e9 / (System.nanoTime() - start));
+            assertEquals(rows, db.count("benchmark_bulk_item"));
+        }
+        return Math.round(best);
+    }
+
+    private static BulkItem item(Long id, long i) {
+        var item = new BulkItem();
+        item.id = id;
+        item.name = "item-" + i;
+        item.amount = BigDecimal.valueOf(i % 2 == 0 ? i : -i, 2);
+        item.createdAt = CREATED_AT.plusSeconds(i);
+        item.tag = new UUID(0, i);
+        return item;
+    }
+
+    @Entity
+    @Table(name = "benchmark_bulk_item")
+    public static class BulkItem {
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "benchmark_bulk_item_seq")
+        @SequenceGenerator(name = "benchmark_bulk_item_seq", allocationSize = 50)
+        private Long id;
+        private String name;
+        private BigDecimal amount;
+        @Column(name = "created_at")
+        private Instant createdAt;
+        private UUID tag;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public Instant getCreatedAt() {
+            return createdAt;
+        }
+
+        public UUID getTag() {
+            return tag;
+        }
+    }
+}
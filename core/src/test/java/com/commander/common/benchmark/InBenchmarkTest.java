@@ -0,0 +1,61 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.ValueTable;
+import com.commander.common.util.Specifications;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of {@link Specifications#in}, {@link Specifications#inArray} and {@link ValueTable#in} by number of ids, on
+ * the table of {@link SearchBenchmarkTest}. {@code in} is not run past 10k ids, as it nears the 65535 bind parameters
+ * a statement can have. Needs {@code -Dbenchmark.jdbc.url}, see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class InBenchmarkTest {
+    private static final int[] SIZES = {100, 1_000, 10_000, 100_000, 500_000, 1_000_000};
+    private static final int IN_LIST_LIMIT = 10_000;
+
+    @Test
+    void inPredicates() throws Exception {
+        try (var db = BenchmarkDatabase.open(SearchBenchmarkTest.SearchItem.class)) {
+            SearchBenchmarkTest.createFixture(db);
+            var baseline = new Baseline("in");
+            for (var size : SIZES) {
+                // spread over the table, so each id is on another page
+                var ids = LongStream.range(0, size).map(i -> 1 + i * 7 % 1_000_000).boxed().toList();
+                if (size <= IN_LIST_LIMIT) {
+                    record(db, baseline, "in.list." + size, ids, (em, attribute) -> Specifications.in(attribute, ids));
+                }
+                record(db, baseline, "in.array." + size, ids, (em, attribute) -> Specifications.inArray(attribute, ids));
+                record(db, baseline, "in.table." + size, ids, (em, attribute) -> ValueTable.in(em, attribute, ids, 0));
+            }
+            baseline.verify();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void record(BenchmarkDatabase db, Baseline baseline, String name, List<Long> ids,
+                               BiFunction<EntityManager, SingularAttribute<SearchBenchmarkTest.SearchItem, Long>, Specification<SearchBenchmarkTest.SearchItem>> predicate) {
+        var histogram = BenchmarkDatabase.measure(3, 20, () -> db.inTransaction(em -> {
+            var attribute = (SingularAttribute<SearchBenchmarkTest.SearchItem, Long>) em.getMetamodel()
+                    .entity(SearchBenchmarkTest.SearchItem.class).getSingularAttribute("id", Long.class);
+            var spec = predicate.apply(em, attribute);
+            var builder = em.getCriteriaBuilder();
+            var query = builder.createQuery(Long.class);
+            var root = query.from(SearchBenchmarkTest.SearchItem.class);
+            query.select(builder.count(root)).where(spec.toPredicate(root, query, builder));
+            assertEquals(ids.size(), em.createQuery(query).getSingleResult(), name);
+        }));
+        baseline.atMost(name + ".p50.ms", BenchmarkDatabase.millis(histogram, 50));
+        baseline.atMost(name + ".p99.ms", BenchmarkDatabase.millis(histogram, 99));
+    }
+}
@@ -0,0 +1,149 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.JobQueue;
+import com.commander.common.util.JsonObject;
+import com.zaxxer.hikari.HikariDataSource;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Jobs per second run by 1, 2 and 4 nodes sharing a {@link JobQueue}, each node with its own pool and 16 workers, for
+ * jobs blocking 5 ms, and the delay between the commit of a job and its start when the poll interval is 10 s, so only
+ * notifications wake the nodes up. Needs {@code -Dbenchmark.jdbc.url}, see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class JobQueueBenchmarkTest {
+    private static final String TABLE = "benchmark_job";
+    private static final int JOBS = 5_000;
+    private static final int WORKERS = 16;
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(10);
+
+    @Test
+    void jobQueue() throws Exception {
+        try (var db = BenchmarkDatabase.open()) {
+            db.execute("drop table if exists " + TABLE,
+                    "create table " + TABLE + " (id bigserial primary key, queue text not null, payload jsonb,"
+                            + " priority integer not null default 0, scheduled_at timestamptz not null default now(),"
+                            + " lease_expires_at timestamptz, attempts integer not null default 0, last_error text,"
+                            + " created_at timestamptz not null default now())",
+                    "create index on " + TABLE + " (queue, priority desc, scheduled_at, id) where scheduled_at < 'infinity'");
+            var baseline = new Baseline("jobs");
+
+            for (var nodes : List.of(1, 2, 4)) {
+                baseline.atLeast("jobs.per.second." + nodes + ".nodes", jobsPerSecond(db, nodes));
+            }
+
+            try (var node = new Node(db)) {
+                var started = new ArrayBlockingQueue<Long>(1);
+                node.queue.subscribe("latency", 1, job -> started.add(System.nanoTime()));
+                var histogram = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+                for (int i = 0; i < 110; ++i) {
+                    var enqueued = System.nanoTime();
+                    node.queue.enqueue("latency", new JsonObject().put("n", i));
+                    var start = started.poll(5, TimeUnit.SECONDS);
+                    assertNotNull(start, "job not started without polling");
+                    if (i >= 10) {
+                        histogram.recordValue(start - enqueued);
+                    }
+                }
+                baseline.atMost("jobs.pickup.p50.ms", BenchmarkDatabase.millis(histogram, 50));
+
+                // failed jobs are retried after the backoff, jobs of higher priority are claimed first
+                var attempts = new ArrayBlockingQueue<Integer>(2);
+                node.queue.subscribe("flaky", 1, job -> {
+                    attempts.add(job.attempts());
+                    if (job.attempts() == 1) {
+                        throw new IllegalStateException("first attempt");
+                    }
+                });
+                node.queue.enqueue("flaky", null);
+                assertEquals(1, attempts.poll(5, TimeUnit.SECONDS));
+                assertEquals(2, attempts.poll(5, TimeUnit.SECONDS));
+
+                // a job failing every attempt is parked out of the claim index
+                var failed = new CountDownLatch(3);
+                node.queue.subscribe("dead", 1, job -> {
+                    failed.countDown();
+                    throw new IllegalStateException("attempt " + job.attempts());
+                });
+                var dead = node.queue.enqueue("dead", null);
+                assertTrue(failed.await(5, TimeUnit.SECONDS), "job not retried");
+                Thread.sleep(200);
+                try (var connection = db.connection(); var statement = connection.createStatement();
+                     var rs = statement.executeQuery("select scheduled_at::text, last_error from " + TABLE + " where id = " + dead)) {
+                    assertTrue(rs.next());
+                    assertEquals("infinity", rs.getString(1));
+                    assertEquals("java.lang.IllegalStateException: attempt 3", rs.getString(2));
+                }
+
+                var order = new ArrayBlockingQueue<Integer>(3);
+                db.execute("insert into " + TABLE + " (queue, payload, priority) values ('priority', '{\"p\": 1}', 1),"
+                        + " ('priority', '{\"p\": 5}', 5), ('priority', '{\"p\": 3}', 3)");
+                node.queue.subscribe("priority", 1, job -> order.add(job.payload().getInteger("p")));
+                assertEquals(List.of(5, 3, 1), List.of(order.poll(5, TimeUnit.SECONDS), order.poll(5, TimeUnit.SECONDS),
+                        order.poll(5, TimeUnit.SECONDS)));
+            }
+            baseline.verify();
+        }
+    }
+
+    private static double jobsPerSecond(BenchmarkDatabase db, int count) throws Exception {
+        var nodes = new ArrayList<Node>();
+        try {
+            var done = new CountDownLatch(JOBS);
+            for (int i = 0; i < count; ++i) {
+                var node = new Node(db);
+                nodes.add(node);
+                node.queue.subscribe("throughput", WORKERS, job -> {
+                    Thread.sleep(5);
+                    done.countDown();
+                });
+            }
+            // let the nodes go idle, so the jobs are claimed on notification
+            Thread.sleep(200);
+            var start = System.nanoTime();
+            db.execute("insert into " + TABLE + " (queue, payload) select 'throughput', jsonb_build_object('n', i)"
+                            + " from generate_series(1, " + JOBS + ") i",
+                    "select pg_notify('" + TABLE + "', 'throughput')");
+            assertTrue(done.await(2, TimeUnit.MINUTES), "jobs not done");
+            var perSecond = JOBS / ((System.nanoTime() - start) / 1e9);
+            // the row of the last job is deleted after its handler returns
+            Thread.sleep(200);
+            assertEquals(0, db.count(TABLE));
+            return perSecond;
+        } finally {
+            nodes.forEach(Node::close);
+        }
+    }
+
+    /**
+     * One application node: its own pool and queue
+     */
+    private static class Node implements AutoCloseable {
+        private final HikariDataSource dataSource = new HikariDataSource();
+        private final JobQueue queue;
+
+        private Node(BenchmarkDatabase db) {
+            dataSource.setDataSource(db.dataSource(""));
+            dataSource.setMaximumPoolSize(WORKERS + 2);
+            queue = new JobQueue(dataSource, TABLE, TABLE, POLL_INTERVAL, Duration.ofMinutes(1), 3, Duration.ofMillis(50),
+                    Duration.ofSeconds(1), null);
+        }
+
+        @Override
+        public void close() {
+            queue.close();
+            dataSource.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.util.JoinStrategy;
+import com.commander.common.util.Specifications;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of each {@link JoinStrategy} of {@link Specifications#equalsJoin}: a page of 20 items and its count, for a
+ * tag of 1000 items and one of a third of the million items of {@link SearchBenchmarkTest}. Needs
+ * {@code -Dbenchmark.jdbc.url}, see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class JoinBenchmarkTest {
+    private static final Map<String, String> TAGS = Map.of("rare", "t123", "common", "hot");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void joinStrategies() throws Exception {
+        try (var db = BenchmarkDatabase.open(SearchBenchmarkTest.SearchItem.class, SearchTag.class)) {
+            SearchBenchmarkTest.createFixture(db);
+            if (db.count("benchmark_search_tag") < 0) {
+                db.execute("create table benchmark_search_tag (id bigserial primary key, item_id bigint not null, tag text not null)",
+                        "insert into benchmark_search_tag (item_id, tag) select i, 't' || (i % 1000) from generate_series(1, 1000000) i",
+                        "insert into benchmark_search_tag (item_id, tag) select i, 'hot' from generate_series(3, 1000000, 3) i",
+                        "create index benchmark_search_tag_tag_idx on benchmark_search_tag (tag, item_id)",
+                        "create index benchmark_search_tag_item_id_idx on benchmark_search_tag (item_id)",
+                        "analyze benchmark_search_tag");
+            }
+            var baseline = new Baseline("join");
+            var totals = new HashMap<String, Long>();
+            for (var tag : TAGS.entrySet()) {
+                for (var strategy : JoinStrategy.values()) {
+                    var histogram = BenchmarkDatabase.measure(3, 20, () -> db.inTransaction(em -> {
+                        var itemId = (SingularAttribute<SearchBenchmarkTest.SearchItem, Long>) em.getMetamodel()
+                                .entity(SearchBenchmarkTest.SearchItem.class).getSingularAttribute("id", Long.class);
+                        var tagType = em.getMetamodel().entity(SearchTag.class);
+                        var spec = Specifications.equalsJoin(em, itemId, SearchTag.class,
+                                (SingularAttribute<SearchTag, Long>) tagType.getSingularAttribute("itemId", Long.class),
+                                (SingularAttribute<SearchTag, String>) tagType.getSingularAttribute("tag", String.class),
+                                tag.getValue(), strategy);
+                        var builder = em.getCriteriaBuilder();
+                        var query = builder.createQuery(SearchBenchmarkTest.SearchItem.class);
+                        var root = query.from(SearchBenchmarkTest.SearchItem.class);
+                        query.where(spec.toPredicate(root, query, builder)).orderBy(builder.asc(root.get(itemId)));
+                        assertEquals(20, em.createQuery(query).setMaxResults(20).getResultList().size());
+                        var count = builder.createQuery(Long.class);
+                        var countRoot = count.from(SearchBenchmarkTest.SearchItem.class);
+                        count.where(spec.toPredicate(countRoot, count, builder));
+                        count.select(count.isDistinct() ? builder.countDistinct(countRoot) : builder.count(countRoot));
+                        var total = em.createQuery(count).getSingleResult();
+                        assertEquals(totals.computeIfAbsent(tag.getKey(), k -> total), total, strategy + " total");
+                    }));
+                    var name = "join." + strategy + "." + tag.getKey();
+                    baseline.atMost(name + ".p50.ms", BenchmarkDatabase.millis(histogram, 50));
+                    baseline.atMost(name + ".p99.ms", BenchmarkDatabase.millis(histogram, 99));
+                }
+            }
+            baseline.verify();
+        }
+    }
+
+    @Entity
+    @Table(name = "benchmark_search_tag")
+    public static class SearchTag {
+        @Id
+        private Long id;
+        @Column(name = "item_id")
+        private Long itemId;
+        private String tag;
+    }
+}
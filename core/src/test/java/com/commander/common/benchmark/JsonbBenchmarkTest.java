@@ -0,0 +1,113 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.ExplainStatementInspector;
+import com.commander.common.util.JsonArray;
+import com.commander.common.util.JsonObject;
+import com.commander.common.util.Specifications;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trip of {@code JsonObject} attributes through a {@code jsonb} column, and latency of the jsonb
+ * {@link Specifications} on 200k rows with a GIN index. Needs {@code -Dbenchmark.jdbc.url}, see
+ * {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class JsonbBenchmarkTest {
+    private static final int ROWS = 200_000;
+
+    @Test
+    void jsonb() throws Exception {
+        try (var db = BenchmarkDatabase.open(Map.of(AvailableSettings.STATEMENT_INSPECTOR, ExplainStatementInspector.class.getName()), JsonItem.class)) {
+            if (db.count("benchmark_json_item") != ROWS) {
+                db.execute("drop table if exists benchmark_json_item",
+                        "create table benchmark_json_item (id bigint primary key, name text not null, attributes jsonb)",
+                        "insert into benchmark_json_item select i, 'item-' || i, jsonb_build_object('color', 'color-' || i % 7,"
+                                + " 'size', i % 50, 'tags', jsonb_build_array('tag-' || i % 100, 'tag-' || i % 1000))"
+                                + " from generate_series(1, " + ROWS + ") i",
+                        "create index on benchmark_json_item using gin (attributes)",
+                        "analyze benchmark_json_item");
+            }
+            var attributes = new JsonObject().put("color", "red").put("size", 3).put("tags", JsonArray.of("a", new JsonObject().put("b", 1)));
+            db.inTransaction(em -> {
+                var item = new JsonItem();
+                item.id = ROWS + 1L;
+                item.name = "round-trip";
+                item.attributes = attributes;
+                em.persist(item);
+            });
+            try {
+                assertEquals(attributes, db.inTransaction(em -> em.find(JsonItem.class, ROWS + 1L).attributes));
+                assertEquals(1, count(db, attribute -> Specifications.jsonContains(attribute, new JsonObject().put("tags", JsonArray.of("a")))));
+            } finally {
+                db.execute("delete from benchmark_json_item where id > " + ROWS);
+            }
+
+            assertEquals(ROWS / 100, count(db, attribute -> Specifications.jsonContains(attribute, new JsonObject().put("tags", JsonArray.of("tag-7")))));
+            assertEquals(ROWS, count(db, attribute -> Specifications.jsonHasKey(attribute, "color")));
+            assertEquals(ROWS / 50, count(db, attribute -> Specifications.jsonPathExists(attribute, "$.size ? (@ == 49)")));
+            assertEquals(ROWS / 50, count(db, attribute -> Specifications.jsonPathMatch(attribute, "$.size == 49")));
+            assertTrue(plan(db, attribute -> Specifications.jsonContains(attribute, new JsonObject().put("color", "color-3").put("size", 10)))
+                    .contains("Bitmap Index Scan"), "containment does not use the GIN index");
+            assertTrue(plan(db, attribute -> Specifications.jsonPathMatch(attribute, "$.size == 49")).contains("Bitmap Index Scan"),
+                    "jsonpath does not use the GIN index");
+
+            var baseline = new Baseline("jsonb");
+            var contains = BenchmarkDatabase.measure(20, 200, () -> count(db, attribute ->
+                    Specifications.jsonContains(attribute, new JsonObject().put("tags", JsonArray.of("tag-7")))));
+            baseline.atMost("jsonb.contains.p50.ms", BenchmarkDatabase.millis(contains, 50));
+            var path = BenchmarkDatabase.measure(20, 200, () -> count(db, attribute -> Specifications.jsonPathMatch(attribute, "$.size == 49")));
+            baseline.atMost("jsonb.path.match.p50.ms", BenchmarkDatabase.millis(path, 50));
+            baseline.verify();
+        }
+    }
+
+    private interface Filter {
+        Specification<JsonItem> on(SingularAttribute<JsonItem, JsonObject> attribute);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SingularAttribute<JsonItem, JsonObject> attribute(EntityManager em) {
+        return (SingularAttribute<JsonItem, JsonObject>) em.getMetamodel().entity(JsonItem.class).getSingularAttribute("attributes", JsonObject.class);
+    }
+
+    private static long count(BenchmarkDatabase db, Filter filter) {
+        return db.inTransaction(em -> {
+            var builder = em.getCriteriaBuilder();
+            var query = builder.createQuery(Long.class);
+            var root = query.from(JsonItem.class);
+            query.select(builder.count(root)).where(filter.on(attribute(em)).toPredicate(root, query, builder));
+            return em.createQuery(query).getSingleResult();
+        });
+    }
+
+    private static String plan(BenchmarkDatabase db, Filter filter) {
+        return db.inTransaction(em -> {
+            var builder = em.getCriteriaBuilder();
+            var query = builder.createQuery(String.class);
+            var root = query.from(JsonItem.class);
+            query.select(root.get("name")).where(filter.on(attribute(em)).toPredicate(root, query, builder));
+            return ExplainStatementInspector.explain(() -> em.createQuery(query).getResultList().get(0));
+        });
+    }
+
+    @Entity(name = "JsonItem")
+    @Table(name = "benchmark_json_item")
+    public static class JsonItem {
+        @Id
+        private Long id;
+        private String name;
+        private JsonObject attributes;
+    }
+}
@@ -0,0 +1,65 @@
+package com.commander.common.benchmark;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open-loop load generator: requests are started at a fixed rate whatever the latency of previous ones, and latency
+ * is measured from the intended start time, so a stalled client shows up in the percentiles instead of silently
+ * lowering the offered load (coordinated omission).
+ */
+public final class OpenLoopLoad {
+    private OpenLoopLoad() {
+    }
+
+    public static Result run(Supplier<CompletableFuture<?>> call, int requestsPerSecond, Duration duration) throws InterruptedException {
+        var histogram = new Histogram(TimeUnit.SECONDS.toNanos(60), 3);
+        var errors = new AtomicLong();
+        var firstError = new AtomicReference<Throwable>();
+        var total = (int) (requestsPerSecond * duration.toMillis() / 1000);
+        var done = new CountDownLatch(total);
+        var intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        var start = System.nanoTime();
+        for (int i = 0; i < total; ++i) {
+            var intended = start + i * intervalNanos;
+            var wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            call.get().whenComplete((r, e) -> {
+                var latency = System.nanoTime() - intended;
+                synchronized (histogram) {
+                    histogram.recordValue(Math.min(latency, histogram.getHighestTrackableValue()));
+                }
+                if (e != null) {
+                    errors.incrementAndGet();
+                    firstError.compareAndSet(null, e);
+                }
+                done.countDown();
+            });
+        }
+        done.await(duration.toSeconds() + 60, TimeUnit.SECONDS);
+        var elapsed = System.nanoTime() - start;
+        return new Result(histogram, errors.get(), firstError.get(), total * 1e9 / elapsed);
+    }
+
+    /**
+     * @param latencies  latency from intended start to completion, in nanoseconds
+     * @param errors     failed calls
+     * @param firstError failure of the first failed call, null if none failed
+     * @param throughput completed calls per second
+     */
+    public record Result(Histogram latencies, long errors, Throwable firstError, double throughput) {
+        public double percentileMillis(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1e6;
+        }
+    }
+}
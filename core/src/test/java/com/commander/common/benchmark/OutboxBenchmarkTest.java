@@ -0,0 +1,112 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.Outbox;
+import com.commander.common.jpa.OutboxDispatcher;
+import com.commander.common.util.Json;
+import com.commander.common.util.RestCall;
+import com.commander.common.util.RestClient;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of a transaction calling a downstream service inline against one queuing the call with {@link Outbox}, and
+ * calls per second sent by {@link OutboxDispatcher} to a stub answering after 20 ms. Needs
+ * {@code -Dbenchmark.jdbc.url}, see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class OutboxBenchmarkTest {
+    private static final String TABLE = "benchmark_outbox";
+    private static final int CALLS = 10_000;
+    private static final StubServer.Profile PROFILE = new StubServer.Profile(Duration.ofMillis(20), Duration.ZERO, 0, 64);
+
+    @Test
+    void outbox() throws Exception {
+        try (var db = BenchmarkDatabase.open();
+             var dataSource = new HikariDataSource();
+             var stub = new StubServer(PROFILE)) {
+            dataSource.setDataSource(db.dataSource("reWriteBatchedInserts=true"));
+            dataSource.setMaximumPoolSize(8);
+            db.execute("drop table if exists " + TABLE,
+                    "create table " + TABLE + " (id bigserial primary key, method text not null, uri text not null, headers jsonb,"
+                            + " body bytea, attempts integer not null default 0, available_at timestamptz not null default now(),"
+                            + " last_error text, created_at timestamptz not null default now())",
+                    "create index on " + TABLE + " (available_at, id)");
+            var restClient = new RestClient(HttpClient.newHttpClient());
+            var transactions = new TransactionTemplate(new JdbcTransactionManager(dataSource));
+            var jdbc = new JdbcTemplate(dataSource);
+            var call = new RestCall<Void>("POST", stub.uri("/orders"), Map.of("X-Tenant", "t1"), Json.encode(Map.of("id", 1)), null);
+            var baseline = new Baseline("outbox");
+
+            var inline = BenchmarkDatabase.measure(20, 200, () -> transactions.executeWithoutResult(status -> {
+                jdbc.queryForObject("select 1", Integer.class);
+                restClient.call(new RestCall<Void>("POST", stub.uri("/orders"), Map.of("X-Tenant", "t1"), Json.encode(Map.of("id", 1)), reader -> null));
+            }));
+            baseline.atMost("outbox.inline.p50.ms", BenchmarkDatabase.millis(inline, 50));
+
+            // queue everything before starting the dispatcher, to time the enqueue alone and then the drain alone
+            var registry = new SimpleMeterRegistry();
+            var outbox = new Outbox(dataSource, TABLE, null);
+            var enqueue = BenchmarkDatabase.measure(0, CALLS, () -> transactions.executeWithoutResult(status -> {
+                jdbc.queryForObject("select 1", Integer.class);
+                outbox.enqueue(call);
+            }));
+            baseline.atMost("outbox.enqueue.p50.ms", BenchmarkDatabase.millis(enqueue, 50));
+            assertEquals(CALLS, db.count(TABLE));
+
+            var start = System.nanoTime();
+            try (var dispatcher = new OutboxDispatcher(dataSource, TABLE, restClient, 100, 64, Duration.ofMillis(50),
+                    Duration.ofMinutes(1), 3, Duration.ofMillis(200), Duration.ofSeconds(1), registry)) {
+                awaitCount(db, 0);
+                baseline.atLeast("outbox.dispatch.per.second", CALLS / ((System.nanoTime() - start) / 1e9));
+                assertEquals(CALLS, registry.counter("outbox.dispatched", "outcome", "sent").count());
+
+                // a rolled back call is never sent, a committed one wakes the dispatcher up and is retried until given up
+                stub.setProfile(new StubServer.Profile(Duration.ZERO, Duration.ZERO, 1, 64));
+                transactions.executeWithoutResult(status -> {
+                    outbox.enqueue(call);
+                    status.setRollbackOnly();
+                });
+                assertEquals(0, db.count(TABLE));
+                var retrying = new Outbox(dataSource, TABLE, dispatcher::wakeUp);
+                transactions.executeWithoutResult(status -> retrying.enqueue(call));
+                awaitTrue(() -> registry.counter("outbox.dispatched", "outcome", "dead").count() == 1);
+                assertEquals(2, registry.counter("outbox.dispatched", "outcome", "retried").count());
+                assertEquals(3, jdbc.queryForObject("select attempts from " + TABLE, Integer.class));
+                assertTrue(jdbc.queryForObject("select last_error from " + TABLE, String.class).startsWith("500 "));
+                assertEquals("infinity", jdbc.queryForObject("select available_at::text from " + TABLE, String.class));
+            }
+            baseline.verify();
+            assertTrue(enqueue.getValueAtPercentile(50) * 4 < inline.getValueAtPercentile(50), "enqueue is not cheaper than the call");
+        }
+    }
+
+    private static void awaitCount(BenchmarkDatabase db, long rows) throws Exception {
+        awaitTrue(() -> {
+            try {
+                return db.count(TABLE) == rows;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+}
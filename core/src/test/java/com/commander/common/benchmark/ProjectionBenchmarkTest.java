@@ -0,0 +1,126 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.CountStrategy;
+import com.commander.common.jpa.PageFinder;
+import com.commander.common.util.Specifications;
+import com.sun.management.ThreadMXBean;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rows per second and bytes allocated per row reading pages of 10k rows of {@link SearchBenchmarkTest} as entities
+ * mapped to a DTO, and as record and bean projections through {@link PageFinder}. Needs {@code -Dbenchmark.jdbc.url},
+ * see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class ProjectionBenchmarkTest {
+    private static final int PAGE = 10_000;
+    private static final int PAGES = 20;
+
+    @Test
+    void projections() throws Exception {
+        try (var db = BenchmarkDatabase.open(SearchBenchmarkTest.SearchItem.class)) {
+            SearchBenchmarkTest.createFixture(db);
+            var finder = new PageFinder(db.sharedEntityManager(), CountStrategy.EXACT, Duration.ofMinutes(1), 100, 0);
+            var baseline = new Baseline("projection");
+            var entity = record(db, baseline, "entity", (spec, pageable) -> finder.find(SearchBenchmarkTest.SearchItem.class, spec, pageable)
+                    .map(item -> new ItemName(item.getId(), item.getName())).getContent());
+            var record = record(db, baseline, "record", (spec, pageable) -> finder.find(SearchBenchmarkTest.SearchItem.class, ItemName.class, spec, pageable)
+                    .getContent());
+            record(db, baseline, "bean", (spec, pageable) -> finder.find(SearchBenchmarkTest.SearchItem.class, ItemNameBean.class, spec, pageable)
+                    .map(bean -> new ItemName(bean.getId(), bean.getName())).getContent());
+            baseline.verify();
+            assertTrue(record > entity, "record projection is not faster than entities");
+        }
+    }
+
+    /**
+     * Read pages of {@code PAGE} rows by id range, pages are not full so that no count is run
+     *
+     * @return rows per second
+     */
+    @SuppressWarnings("unchecked")
+    private static double record(BenchmarkDatabase db, Baseline baseline, String name,
+                                 BiFunction<Specification<SearchBenchmarkTest.SearchItem>, PageRequest, List<ItemName>> read) {
+        var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var pageable = PageRequest.of(0, PAGE + 1, Sort.by("id"));
+        long rows = 0;
+        long start = 0;
+        long allocated = 0;
+        for (int i = -PAGES / 4; i < PAGES; ++i) {
+            if (i == 0) {
+                start = System.nanoTime();
+                allocated = threads.getCurrentThreadAllocatedBytes();
+            }
+            var from = 1L + Math.floorMod(i, PAGES) * (long) PAGE;
+            var content = db.inTransaction((EntityManager em) -> {
+                var id = (SingularAttribute<SearchBenchmarkTest.SearchItem, Long>) em.getMetamodel()
+                        .entity(SearchBenchmarkTest.SearchItem.class).getSingularAttribute("id", Long.class);
+                Specification<SearchBenchmarkTest.SearchItem> spec = Specification.where(Specifications.greaterThanOrEqualTo(id, from))
+                        .and(Specifications.lessThan(id, from + PAGE));
+                return read.apply(spec, pageable);
+            });
+            assertEquals(PAGE, content.size());
+            assertEquals(new ItemName(from, "item-" + md5(from)), content.get(0));
+            if (i >= 0) {
+                rows += content.size();
+            }
+        }
+        var rowsPerSecond = Math.round(rows * 1e9 / (System.nanoTime() - start));
+        var bytesPerRow = Math.round((double) (threads.getCurrentThreadAllocatedBytes() - allocated) / rows);
+        baseline.atLeast("projection." + name + ".rows.per.s", rowsPerSecond);
+        baseline.atMost("projection." + name + ".bytes.per.row", bytesPerRow);
+        return rowsPerSecond;
+    }
+
+    /**
+     * Name of row {@code i}, as generated by the fixture
+     */
+    private static String md5(long i) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(Long.toString(i).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record ItemName(Long id, String name) {
+    }
+
+    public static class ItemNameBean {
+        private Long id;
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
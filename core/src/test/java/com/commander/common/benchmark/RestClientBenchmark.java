@@ -0,0 +1,79 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.util.JsonObject;
+import com.commander.common.util.JsonObjectDslConverter;
+import com.commander.common.util.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop JMH benchmark of {@link RestClient} against a local {@link StubServer}, measuring the client-side cost
+ * per call. Run with {@code RestClientBenchmarkTest} in the {@code benchmark} profile, or through {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RestClientBenchmark {
+    @Param({"256", "16384"})
+    public int responseSize;
+
+    private StubServer server;
+    private HttpClient httpClient;
+    private RestClient restClient;
+    private URI uri;
+    private JsonObject request;
+    private byte[] rawRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StubServer(StubServer.Profile.fast(responseSize));
+        httpClient = HttpClient.newHttpClient();
+        restClient = new RestClient(httpClient);
+        uri = server.uri("/items");
+        request = JsonObject.of("id", 42, "name", "benchmark");
+        rawRequest = request.encode().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        httpClient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public JsonObject getForObject() {
+        return restClient.getForObject(uri, JsonObjectDslConverter.JSON_READER).join();
+    }
+
+    @Benchmark
+    public JsonObject postForObject() {
+        return restClient.postForObject(uri, null, request, JsonObjectDslConverter.JSON_WRITER, JsonObjectDslConverter.JSON_READER).join();
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> postRaw() {
+        return restClient.post(uri, rawRequest).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RestClientBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.util.JsonObject;
+import com.commander.common.util.JsonObjectDslConverter;
+import com.commander.common.util.RestClient;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RestClient throughput and latency gate, run with {@code mvn -Pbenchmark test}.
+ * <p>
+ * Results are compared with {@code src/test/resources/benchmark/rest-client.properties}; see {@link Baseline}.
+ */
+@Tag("benchmark")
+class RestClientBenchmarkTest {
+    private static final int RATE = Integer.getInteger("benchmark.rate", 500);
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("benchmark.seconds", 10));
+
+    @Test
+    void restClient() throws Exception {
+        var baseline = new Baseline("rest-client");
+        jmh(baseline);
+        openLoop(baseline);
+        baseline.verify();
+    }
+
+    private static void jmh(Baseline baseline) throws RunnerException {
+        var results = new Runner(new OptionsBuilder()
+                .include(RestClientBenchmark.class.getName())
+                .forks(0)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.seconds(3))
+                .threads(4)
+                .build()).run();
+        for (var result : results) {
+            var label = result.getParams().getBenchmark().replace(RestClientBenchmark.class.getName() + ".", "")
+                    + "." + result.getParams().getParam("responseSize");
+            baseline.atLeast("jmh." + label + ".opsPerSec", result.getPrimaryResult().getScore());
+        }
+    }
+
+    private static void openLoop(Baseline baseline) throws Exception {
+        try (var server = new StubServer(new StubServer.Profile(Duration.ofMillis(5), Duration.ofMillis(5), 0, 1024));
+             var httpClient = HttpClient.newHttpClient()) {
+            var restClient = new RestClient(httpClient);
+            var uri = server.uri("/items");
+            var request = JsonObject.of("id", 42, "name", "benchmark");
+            var rawRequest = request.encode().getBytes(StandardCharsets.UTF_8);
+
+            // warm up connections and JIT before measuring
+            OpenLoopLoad.run(() -> restClient.getForObject(uri, JsonObjectDslConverter.JSON_READER), RATE, Duration.ofSeconds(3));
+
+            record(baseline, "getForObject", OpenLoopLoad.run(
+                    () -> restClient.getForObject(uri, JsonObjectDslConverter.JSON_READER), RATE, DURATION));
+            record(baseline, "postForObject", OpenLoopLoad.run(
+                    () -> restClient.postForObject(uri, null, request, JsonObjectDslConverter.JSON_WRITER, JsonObjectDslConverter.JSON_READER), RATE, DURATION));
+            record(baseline, "postRaw", OpenLoopLoad.run(() -> restClient.post(uri, rawRequest), RATE, DURATION));
+        }
+    }
+
+    private static void record(Baseline baseline, String name, OpenLoopLoad.Result result) {
+        assertEquals(0, result.errors(), () -> name + " errors, first: " + result.firstError());
+        baseline.atMost("load." + name + ".p50.ms", result.percentileMillis(50));
+        baseline.atMost("load." + name + ".p99.ms", result.percentileMillis(99));
+        baseline.atMost("load." + name + ".p999.ms", result.percentileMillis(99.9));
+        baseline.atLeast("load." + name + ".throughput", result.throughput());
+    }
+}
@@ -0,0 +1,92 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.util.SearchMode;
+import com.commander.common.util.Specifications;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of {@link Specifications#contain} in each {@link SearchMode} on a million-row table, with the indexes of
+ * {@code config/db-mirgration/search_indexes.sql}. Needs {@code -Dbenchmark.jdbc.url}, see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class SearchBenchmarkTest {
+    private static final int ROWS = 1_000_000;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchModes() throws Exception {
+        try (var db = BenchmarkDatabase.open(SearchItem.class)) {
+            createFixture(db);
+            var baseline = new Baseline("search");
+            var p50 = new double[SearchMode.values().length];
+            for (var mode : SearchMode.values()) {
+                var histogram = BenchmarkDatabase.measure(3, 20, () -> db.inTransaction(em -> {
+                    var attribute = (SingularAttribute<SearchItem, String>) em.getMetamodel().entity(SearchItem.class)
+                            .getSingularAttribute("description", String.class);
+                    var spec = Specifications.contain(attribute, "w123", mode);
+                    var builder = em.getCriteriaBuilder();
+                    var query = builder.createQuery(SearchItem.class);
+                    var root = query.from(SearchItem.class);
+                    query.where(spec.toPredicate(root, query, builder));
+                    var rows = em.createQuery(query).setMaxResults(20).getResultList();
+                    var count = builder.createQuery(Long.class);
+                    var countRoot = count.from(SearchItem.class);
+                    count.select(builder.count(countRoot)).where(spec.toPredicate(countRoot, count, builder));
+                    em.createQuery(count).getSingleResult();
+                    return rows;
+                }));
+                p50[mode.ordinal()] = BenchmarkDatabase.millis(histogram, 50);
+                baseline.atMost("search." + mode + ".p50.ms", p50[mode.ordinal()]);
+                baseline.atMost("search." + mode + ".p99.ms", BenchmarkDatabase.millis(histogram, 99));
+            }
+            baseline.verify();
+            assertTrue(p50[SearchMode.TRIGRAM.ordinal()] < p50[SearchMode.CONTAINS.ordinal()], "trigram search is not faster than contains");
+            assertTrue(p50[SearchMode.FULL_TEXT.ordinal()] < p50[SearchMode.CONTAINS.ordinal()], "full-text search is not faster than contains");
+        }
+    }
+
+    /**
+     * Million-row table with search indexes, loaded once and kept between runs
+     */
+    static void createFixture(BenchmarkDatabase db) throws Exception {
+        if (db.count("benchmark_search_item") != ROWS) {
+            db.execute("create extension if not exists pg_trgm",
+                    "drop table if exists benchmark_search_item",
+                    "create table benchmark_search_item (id bigint primary key, name text not null, description text not null)",
+                    // 'w<n>' words are in 1 row of 1000, names are unique
+                    "insert into benchmark_search_item select i, 'item-' || md5(i::text), 'w' || (i % 1000) || ' x' || (i % 7919) || ' lorem ipsum dolor sit amet'"
+                            + " from generate_series(1, " + ROWS + ") i",
+                    "create index benchmark_search_item_description_trgm_idx on benchmark_search_item using gin (description gin_trgm_ops)",
+                    "create index benchmark_search_item_description_fts_idx on benchmark_search_item using gin (to_tsvector('simple', description))",
+                    "analyze benchmark_search_item");
+        }
+    }
+
+    @Entity
+    @Table(name = "benchmark_search_item")
+    public static class SearchItem {
+        @Id
+        private Long id;
+        private String name;
+        private String description;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
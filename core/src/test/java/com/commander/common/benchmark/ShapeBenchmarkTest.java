@@ -0,0 +1,80 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.ShapedQueryCache;
+import com.commander.common.util.ShapedSpecification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of a primary key lookup filtered by a {@link ShapedSpecification}, built as a criteria query on every call
+ * and run through {@link ShapedQueryCache}, on the table of {@link SearchBenchmarkTest}. The query is cheap for the
+ * database, so the difference is the cost of building and translating the query. Needs {@code -Dbenchmark.jdbc.url},
+ * see {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class ShapeBenchmarkTest {
+    private static final int RUNS = 2000;
+
+    @Test
+    void shapedQueries() throws Exception {
+        try (var db = BenchmarkDatabase.open(SearchBenchmarkTest.SearchItem.class)) {
+            SearchBenchmarkTest.createFixture(db);
+            var registry = new SimpleMeterRegistry();
+            var next = new AtomicLong();
+            var baseline = new Baseline("shape");
+
+            var criteria = BenchmarkDatabase.measure(RUNS / 10, RUNS, () -> db.inTransaction(em -> {
+                var spec = specification(em, next.incrementAndGet());
+                var builder = em.getCriteriaBuilder();
+                var query = builder.createQuery(SearchBenchmarkTest.SearchItem.class);
+                var root = query.from(SearchBenchmarkTest.SearchItem.class);
+                query.where(spec.toPredicate(root, query, builder)).orderBy(builder.asc(root.get("id")));
+                assertEquals(5, em.createQuery(query).setMaxResults(20).getResultList().size());
+            }));
+            baseline.atMost("shape.criteria.p50.ms", BenchmarkDatabase.millis(criteria, 50));
+
+            var cache = new ShapedQueryCache(db.sharedEntityManager(), 100, registry);
+            var cached = BenchmarkDatabase.measure(RUNS / 10, RUNS, () -> db.inTransaction(em -> {
+                var spec = specification(em, next.incrementAndGet());
+                assertEquals(5, cache.query(SearchBenchmarkTest.SearchItem.class, spec, Sort.by("id")).setMaxResults(20).getResultList().size());
+            }));
+            baseline.atMost("shape.cached.p50.ms", BenchmarkDatabase.millis(cached, 50));
+
+            db.inTransaction(em -> {
+                var page = cache.find(SearchBenchmarkTest.SearchItem.class, specification(em, next.incrementAndGet()), PageRequest.of(0, 2, Sort.by("id")));
+                assertEquals(5, page.getTotalElements());
+            });
+            // the select rendered once for all runs, the count of the page once
+            assertEquals(2, registry.get("cache.gets").tag("cache", "jpa.query.shapes").tag("result", "miss").functionCounter().count());
+            baseline.verify();
+            assertTrue(BenchmarkDatabase.millis(cached, 50) <= BenchmarkDatabase.millis(criteria, 50), "cached query is slower than criteria");
+        }
+    }
+
+    /**
+     * Five ids from the range after {@code n}, all of the same shape
+     */
+    @SuppressWarnings("unchecked")
+    private static ShapedSpecification<SearchBenchmarkTest.SearchItem> specification(EntityManager em, long n) {
+        var type = em.getMetamodel().entity(SearchBenchmarkTest.SearchItem.class);
+        var id = (SingularAttribute<SearchBenchmarkTest.SearchItem, Long>) type.getSingularAttribute("id", Long.class);
+        var name = (SingularAttribute<SearchBenchmarkTest.SearchItem, String>) type.getSingularAttribute("name", String.class);
+        var from = n * 10 % 900_000 + 1;
+        return ShapedSpecification.and(
+                ShapedSpecification.greaterThanOrEqualTo(id, from),
+                ShapedSpecification.lessThan(id, from + 10),
+                ShapedSpecification.in(id, List.of(from, from + 2, from + 4, from + 6, from + 8, from + 20)),
+                ShapedSpecification.notEquals(name, "missing"),
+                ShapedSpecification.isNotNull(name));
+    }
+}
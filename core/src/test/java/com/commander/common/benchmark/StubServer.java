@@ -0,0 +1,103 @@
+package com.commander.common.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local HTTP server standing in for a downstream service in benchmarks.
+ * <p>
+ * Every path answers after the latency of the {@link Profile}, fails with 500 at its error rate and otherwise
+ * returns {@code {"payload":"xxx..."}} padded to its response size. Request bodies are read and discarded.
+ * Each exchange runs on its own virtual thread so simulated latency does not limit throughput.
+ */
+public class StubServer implements AutoCloseable {
+    static {
+        // without TCP_NODELAY small responses stall ~40 ms on delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Profile profile;
+    private volatile byte[] body;
+
+    public StubServer(Profile profile) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        setProfile(profile);
+        server.start();
+    }
+
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+        this.body = body(profile.responseSize());
+    }
+
+    public URI uri(String path) {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            var p = profile;
+            var latency = p.latency().toNanos();
+            if (p.jitter().toNanos() > 0) {
+                latency += ThreadLocalRandom.current().nextLong(p.jitter().toNanos());
+            }
+            if (latency > 0) {
+                Thread.sleep(Duration.ofNanos(latency));
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (p.errorRate() > 0 && ThreadLocalRandom.current().nextDouble() < p.errorRate()) {
+                var error = "{\"error\":\"stub\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(500, error.length);
+                exchange.getResponseBody().write(error);
+                return;
+            }
+            var b = body;
+            exchange.sendResponseHeaders(200, b.length);
+            exchange.getResponseBody().write(b);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] body(int size) {
+        var prefix = "{\"payload\":\"";
+        var suffix = "\"}";
+        var padding = new char[Math.max(0, size - prefix.length() - suffix.length())];
+        Arrays.fill(padding, 'x');
+        return (prefix + new String(padding) + suffix).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param latency      fixed delay before answering
+     * @param jitter       extra random delay between 0 and this value
+     * @param errorRate    fraction of requests answered with 500
+     * @param responseSize size of successful response bodies in bytes
+     */
+    public record Profile(Duration latency, Duration jitter, double errorRate, int responseSize) {
+        public static Profile fast(int responseSize) {
+            return new Profile(Duration.ZERO, Duration.ZERO, 0, responseSize);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.commander.common.benchmark;
+
+import com.commander.common.jpa.BulkColumn;
+import com.commander.common.jpa.BulkWriter;
+import com.commander.common.jpa.WriteBehindBuffer;
+import com.commander.common.util.Constant;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of writing an audit row in its own transaction against adding it to a {@link WriteBehindBuffer}, and rows
+ * per second written by the buffer for 8 concurrent producers. Needs {@code -Dbenchmark.jdbc.url}, see
+ * {@link BenchmarkDatabase}.
+ */
+@Tag("benchmark")
+class WriteBehindBenchmarkTest {
+    private static final String TABLE = "benchmark_audit";
+    private static final int PRODUCERS = 8;
+    private static final int ROWS_PER_PRODUCER = 25_000;
+    private static final List<BulkColumn<Audit>> COLUMNS = List.of(
+            BulkColumn.of("actor", BulkColumn.Type.TEXT, Audit::actor),
+            BulkColumn.of("action", BulkColumn.Type.TEXT, Audit::action),
+            BulkColumn.of("entity_id", BulkColumn.Type.BIGINT, Audit::entityId),
+            BulkColumn.of("created_at", BulkColumn.Type.TIMESTAMPTZ, Audit::createdAt));
+
+    @Test
+    void writeBehind() throws Exception {
+        try (var db = BenchmarkDatabase.open(); var dataSource = new HikariDataSource()) {
+            dataSource.setDataSource(db.dataSource(""));
+            dataSource.setMaximumPoolSize(PRODUCERS);
+            db.execute("drop table if exists " + TABLE,
+                    "create table " + TABLE + " (id bigserial primary key, actor text not null, action text not null,"
+                            + " entity_id bigint not null, created_at timestamptz not null)");
+            var jdbc = new JdbcTemplate(dataSource);
+            var baseline = new Baseline("writebehind");
+
+            var direct = BenchmarkDatabase.measure(100, 2000, () -> jdbc.update("insert into " + TABLE
+                    + " (actor, action, entity_id, created_at) values (?, ?, ?, ?)", Constant.SYSTEM_USER, "update", 1L, Timestamp.from(Instant.now())));
+            baseline.atMost("writebehind.direct.p50.us", direct.getValueAtPercentile(50) / 1e3);
+
+            var bulkWriter = new BulkWriter(dataSource, 1000, 64 * 1024);
+            var buffer = WriteBehindBuffer.copy(bulkWriter, TABLE, COLUMNS, 16 * 1024, 1000, Duration.ofMillis(100), Duration.ofSeconds(5), null);
+            var buffered = BenchmarkDatabase.measure(1000, 20_000, () -> buffer.add(new Audit(Constant.SYSTEM_USER, "update", 1L, Instant.now())));
+            baseline.atMost("writebehind.buffered.p50.us", buffered.getValueAtPercentile(50) / 1e3);
+            buffer.flush();
+
+            var start = System.nanoTime();
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                var producers = new ArrayList<Future<?>>();
+                for (int p = 0; p < PRODUCERS; ++p) {
+                    var producer = p;
+                    producers.add(executor.submit(() -> {
+                        for (int i = 0; i < ROWS_PER_PRODUCER; ++i) {
+                            buffer.add(new Audit("user-" + producer, "create", i, Instant.now()));
+                        }
+                    }));
+                }
+                for (var producer : producers) {
+                    producer.get();
+                }
+            }
+            // rows still buffered are written by close
+            buffer.close();
+            baseline.atLeast("writebehind.rows.per.second", PRODUCERS * ROWS_PER_PRODUCER / ((System.nanoTime() - start) / 1e9));
+            assertEquals(2100 + 21_000 + PRODUCERS * ROWS_PER_PRODUCER, db.count(TABLE));
+            baseline.verify();
+            assertTrue(buffered.getValueAtPercentile(50) * 10 < direct.getValueAtPercentile(50), "add is not cheaper than a commit");
+        }
+    }
+
+    private record Audit(String actor, String action, long entityId, Instant createdAt) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.commander.common.config;
+
+import com.commander.common.jpa.ExplainStatementInspector;
+import com.commander.common.jpa.QueryCounter;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistenceAutoConfigurationTest {
+    @Test
+    void countsStatementsInFrontOfConfiguredInspector() {
+        for (var configured : new Object[]{new CommentInspector(), CommentInspector.class, CommentInspector.class.getName()}) {
+            var inspector = PersistenceAutoConfiguration.statementInspector(configured);
+            var count = QueryCounter.start(Long.MAX_VALUE, QueryCounter.Mode.LOG);
+            try {
+                assertEquals("/* app */ explain (format json) select 1", ExplainStatementInspector.explain(() -> inspector.inspect("select 1")));
+            } finally {
+                QueryCounter.stop();
+            }
+            assertEquals(1, count.getQueries());
+        }
+        assertEquals("select 1", PersistenceAutoConfiguration.statementInspector(null).inspect("select 1"));
+    }
+
+    public static class CommentInspector implements StatementInspector {
+        @Override
+        public String inspect(String sql) {
+            return "/* app */ " + sql;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.commander.common.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaDataSourceAutoConfigurationTest {
+    @Test
+    void needsOpenInViewOff() {
+        assertThrows(IllegalStateException.class, () -> ReplicaDataSourceAutoConfiguration.checkOpenInView(new MockEnvironment()));
+        assertThrows(IllegalStateException.class, () -> ReplicaDataSourceAutoConfiguration.checkOpenInView(
+                new MockEnvironment().withProperty("spring.jpa.open-in-view", "true")));
+        assertDoesNotThrow(() -> ReplicaDataSourceAutoConfiguration.checkOpenInView(
+                new MockEnvironment().withProperty("spring.jpa.open-in-view", "false")));
+    }
+}
@@ -0,0 +1,34 @@
+package com.commander.common.http;
+
+import com.commander.common.benchmark.StubServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionWarmerTest {
+    @Test
+    void readyOnceEveryTargetIsWarmOrFailed() throws Exception {
+        try (var server = new StubServer(StubServer.Profile.fast(16));
+             var httpClient = HttpClient.newHttpClient()) {
+            var reachable = server.uri("/health");
+            var unreachable = URI.create("http://127.0.0.1:1/health");
+            var warmer = new ConnectionWarmer(httpClient, List.of(reachable, unreachable), 2, Duration.ofSeconds(2));
+            var health = new ConnectionWarmupHealthIndicator(warmer);
+
+            assertEquals(Status.OUT_OF_SERVICE, health.health().getStatus());
+
+            warmer.warm().get(10, TimeUnit.SECONDS);
+
+            assertEquals(Status.UP, health.health().getStatus());
+            assertEquals("warm", warmer.getStates().get(reachable));
+            assertTrue(warmer.getStates().get(unreachable).startsWith("failed"));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.commander.common.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostRateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void pausesUnconfiguredHostUntilRetryAfter() throws InterruptedException {
+        var limiter = new HostRateLimiter(Map.of());
+        var uri = URI.create("http://throttled.example/items");
+
+        assertEquals(0, limiter.reserve(uri));
+        limiter.throttled(uri, TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(limiter.reserve(uri) > 0);
+        assertEquals(0, limiter.reserve(URI.create("http://other.example/items")));
+
+        Thread.sleep(30);
+        assertEquals(0, limiter.reserve(uri));
+        assertEquals(0, limiter.pausedHosts());
+    }
+
+    @Test
+    void boundsPausedHosts() {
+        var limiter = new HostRateLimiter(Map.of());
+        for (int i = 0; i < 3 * HostRateLimiter.MAX_PAUSED_HOSTS; ++i) {
+            limiter.throttled(URI.create("http://host-" + i + ".example/"), i % 2 == 0 ? 0 : SECOND);
+        }
+
+        assertTrue(limiter.pausedHosts() <= HostRateLimiter.MAX_PAUSED_HOSTS, "paused " + limiter.pausedHosts());
+    }
+}
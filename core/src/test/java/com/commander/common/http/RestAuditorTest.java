@@ -0,0 +1,85 @@
+package com.commander.common.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestAuditorTest {
+    private static final URI URI_PARTNER = URI.create("http://partner/login");
+
+    @Test
+    void redactsAndTruncatesBodyOffTheCallingThread() {
+        var written = new CopyOnWriteArrayList<String>();
+        var threads = new CopyOnWriteArrayList<String>();
+        var auditor = new RestAuditor(new RestAuditor.HostPolicy(RestAuditor.Level.BODY, 1), Map.of(), 40,
+                List.of("password"), 16, (event, body) -> {
+            written.add(body);
+            threads.add(Thread.currentThread().getName());
+        });
+
+        auditor.request("POST", URI_PARTNER, bytes("{\"user\":\"bob\",\"password\":\"s3cr\\\"et\",\"note\":\"xxxxxxxxxxxx\"}"));
+        auditor.close();
+
+        assertEquals(List.of("{\"user\":\"bob\",\"password\":\"***\",\"note\":\"x...(58 bytes)"), written);
+        assertEquals(List.of("rest-audit"), threads);
+    }
+
+    @Test
+    void auditsErrorsOfUnsampledCalls() {
+        var written = new CopyOnWriteArrayList<RestAuditEvent>();
+        var auditor = new RestAuditor(new RestAuditor.HostPolicy(RestAuditor.Level.URL, 0), Map.of(), 100,
+                List.of(), 16, (event, body) -> written.add(event));
+
+        var sampled = auditor.request("GET", URI_PARTNER, null);
+        auditor.response("GET", URI_PARTNER, 200, bytes("{}"), sampled);
+        auditor.response("GET", URI_PARTNER, 500, bytes("{}"), sampled);
+        auditor.close();
+
+        assertFalse(sampled);
+        assertEquals(1, written.size());
+        assertEquals(500, written.get(0).status());
+        assertNull(written.get(0).body());
+    }
+
+    @Test
+    void wakesIdleAuditThreadOnOffer() throws InterruptedException {
+        var written = new LinkedBlockingQueue<RestAuditEvent>();
+        try (var auditor = new RestAuditor(new RestAuditor.HostPolicy(RestAuditor.Level.URL, 1), Map.of(), 100,
+                List.of(), 16, (event, body) -> written.add(event))) {
+            // let the audit thread park on the empty buffer
+            Thread.sleep(100);
+            var start = System.nanoTime();
+            auditor.request("GET", URI_PARTNER, null);
+
+            assertNotNull(written.poll(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500), "audit thread not woken up");
+        }
+    }
+
+    @Test
+    void usesHostPolicy() {
+        var written = new CopyOnWriteArrayList<RestAuditEvent>();
+        var auditor = new RestAuditor(new RestAuditor.HostPolicy(RestAuditor.Level.URL, 1),
+                Map.of("partner", new RestAuditor.HostPolicy(RestAuditor.Level.NONE, 1)), 100,
+                List.of(), 16, (event, body) -> written.add(event));
+
+        auditor.request("GET", URI_PARTNER, null);
+        auditor.request("GET", URI.create("http://other/"), null);
+        auditor.close();
+
+        assertEquals(1, written.size());
+        assertEquals("other", written.get(0).uri().getHost());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
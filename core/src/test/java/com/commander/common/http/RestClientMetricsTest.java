@@ -0,0 +1,70 @@
+package com.commander.common.http;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestClientMetricsTest {
+
+    @Test
+    void recordsTimerPerHostTemplateAndStatusClass() {
+        var registry = new SimpleMeterRegistry();
+        var metrics = new RestClientMetrics(registry);
+
+        var first = URI.create("http://partner/users/42/orders");
+        metrics.stop(first, metrics.start(first), 200, 10, 20);
+        var second = URI.create("http://partner/users/43/orders");
+        metrics.stop(second, metrics.start(second), 201, 10, 20);
+
+        var timer = registry.get("rest.client.requests")
+                .tags("host", "partner", "uri", "/users/{id}/orders", "status", "2xx")
+                .timer();
+        assertEquals(2, timer.count());
+        assertEquals(0, registry.get("rest.client.in.flight").gauge().value());
+        assertEquals(40, registry.get("rest.client.response.size").summary().totalAmount());
+    }
+
+    @Test
+    void countsTimeouts() {
+        var registry = new SimpleMeterRegistry();
+        var metrics = new RestClientMetrics(registry);
+        var uri = URI.create("http://partner/slow");
+
+        metrics.failed(uri, metrics.start(uri), 0, new TimeoutException());
+
+        assertEquals(1, registry.get("rest.client.timeouts").counter().count());
+        assertEquals(1, registry.get("rest.client.requests").tags("status", "TIMEOUT").timer().count());
+    }
+
+    @Test
+    void limitsUriTags() {
+        var registry = new SimpleMeterRegistry();
+        var metrics = new RestClientMetrics(registry, 1);
+
+        var first = URI.create("http://partner/a");
+        metrics.stop(first, metrics.start(first), 200, 0, 0);
+        var second = URI.create("http://partner/b");
+        metrics.stop(second, metrics.start(second), 200, 0, 0);
+
+        assertEquals(1, registry.get("rest.client.requests").tags("uri", "OTHER").timer().count());
+    }
+
+    @Test
+    void limitsHostTags() {
+        var registry = new SimpleMeterRegistry();
+        var metrics = new RestClientMetrics(registry, 100, 2);
+
+        for (var host : new String[]{"a", "b", "c", "d", "a"}) {
+            var uri = URI.create("http://" + host + "/hook");
+            metrics.stop(uri, metrics.start(uri), 200, 0, 0);
+        }
+
+        assertEquals(2, registry.get("rest.client.requests").tags("host", "a").timer().count());
+        assertEquals(2, registry.get("rest.client.requests").tags("host", "OTHER").timer().count());
+        assertEquals(3, registry.get("rest.client.in.flight").gauges().size());
+    }
+}
@@ -0,0 +1,62 @@
+package com.commander.common.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void spacesPermitsAfterBurst() {
+        var bucket = new TokenBucket(10, 2);
+        var now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(SECOND / 10, bucket.reserve(now));
+        assertEquals(2 * SECOND / 10, bucket.reserve(now));
+    }
+
+    @Test
+    void refillsBurstAfterIdlePeriod() {
+        var bucket = new TokenBucket(10, 2);
+        var now = System.nanoTime();
+        for (int i = 0; i < 4; ++i) {
+            bucket.reserve(now);
+        }
+
+        var later = now + 10 * SECOND;
+        assertEquals(0, bucket.reserve(later));
+        assertEquals(0, bucket.reserve(later));
+        assertEquals(SECOND / 10, bucket.reserve(later));
+    }
+
+    @Test
+    void pausesAndSlowsDownWhenThrottled() {
+        var bucket = new TokenBucket(10, 1);
+        var now = System.nanoTime();
+
+        bucket.throttled(now, SECOND);
+
+        assertEquals(SECOND, bucket.reserve(now));
+        assertEquals(5, bucket.getRate());
+        for (int i = 0; i < 100; ++i) {
+            bucket.succeeded();
+        }
+        assertEquals(10, bucket.getRate());
+    }
+
+    @Test
+    void unlimitedBucketOnlyHonoursPauses() {
+        var bucket = new TokenBucket(0, 1);
+        var now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        bucket.throttled(now, SECOND);
+        assertEquals(SECOND, bucket.reserve(now));
+    }
+}
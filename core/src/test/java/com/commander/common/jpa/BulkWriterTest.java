@@ -0,0 +1,59 @@
+package com.commander.common.jpa;
+
+import com.commander.common.benchmark.BenchmarkDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkWriterTest {
+    @Test
+    void encodesNumericAsBase10000Digits() throws IOException {
+        // ndigits, weight, sign, dscale, digits
+        assertArrayEquals(new short[]{3, 1, 0, 1, 1, 2345, 6000}, numeric("12345.6"));
+        assertArrayEquals(new short[]{1, -1, 0x4000, 4, 12}, numeric("-0.0012"));
+        assertArrayEquals(new short[]{1, 0, 0, 0, 1000}, numeric("1E+3"));
+        assertArrayEquals(new short[]{0, 0, 0, 2}, numeric("0.00"));
+    }
+
+    @Test
+    void upsertsLastRowOfAKeyInABatch() throws Exception {
+        try (var db = BenchmarkDatabase.open()) {
+            db.execute("drop table if exists bulk_writer_item",
+                    "create table bulk_writer_item (id bigint primary key, name text)",
+                    "insert into bulk_writer_item values (1, 'old')");
+            var writer = new BulkWriter(db.dataSource("reWriteBatchedInserts=true"), 4, 1024);
+            List<BulkColumn<Object[]>> columns = List.of(
+                    BulkColumn.of("id", BulkColumn.Type.BIGINT, row -> row[0]),
+                    BulkColumn.of("name", BulkColumn.Type.TEXT, row -> row[1]));
+
+            // sent as one insert of 1b, 2c, 3d and 4e, the driver rewriting batches of 4 rows, then one of 2f
+            var sent = writer.upsert("bulk_writer_item", columns, List.of("id"), List.of(
+                    new Object[]{1L, "a"}, new Object[]{1L, "b"}, new Object[]{2L, "c"}, new Object[]{3L, "d"},
+                    new Object[]{4L, "e"}, new Object[]{2L, "f"}));
+
+            assertEquals(5, sent);
+            try (var connection = db.connection();
+                 var result = connection.createStatement().executeQuery("select string_agg(id || name, ',' order by id) from bulk_writer_item")) {
+                result.next();
+                assertEquals("1b,2f,3d,4e", result.getString(1));
+            }
+        }
+    }
+
+    private static short[] numeric(String value) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        BulkWriter.writeNumeric(new DataOutputStream(bytes), new BigDecimal(value));
+        var buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(buffer.remaining() - 4, buffer.getInt());
+        var shorts = new short[buffer.remaining() / 2];
+        buffer.asShortBuffer().get(shorts);
+        return shorts;
+    }
+}
@@ -0,0 +1,85 @@
+package com.commander.common.jpa;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionHoldTrackerTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ConnectionHoldTracker tracker = new ConnectionHoldTracker(registry, Duration.ofMillis(100));
+    private final DataSource dataSource = tracker.wrap(JdbcStubs.dataSource((method, args) -> null));
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void timesConnectionsByEndpoint() throws SQLException {
+        var request = new MockHttpServletRequest("GET", "/items/42");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/items/{id}");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        var connection = dataSource.getConnection();
+        assertTrue(ConnectionHoldTracker.isHoldingConnection());
+        connection.close();
+        connection.close();
+        assertFalse(ConnectionHoldTracker.isHoldingConnection());
+        RequestContextHolder.resetRequestAttributes();
+        dataSource.getConnection().close();
+
+        assertEquals(1, registry.get("datasource.connection.hold").tag("endpoint", "GET /items/{id}").timer().count());
+        assertEquals(1, registry.get("datasource.connection.hold").tag("endpoint", ConnectionHoldTracker.NONE).timer().count());
+    }
+
+    @Test
+    void timesCallsMadeWhileHoldingConnection() throws SQLException {
+        var target = URI.create("https://partner.example.com/orders");
+        assertNull(tracker.ioStarted(target));
+
+        try (var ignored = dataSource.getConnection()) {
+            tracker.ioStarted(target).done();
+        }
+
+        var timer = registry.get("datasource.connection.held.io").tag("host", "partner.example.com").timer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    void releasesConnectionClosedByAnotherThread() throws Exception {
+        var connection = dataSource.getConnection();
+        var closer = Thread.ofVirtual().start(() -> {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        closer.join();
+
+        assertFalse(ConnectionHoldTracker.isHoldingConnection());
+    }
+
+    @Test
+    void tagsConcurrentCallsToSeveralHostsAsMulti() throws SQLException {
+        try (var ignored = dataSource.getConnection()) {
+            tracker.ioStarted(List.of(URI.create("https://a.example.com/x"), URI.create("https://a.example.com/y"))).done();
+            tracker.ioStarted(List.of(URI.create("https://a.example.com/x"), URI.create("https://b.example.com/y"))).done();
+        }
+
+        assertEquals(1, registry.get("datasource.connection.held.io").tag("host", "a.example.com").timer().count());
+        assertEquals(1, registry.get("datasource.connection.held.io").tag("host", ConnectionHoldTracker.MULTI).timer().count());
+    }
+}
@@ -0,0 +1,46 @@
+package com.commander.common.jpa;
+
+import com.commander.common.benchmark.BenchmarkDatabase;
+import jakarta.persistence.EntityManager;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExplainStatementInspectorTest {
+    @Test
+    void explainsQueriesOnly() {
+        var inspector = new ExplainStatementInspector();
+
+        assertEquals("select 1", inspector.inspect("select 1"));
+        ExplainStatementInspector.explain(() -> {
+            assertEquals("explain (format json) select 1", inspector.inspect("select 1"));
+            assertEquals("explain (format json) /* count */ WITH t as (select 1) select * from t",
+                    inspector.inspect("/* count */ WITH t as (select 1) select * from t"));
+            assertEquals("update item set name=? where id=?", inspector.inspect("update item set name=? where id=?"));
+            assertEquals("/* insert Item */ insert into item values (?)", inspector.inspect("/* insert Item */ insert into item values (?)"));
+            return null;
+        });
+    }
+
+    @Test
+    void runsFlushOfExplainedQuery() throws Exception {
+        try (var db = BenchmarkDatabase.open(Map.of(AvailableSettings.STATEMENT_INSPECTOR, ExplainStatementInspector.class.getName()),
+                PageFinderTest.Item.class)) {
+            db.execute("drop table if exists page_finder_item", "create table page_finder_item (id bigint primary key, name text)",
+                    "insert into page_finder_item values (1, 'a')");
+
+            var plan = db.inTransaction((EntityManager em) -> {
+                em.find(PageFinderTest.Item.class, 1L).setName("b");
+                // the automatic flush of the dirty item runs before the explained query
+                return ExplainStatementInspector.explain(() -> em.createQuery("select cast(i.id as String) from PageFinderItem i", String.class)
+                        .getResultList());
+            });
+
+            assertTrue(plan.get(0).contains("\"Plan Rows\""), plan.get(0));
+            assertEquals("b", db.inTransaction((EntityManager em) -> em.find(PageFinderTest.Item.class, 1L).getName()));
+        }
+    }
+}
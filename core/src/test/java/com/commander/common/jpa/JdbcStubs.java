@@ -0,0 +1,65 @@
+package com.commander.common.jpa;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Map;
+
+/**
+ * JDBC objects answering calls by method name, for tests of data source wrappers without a database
+ */
+final class JdbcStubs {
+    private static final Map<Class<?>, Object> PRIMITIVE_DEFAULTS = Map.of(
+            boolean.class, false,
+            int.class, 0,
+            long.class, 0L,
+            double.class, 0.0);
+
+    private JdbcStubs() {
+    }
+
+    /**
+     * Answer of a stub to a call of {@code method}, null for the default of its return type
+     */
+    @FunctionalInterface
+    interface Handler {
+        Object handle(String method, Object[] args) throws Exception;
+    }
+
+    /**
+     * Stub of {@code type} whose calls are answered by {@code handler}, with identity {@code equals} and
+     * {@code hashCode}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    if (method.getParameterCount() == 1) {
+                        return proxy == args[0];
+                    }
+                    break;
+                case "hashCode":
+                    if (method.getParameterCount() == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "toString":
+                    if (method.getParameterCount() == 0) {
+                        return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                    }
+                    break;
+                default:
+            }
+            var result = handler.handle(method.getName(), args);
+            return result == null ? PRIMITIVE_DEFAULTS.get(method.getReturnType()) : result;
+        });
+    }
+
+    /**
+     * Data source handing out a new stub connection answered by {@code connection} on each {@code getConnection}
+     */
+    static DataSource dataSource(Handler connection) {
+        return proxy(DataSource.class, (method, args) -> "getConnection".equals(method) ? proxy(Connection.class, connection) : null);
+    }
+}
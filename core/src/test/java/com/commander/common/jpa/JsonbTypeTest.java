@@ -0,0 +1,31 @@
+package com.commander.common.jpa;
+
+import com.commander.common.util.JsonArray;
+import com.commander.common.util.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonbTypeTest {
+    @Test
+    void arrayRoundTripsThroughCache() {
+        var type = new JsonArrayType();
+        var array = JsonArray.of("a", 1, new JsonObject().put("b", JsonArray.of(true)));
+
+        assertEquals(array, type.assemble(type.disassemble(array), null));
+    }
+
+    @Test
+    void deepCopyDetachesNestedValues() {
+        var type = new JsonObjectType();
+        var nested = JsonArray.of("a");
+        var object = new JsonObject().put("tags", nested).put("owner", new JsonObject().put("id", 1));
+
+        var copy = type.deepCopy(object);
+        nested.add("b");
+
+        assertNotSame(object, copy);
+        assertEquals(JsonArray.of("a"), copy.getJsonArray("tags"));
+        assertTrue(type.equals(new JsonObject().put("tags", JsonArray.of("a")).put("owner", new JsonObject().put("id", 1)), copy));
+    }
+}
@@ -0,0 +1,145 @@
+package com.commander.common.jpa;
+
+import com.commander.common.benchmark.BenchmarkDatabase;
+import com.commander.common.model.response.Response;
+import com.commander.common.util.Specifications;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageFinderTest {
+    @Test
+    void normalizesCriteriaAliases() {
+        var first = PageFinder.normalize("select count() from Item alias_1346560976 where alias_1346560976.name = abc and alias_-42.qty > 5");
+        var second = PageFinder.normalize("select count() from Item alias_77 where alias_77.name = abc and alias_9.qty > 5");
+
+        assertEquals("select count() from Item a0 where a0.name = abc and a1.qty > 5", first);
+        assertEquals(first, second);
+    }
+
+    @Test
+    void flagsApproximateTotalThroughMapping() {
+        var page = new ApproximatePage<>(List.of(1, 2), PageRequest.of(3, 2), 1_000_000, true).map(String::valueOf);
+
+        var response = Response.ofSucceeded(page);
+
+        assertEquals(List.of("1", "2"), response.getData());
+        assertEquals(1_000_000, response.getMeta().getTotal());
+        assertTrue(response.getMeta().getApproximate());
+        assertNull(Response.ofSucceeded(new ApproximatePage<>(List.of(1), PageRequest.of(0, 2), 1, false)).getMeta().getApproximate());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void keysCountsByShapeAndValues() {
+        // criteria queries are built and rendered without a database
+        try (var sessionFactory = new Configuration()
+                .setProperty(AvailableSettings.DIALECT, "org.hibernate.dialect.PostgreSQLDialect")
+                .setProperty(AvailableSettings.ALLOW_METADATA_ON_BOOT, "false")
+                .addAnnotatedClass(Item.class)
+                .buildSessionFactory()) {
+            var id = (SingularAttribute<Item, Long>) sessionFactory.getMetamodel().entity(Item.class).getSingularAttribute("id", Long.class);
+
+            var byName = key(sessionFactory, Specifications.equals("name", "a, b"));
+            assertEquals(byName, key(sessionFactory, Specifications.equals("name", "a, b")));
+            assertEquals(byName.hashCode(), key(sessionFactory, Specifications.equals("name", "a, b")).hashCode());
+            assertTrue(byName.hql().contains(":v0"), byName.hql());
+            assertNotEquals(byName, key(sessionFactory, Specifications.equals("name", "a")));
+            // rendered inline, both values were "a, b"
+            assertNotEquals(byName, key(sessionFactory, Specification.<Item>where(Specifications.equals("name", "a"))
+                    .and(Specifications.equals("name", "b"))));
+
+            var inArray = key(sessionFactory, Specifications.inArray(id, List.of(1L, 2L, 3L)));
+            assertEquals(inArray, key(sessionFactory, Specifications.inArray(id, List.of(1L, 2L, 3L))));
+            assertNotEquals(inArray, key(sessionFactory, Specifications.inArray(id, List.of(1L, 2L, 4L))));
+        }
+    }
+
+    @Test
+    void servesCachedCountOfSameFilterOnly() throws Exception {
+        try (var db = BenchmarkDatabase.open(Item.class)) {
+            createItems(db, "a", "a", "b");
+            var finder = new PageFinder(db.sharedEntityManager(), CountStrategy.CACHED, Duration.ofMinutes(1), 100, 0);
+
+            var first = db.inTransaction((EntityManager em) -> finder.find(Item.class, Specifications.equals("name", "a"), PageRequest.of(0, 1)));
+            assertEquals(2, first.getTotalElements());
+            assertFalse(first.isApproximate());
+
+            db.execute("insert into page_finder_item values (4, 'a')");
+            var cached = db.inTransaction((EntityManager em) -> finder.find(Item.class, Specifications.equals("name", "a"), PageRequest.of(0, 1)));
+            assertEquals(2, cached.getTotalElements());
+            assertTrue(cached.isApproximate());
+
+            var other = db.inTransaction((EntityManager em) -> finder.find(Item.class, Specifications.equals("name", "b"), PageRequest.of(0, 1)));
+            assertEquals(1, other.getTotalElements());
+            assertFalse(other.isApproximate());
+        }
+    }
+
+    @Test
+    void estimatesCountWithoutFlushingIntoExplain() throws Exception {
+        try (var db = BenchmarkDatabase.open(Map.of(AvailableSettings.STATEMENT_INSPECTOR, ExplainStatementInspector.class.getName()), Item.class)) {
+            createItems(db, "a", "a", "b");
+            var finder = new PageFinder(db.sharedEntityManager(), CountStrategy.ESTIMATED, Duration.ofMinutes(1), 100, 0);
+
+            var page = db.inTransaction((EntityManager em) -> {
+                // dirty entity, flushed before the next query unless the query does not flush
+                em.find(Item.class, 3L).setName("c");
+                return finder.find(Item.class, null, PageRequest.of(0, 1));
+            });
+
+            assertTrue(page.isApproximate());
+            assertEquals("c", db.inTransaction((EntityManager em) -> em.find(Item.class, 3L).getName()));
+        }
+    }
+
+    private static PageFinder.CountKey key(SessionFactory sessionFactory, Specification<Item> specification) {
+        var builder = sessionFactory.getCriteriaBuilder();
+        var query = builder.createQuery(Long.class);
+        var root = query.from(Item.class);
+        query.where(specification.toPredicate(root, query, builder));
+        query.select(builder.count(root));
+        return PageFinder.countKey(query);
+    }
+
+    private static void createItems(BenchmarkDatabase db, String... names) throws Exception {
+        db.execute("drop table if exists page_finder_item", "create table page_finder_item (id bigint primary key, name text)");
+        for (int i = 0; i < names.length; ++i) {
+            db.execute("insert into page_finder_item values (" + (i + 1) + ", '" + names[i] + "')");
+        }
+    }
+
+    @Entity(name = "PageFinderItem")
+    @Table(name = "page_finder_item")
+    public static class Item {
+        @Id
+        private Long id;
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
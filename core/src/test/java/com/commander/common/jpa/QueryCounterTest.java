@@ -0,0 +1,39 @@
+package com.commander.common.jpa;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCounterTest {
+    private final QueryCounter inspector = new QueryCounter();
+
+    @Test
+    void countsNestedAndReportsMostRepeated() {
+        var outer = QueryCounter.start(2, QueryCounter.Mode.LOG);
+        inspector.inspect("select * from item");
+        QueryCounts.assertQueryCount(3, () -> {
+            for (int i = 0; i < 3; ++i) {
+                inspector.inspect("select * from line where order_id = ?");
+            }
+        });
+        assertSame(outer, QueryCounter.stop());
+
+        assertEquals(4, outer.getQueries());
+        assertTrue(outer.isExceeded());
+        assertEquals("3 x select * from line where order_id = ?", outer.mostRepeated());
+        var error = assertThrows(AssertionError.class, () -> QueryCounts.assertQueryCount(0, () -> inspector.inspect("select 1")));
+        assertEquals("Expected 0 queries but got 1, most repeated: 1 x select 1", error.getMessage());
+    }
+
+    @Test
+    void failsStatementOverThreshold() {
+        QueryCounter.start(1, QueryCounter.Mode.FAIL);
+        try {
+            assertEquals("select 1", inspector.inspect("select 1"));
+            assertThrows(IllegalStateException.class, () -> inspector.inspect("select 2"));
+        } finally {
+            QueryCounter.stop();
+        }
+        assertEquals("select 3", inspector.inspect("select 3"));
+    }
+}
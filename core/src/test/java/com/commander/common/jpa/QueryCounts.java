@@ -0,0 +1,37 @@
+package com.commander.common.jpa;
+
+import java.util.function.Supplier;
+
+/**
+ * Assertions on the statements counted by {@link QueryCounter}, which must be the Hibernate statement inspector
+ */
+public final class QueryCounts {
+    private QueryCounts() {
+    }
+
+    /**
+     * Run {@code work} and fail with an {@code AssertionError} unless it prepared exactly {@code expected} statements
+     */
+    public static void assertQueryCount(long expected, Runnable work) {
+        assertQueryCount(expected, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public static <T> T assertQueryCount(long expected, Supplier<T> work) {
+        QueryCounter.start(Long.MAX_VALUE, QueryCounter.Mode.LOG);
+        QueryCounter.Count count;
+        T result;
+        try {
+            result = work.get();
+        } finally {
+            count = QueryCounter.stop();
+        }
+        if (count.getQueries() != expected) {
+            throw new AssertionError("Expected " + expected + " queries but got " + count.getQueries() + ", most repeated: "
+                    + count.mostRepeated());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+package com.commander.common.jpa;
+
+import com.commander.common.benchmark.BenchmarkDatabase;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.commander.common.jpa.JdbcStubs.proxy;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaDataSourceTest {
+    private final StubDataSource primary = new StubDataSource("primary");
+    private final StubDataSource replica = new StubDataSource("replica");
+    private final List<String> used = new ArrayList<>();
+    private final ReplicaDataSource replicaDataSource = new ReplicaDataSource(primary.dataSource(), Map.of("replica-0", replica.dataSource()),
+            Duration.ofSeconds(5), Duration.ZERO, null);
+    private final DataSource dataSource = routing();
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void routesReadOnlyTransactionsToReplicas() {
+        run(true);
+        run(false);
+
+        assertEquals(List.of("replica", "primary"), used);
+    }
+
+    @Test
+    void readsFromPrimaryAfterWriteOfSameRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        run(true);
+        run(false);
+        run(true);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        run(true);
+
+        assertEquals(List.of("replica", "primary", "primary", "replica"), used);
+    }
+
+    @Test
+    void fallsBackToPrimaryWhenReplicaLagsOrFails() {
+        replica.lagSeconds = 30;
+        replicaDataSource.checkLag();
+        run(true);
+        assertEquals(Map.of("replica-0", false), replicaDataSource.getStates());
+
+        replica.lagSeconds = 0;
+        replicaDataSource.checkLag();
+        run(true);
+        assertEquals(Map.of("replica-0", true), replicaDataSource.getStates());
+
+        replica.failing = true;
+        run(true);
+        assertEquals(Map.of("replica-0", false), replicaDataSource.getStates());
+        assertEquals(List.of("primary", "replica", "primary"), used);
+    }
+
+    @Test
+    void writesOnPrimaryAfterReadOnlyTransactionOfAnotherEntityManager() {
+        try (var db = BenchmarkDatabase.open(); var entityManagerFactory = entityManagerFactory(db)) {
+            var transactionManager = jpaTransactionManager(entityManagerFactory);
+
+            assertEquals("replica", applicationName(transactionManager, entityManagerFactory, true));
+            assertEquals("primary", applicationName(transactionManager, entityManagerFactory, false));
+        }
+    }
+
+    @Test
+    void keepsReplicaConnectionOverTransactionsOfOneEntityManager() {
+        try (var db = BenchmarkDatabase.open(); var entityManagerFactory = entityManagerFactory(db)) {
+            var transactionManager = jpaTransactionManager(entityManagerFactory);
+            // what open-in-view does for a request, the reason why replicas need it off
+            TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManagerFactory.createEntityManager()));
+            try {
+                assertEquals("replica", applicationName(transactionManager, entityManagerFactory, true));
+                assertEquals("replica", applicationName(transactionManager, entityManagerFactory, false));
+            } finally {
+                EntityManagerFactoryUtils.closeEntityManager(
+                        ((EntityManagerHolder) TransactionSynchronizationManager.unbindResource(entityManagerFactory)).getEntityManager());
+            }
+        }
+    }
+
+    /**
+     * Session factory on the primary and a replica of the benchmark database, told apart by their application name,
+     * holding connections as Spring Boot sets it
+     */
+    private static SessionFactory entityManagerFactory(BenchmarkDatabase db) {
+        var replicas = new ReplicaDataSource(db.dataSource("ApplicationName=primary"), Map.of("replica-0", db.dataSource("ApplicationName=replica")),
+                Duration.ofSeconds(5), Duration.ZERO, null);
+        var dataSource = new LazyConnectionDataSourceProxy(db.dataSource("ApplicationName=primary"));
+        dataSource.setReadOnlyDataSource(replicas);
+        var configuration = new Configuration().setProperty(AvailableSettings.DIALECT, "org.hibernate.dialect.PostgreSQLDialect")
+                .setProperty(AvailableSettings.CONNECTION_HANDLING, PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_HOLD.name());
+        configuration.getProperties().put(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, dataSource);
+        return configuration.buildSessionFactory();
+    }
+
+    private static JpaTransactionManager jpaTransactionManager(SessionFactory entityManagerFactory) {
+        var transactionManager = new JpaTransactionManager(entityManagerFactory);
+        transactionManager.setJpaDialect(new HibernateJpaDialect());
+        return transactionManager;
+    }
+
+    /**
+     * Application name of the connection running a statement in a transaction
+     */
+    private static String applicationName(JpaTransactionManager transactionManager, SessionFactory entityManagerFactory, boolean readOnly) {
+        var template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(status -> (String) EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory)
+                .createNativeQuery("select current_setting('application_name')").getSingleResult());
+    }
+
+    private DataSource routing() {
+        var proxy = new LazyConnectionDataSourceProxy(primary.dataSource());
+        proxy.setReadOnlyDataSource(replicaDataSource);
+        return proxy;
+    }
+
+    /**
+     * Run one statement in a transaction, as the transaction manager of a web request would
+     */
+    private void run(boolean readOnly) {
+        var transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionManager.addListener(new PrimaryAfterWriteListener());
+        var template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        template.executeWithoutResult(status -> {
+            try {
+                DataSourceUtils.getConnection(dataSource).createStatement().execute("select 1");
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Data source recording which database ran statements, answering the lag query with {@code lagSeconds}
+     */
+    private class StubDataSource {
+        private final String name;
+        private volatile double lagSeconds;
+        private volatile boolean failing;
+
+        StubDataSource(String name) {
+            this.name = name;
+        }
+
+        DataSource dataSource() {
+            return proxy(DataSource.class, (method, args) -> switch (method) {
+                case "getConnection" -> {
+                    if (failing) {
+                        throw new SQLException(name + " is down");
+                    }
+                    yield proxy(Connection.class, (connectionMethod, connectionArgs) -> switch (connectionMethod) {
+                        case "createStatement" -> statement();
+                        case "getAutoCommit" -> true;
+                        default -> null;
+                    });
+                }
+                default -> null;
+            });
+        }
+
+        private Statement statement() {
+            return proxy(Statement.class, (method, args) -> switch (method) {
+                case "execute" -> {
+                    used.add(name);
+                    yield true;
+                }
+                case "executeQuery" -> {
+                    var rows = new int[]{1};
+                    yield proxy(ResultSet.class, (resultMethod, resultArgs) -> switch (resultMethod) {
+                        case "next" -> rows[0]-- > 0;
+                        case "getDouble" -> lagSeconds;
+                        default -> null;
+                    });
+                }
+                default -> null;
+            });
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.commander.common.jpa;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+    @Test
+    void doublesDelayUpToMaxBackoffThenGivesUp() {
+        var policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(300));
+
+        assertEquals(100, policy.delayMillis(1));
+        assertEquals(200, policy.delayMillis(2));
+        assertEquals(300, policy.delayMillis(3));
+        assertEquals(300, policy.delayMillis(4));
+        assertNull(policy.delayMillis(5));
+        assertEquals(Long.MAX_VALUE >> 1, new RetryPolicy(Integer.MAX_VALUE, 1, Long.MAX_VALUE >> 1).delayMillis(1000));
+    }
+
+    @Test
+    void cutsLongErrors() {
+        assertEquals("500 busy", RetryPolicy.lastError("500 busy"));
+        assertEquals(1000, RetryPolicy.lastError("x".repeat(5000)).length());
+    }
+}
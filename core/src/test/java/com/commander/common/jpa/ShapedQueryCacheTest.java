@@ -0,0 +1,62 @@
+package com.commander.common.jpa;
+
+import com.commander.common.benchmark.BenchmarkDatabase;
+import com.commander.common.util.ShapedSpecification;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.hibernate.query.criteria.JpaRoot;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShapedQueryCacheTest {
+    @Test
+    void countsDistinctRowsOfDistinctShape() throws Exception {
+        try (var db = BenchmarkDatabase.open(Item.class, Tag.class)) {
+            db.execute("drop table if exists shaped_item", "drop table if exists shaped_tag",
+                    "create table shaped_item (id bigint primary key)",
+                    "create table shaped_tag (id bigint primary key, item_id bigint not null, tag text not null)",
+                    "insert into shaped_item select i from generate_series(1, 10) i",
+                    "insert into shaped_tag values (1, 2, 'red'), (2, 2, 'red'), (3, 3, 'red'), (4, 4, 'blue')");
+            var cache = new ShapedQueryCache(db.sharedEntityManager(), 100, null);
+            var tagged = ShapedSpecification.<Item>of("tagged", List.of("red"), (root, query, builder, binder) -> {
+                var join = ((JpaRoot<Item>) root).join(Tag.class);
+                join.on(builder.equal(join.get("itemId"), root.get("id")));
+                query.distinct(true);
+                return builder.equal(join.get("tag"), binder.value(0, String.class));
+            });
+            var below = ShapedSpecification.<Item>of("below", List.of(4L),
+                    (root, query, builder, binder) -> builder.lessThan(root.get("id"), binder.value(0, Long.class)));
+
+            db.inTransaction(em -> {
+                assertEquals(2, cache.countQuery(Item.class, tagged).getSingleResult());
+                assertEquals(2, cache.find(Item.class, tagged, PageRequest.of(0, 1, Sort.by("id"))).getTotalElements());
+                assertEquals(3, cache.countQuery(Item.class, below).getSingleResult());
+                assertEquals(10, cache.countQuery(Item.class, null).getSingleResult());
+            });
+        }
+    }
+
+    @Entity(name = "ShapedItem")
+    @Table(name = "shaped_item")
+    public static class Item {
+        @Id
+        private Long id;
+    }
+
+    @Entity(name = "ShapedTag")
+    @Table(name = "shaped_tag")
+    public static class Tag {
+        @Id
+        private Long id;
+        @Column(name = "item_id")
+        private Long itemId;
+        private String tag;
+    }
+}
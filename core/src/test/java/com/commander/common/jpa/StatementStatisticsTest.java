@@ -0,0 +1,98 @@
+package com.commander.common.jpa;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static com.commander.common.jpa.JdbcStubs.proxy;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementStatisticsTest {
+    @Test
+    void fingerprintsReplaceValues() {
+        assertEquals("select * from item where id = ? and name = ? and tag in (?...) and ratio > ?",
+                StatementStatistics.fingerprint("select *\n  from item where id = 42 and name = 'it''s' and tag in (?, ?,?) and ratio > 0.5"));
+        assertEquals("select t1_0.id from item t1_0 where t1_0.id = ?", StatementStatistics.fingerprint("select t1_0.id from item t1_0 where t1_0.id = $1"));
+    }
+
+    @Test
+    void recordsTimeAndRowsByFingerprint() throws SQLException {
+        var statistics = new StatementStatistics(Duration.ZERO, Duration.ofSeconds(10), false, Duration.ofMinutes(10), 2);
+        var dataSource = statistics.wrap(stubDataSource(3));
+
+        for (long id = 1; id <= 2; ++id) {
+            try (var connection = dataSource.getConnection(); var statement = connection.prepareStatement("select name from item where id = " + id)) {
+                try (var rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        assertNull(rs.getString(1));
+                    }
+                }
+            }
+        }
+        try (var connection = dataSource.getConnection(); var statement = connection.prepareStatement("delete from item")) {
+            statement.executeUpdate();
+        }
+        try (var connection = dataSource.getConnection(); var statement = connection.prepareStatement("delete from tag")) {
+            statement.executeUpdate();
+        }
+
+        var top = statistics.top(10);
+        assertEquals(3, top.size());
+        var select = top.stream().filter(e -> e.fingerprint().equals("select name from item where id = ?")).findFirst().orElseThrow();
+        assertEquals(2, select.count());
+        assertEquals(6, select.rows());
+        assertEquals(2, select.counted());
+        assertEquals(2, select.slow());
+        assertTrue(top.stream().anyMatch(e -> e.fingerprint().equals(StatementStatistics.OTHER)));
+    }
+
+    @Test
+    void countsRowsOfSampledQueriesOnly() throws SQLException {
+        var statistics = new StatementStatistics(Duration.ofMinutes(1), Duration.ofSeconds(10), false, Duration.ofMinutes(10), 10, 0);
+        var dataSource = statistics.wrap(stubDataSource(3));
+
+        try (var connection = dataSource.getConnection(); var statement = connection.prepareStatement("select name from item where id = ?")) {
+            statement.setLong(1, 1);
+            try (var rs = statement.executeQuery()) {
+                // the result set of the driver, not a proxy counting its rows
+                assertTrue(Proxy.getInvocationHandler(rs).getClass().getName().startsWith(JdbcStubs.class.getName()));
+                while (rs.next()) {
+                    assertNull(rs.getString(1));
+                }
+            }
+        }
+        try (var connection = dataSource.getConnection(); var statement = connection.prepareStatement("delete from item")) {
+            statement.executeUpdate();
+        }
+
+        var select = statistics.top(10).stream().filter(e -> e.fingerprint().startsWith("select")).findFirst().orElseThrow();
+        assertEquals(1, select.count());
+        assertEquals(0, select.counted());
+        assertEquals(0, select.rows());
+        var delete = statistics.top(10).stream().filter(e -> e.fingerprint().startsWith("delete")).findFirst().orElseThrow();
+        assertEquals(1, delete.counted());
+        assertEquals(3, delete.rows());
+    }
+
+    /**
+     * Data source whose queries return {@code rows} rows and updates report {@code rows} rows
+     */
+    private static DataSource stubDataSource(int rows) {
+        return JdbcStubs.dataSource((method, args) -> switch (method) {
+            case "prepareStatement" -> proxy(PreparedStatement.class, (statementMethod, statementArgs) -> switch (statementMethod) {
+                case "executeQuery" -> {
+                    var remaining = new int[]{rows};
+                    yield proxy(ResultSet.class, (resultMethod, resultArgs) -> "next".equals(resultMethod) ? remaining[0]-- > 0 : null);
+                }
+                case "executeUpdate" -> rows;
+                default -> null;
+            });
+            default -> null;
+        });
+    }
+}
@@ -0,0 +1,134 @@
+package com.commander.common.jpa;
+
+import com.commander.common.mapper.BeanMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingExporterTest {
+    private static final BeanMapper<Row, Row> IDENTITY = new BeanMapper<>() {
+        @Override
+        public Row map(Row source) {
+            return source;
+        }
+
+        @Override
+        public void mapTo(Row source, Row target) {
+        }
+    };
+    private static final List<CsvColumn<Row>> COLUMNS = List.of(CsvColumn.of("id", Row::id), CsvColumn.of("name", Row::name));
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void escapesCsvFields() throws Exception {
+        var exporter = new ListExporter(List.of(new Row(1, "plain"), new Row(2, "a,b"), new Row(3, "say \"hi\""),
+                new Row(4, "two\r\nlines"), new Row(5, null)));
+        var out = new ByteArrayOutputStream();
+
+        var response = exporter.csv(Row.class, null, Sort.unsorted(), IDENTITY, COLUMNS, "rows.csv");
+        assertNotNull(response.getBody());
+        response.getBody().writeTo(out);
+
+        assertEquals("id,name\r\n1,plain\r\n2,\"a,b\"\r\n3,\"say \"\"hi\"\"\"\r\n4,\"two\r\nlines\"\r\n5,\r\n",
+                out.toString(StandardCharsets.UTF_8));
+        assertEquals(StreamingExporter.CSV, response.getHeaders().getContentType());
+        assertEquals("rows.csv", response.getHeaders().getContentDisposition().getFilename());
+    }
+
+    @Test
+    void writesRowsWhileStreaming() throws Exception {
+        var rows = IntStream.range(0, 20_000).mapToObj(i -> new Row(i, "row-" + i)).toList();
+        var out = new ByteArrayOutputStream();
+        var written = new ArrayList<Integer>();
+        var exporter = new ListExporter(rows) {
+            @Override
+            public <E> long stream(Class<E> entity, Specification<E> specification, Sort sort, Consumer<? super E> consumer) {
+                return super.stream(entity, specification, sort, row -> {
+                    consumer.accept(row);
+                    written.add(out.size());
+                });
+            }
+        };
+
+        var response = exporter.csv(Row.class, null, Sort.unsorted(), IDENTITY, COLUMNS, "rows.csv");
+        assertNotNull(response.getBody());
+        response.getBody().writeTo(out);
+
+        var lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(rows.size() + 1, lines.length);
+        assertEquals("19999,row-19999", lines[lines.length - 1]);
+        // the output receives the first rows long before the last one is read
+        assertTrue(written.get(rows.size() / 2) > 0, "rows are buffered until the end");
+    }
+
+    @Test
+    void setsTimeoutOfExportResponseOnly() throws Exception {
+        var exporter = new ListExporter(List.of());
+
+        assertEquals(Duration.ofMinutes(30).toMillis(), asyncTimeout(() -> exporter.csv(Row.class, null, Sort.unsorted(), IDENTITY, COLUMNS, "rows.csv")));
+        assertEquals(10_000, asyncTimeout(() -> {
+        }));
+    }
+
+    /**
+     * Run {@code handler} as the handler of a request, then start async processing the way a StreamingResponseBody
+     * return value does
+     */
+    private static long asyncTimeout(Runnable handler) throws Exception {
+        var request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        var response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        var asyncRequest = new StandardServletAsyncWebRequest(request, response);
+        asyncRequest.setTimeout(10_000L);
+        var asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(asyncRequest);
+
+        handler.run();
+        asyncManager.startCallableProcessing(() -> null);
+        return request.getAsyncContext().getTimeout();
+    }
+
+    public record Row(long id, String name) {
+    }
+
+    /**
+     * Exporter reading rows from a list instead of a database
+     */
+    private static class ListExporter extends StreamingExporter {
+        private final List<Row> rows;
+
+        ListExporter(List<Row> rows) {
+            super(null, null, 100, 100, Duration.ofMinutes(30));
+            this.rows = rows;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <E> long stream(Class<E> entity, Specification<E> specification, Sort sort, Consumer<? super E> consumer) {
+            rows.forEach(row -> consumer.accept((E) row));
+            return rows.size();
+        }
+    }
+}
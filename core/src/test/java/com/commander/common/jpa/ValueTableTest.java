@@ -0,0 +1,39 @@
+package com.commander.common.jpa;
+
+import com.commander.common.benchmark.BenchmarkDatabase;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueTableTest {
+    @Test
+    void bindsArrayInReadOnlyTransaction() throws Exception {
+        try (var db = BenchmarkDatabase.open(PageFinderTest.Item.class)) {
+            db.execute("drop table if exists page_finder_item", "create table page_finder_item (id bigint primary key, name text)",
+                    "insert into page_finder_item select i, 'item-' || i from generate_series(1, 10) i");
+            var ids = List.of(2L, 4L, 6L, 42L);
+
+            assertEquals(List.of(2L, 4L, 6L), db.inTransaction((EntityManager em) -> ids(em, ids)));
+            assertEquals(List.of(2L, 4L, 6L), db.inTransaction((EntityManager em) -> {
+                em.createNativeQuery("set transaction read only").executeUpdate();
+                return ids(em, ids);
+            }));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> ids(EntityManager em, List<Long> ids) {
+        var attribute = (SingularAttribute<PageFinderTest.Item, Long>) em.getMetamodel().entity(PageFinderTest.Item.class)
+                .getSingularAttribute("id", Long.class);
+        var spec = ValueTable.in(em, attribute, ids, 1);
+        var builder = em.getCriteriaBuilder();
+        var query = builder.createQuery(Long.class);
+        var root = query.from(PageFinderTest.Item.class);
+        query.select(root.get(attribute)).where(spec.toPredicate(root, query, builder)).orderBy(builder.asc(root.get(attribute)));
+        return em.createQuery(query).getResultList();
+    }
+}
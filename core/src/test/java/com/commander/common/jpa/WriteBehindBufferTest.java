@@ -0,0 +1,85 @@
+package com.commander.common.jpa;
+
+import com.commander.common.exception.BusinessException;
+import com.commander.common.util.ErrorCode;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindBufferTest {
+    @Test
+    void writesBatchesOnSizeAndOnTime() throws InterruptedException {
+        var batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+        try (var buffer = new WriteBehindBuffer<Integer>("test", batches::add, 1024, 100, Duration.ofMillis(50), Duration.ZERO, null)) {
+            for (int i = 0; i < 250; ++i) {
+                buffer.add(i);
+            }
+            buffer.flush();
+            assertEquals(250, batches.stream().mapToInt(List::size).sum());
+            assertTrue(batches.stream().allMatch(b -> b.size() <= 100));
+            assertEquals(0, batches.get(0).get(0));
+
+            batches.clear();
+            buffer.add(1);
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (batches.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(List.of(List.of(1)), batches);
+        }
+    }
+
+    @Test
+    void pushesBackWhenFullAndWritesAllOnClose() throws InterruptedException {
+        var written = Collections.synchronizedList(new ArrayList<Integer>());
+        var blocked = new CountDownLatch(1);
+        Consumer<List<Integer>> writer = rows -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.addAll(rows);
+        };
+        var buffer = new WriteBehindBuffer<>("test", writer, 4, 2, Duration.ofHours(1), Duration.ofMillis(20), null);
+        var added = 0;
+        try {
+            while (added < 100) {
+                buffer.add(added);
+                ++added;
+            }
+            fail("buffer is not bounded");
+        } catch (BusinessException e) {
+            assertEquals(ErrorCode.SERVICE_UNAVAILABLE, e.getErrorCode());
+        }
+        // the writer holds one batch, the buffer its capacity
+        assertTrue(added <= 2 + 4, "added " + added);
+
+        blocked.countDown();
+        buffer.close();
+        assertEquals(added, written.size());
+        assertThrows(IllegalStateException.class, () -> buffer.add(0));
+    }
+
+    @Test
+    void dropsBatchFailingThreeTimes() {
+        var attempts = new ArrayList<Integer>();
+        try (var buffer = new WriteBehindBuffer<Integer>("test", rows -> {
+            attempts.add(rows.size());
+            throw new IllegalStateException("down");
+        }, 16, 8, Duration.ofMillis(1), Duration.ZERO, null)) {
+            buffer.add(1);
+            buffer.flush();
+            assertEquals(List.of(1, 1, 1), attempts);
+            assertEquals(0, buffer.size());
+        }
+    }
+}
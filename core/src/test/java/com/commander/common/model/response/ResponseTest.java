@@ -0,0 +1,18 @@
+package com.commander.common.model.response;
+
+import com.commander.common.util.Json;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseTest {
+    @Test
+    void keepsMetadataWithoutCursorOrApproximateTotal() {
+        var metadata = new Response.Metadata(Response.Metadata.OK_CODE, 0, 20, 42L, null, null);
+
+        assertNull(metadata.getNextCursor());
+        assertNull(metadata.getApproximate());
+        var json = Json.encodeToString(metadata);
+        assertTrue(json.contains("\"total\":42"), json);
+    }
+}
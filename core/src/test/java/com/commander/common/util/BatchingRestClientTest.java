@@ -0,0 +1,157 @@
+package com.commander.common.util;
+
+import com.commander.common.exception.BusinessException;
+import com.dslplatform.json.NumberConverter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingRestClientTest {
+    private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+    private volatile Answer answer = Answer.TIMES_TEN;
+    private HttpServer server;
+    private HttpClient httpClient;
+    private ScheduledExecutorService scheduler;
+    private RestClient restClient;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/bulk", this::handle);
+        server.start();
+        httpClient = HttpClient.newHttpClient();
+        restClient = new RestClient(httpClient);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void stop() {
+        scheduler.shutdownNow();
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    void sendsOnceBatchIsFull() throws Exception {
+        try (var client = client(3, Duration.ofHours(1))) {
+            var futures = submit(client, 1, 2, 3, 4);
+
+            assertEquals(List.of(10, 20, 30), join(futures.subList(0, 3)));
+            assertEquals(List.of(List.of(1, 2, 3)), batches);
+            assertFalse(futures.get(3).isDone());
+        }
+    }
+
+    @Test
+    void sendsPartialBatchAfterLinger() throws Exception {
+        try (var client = client(100, Duration.ofMillis(50))) {
+            var futures = submit(client, 1, 2);
+
+            assertEquals(List.of(10, 20), join(futures));
+            assertEquals(List.of(List.of(1, 2)), batches);
+        }
+    }
+
+    @Test
+    void routesEachResultToItsCaller() throws Exception {
+        var futures = Collections.synchronizedList(new ArrayList<CompletableFuture<Integer>>());
+        try (var client = client(16, Duration.ofMillis(5));
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int p = 0; p < 8; ++p) {
+                var producer = p;
+                executor.submit(() -> {
+                    for (int i = 0; i < 100; ++i) {
+                        var item = producer * 1000 + i;
+                        futures.add(client.submit(item).thenApply(result -> {
+                            assertEquals(item * 10, result);
+                            return result;
+                        }));
+                    }
+                });
+            }
+        }
+        assertEquals(800, join(futures).size());
+        assertTrue(batches.stream().allMatch(b -> b.size() <= 16));
+        assertEquals(800, batches.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void failsEveryWaiterOfFailedBatch() {
+        answer = Answer.ERROR;
+        try (var client = client(3, Duration.ofHours(1))) {
+            for (var future : submit(client, 1, 2, 3)) {
+                var e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertEquals(ErrorCode.INTERNAL_SERVER_ERROR, ((BusinessException) e.getCause()).getErrorCode());
+            }
+        }
+
+        answer = Answer.SHORT;
+        try (var client = client(3, Duration.ofHours(1))) {
+            for (var future : submit(client, 1, 2, 3)) {
+                var e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(BusinessException.class, e.getCause());
+            }
+        }
+    }
+
+    private BatchingRestClient<Integer, Integer> client(int maxBatchSize, Duration maxLinger) {
+        return new BatchingRestClient<>(restClient, URI.create("http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/bulk"), NumberConverter.INT_WRITER, NumberConverter.INT_READER,
+                maxBatchSize, maxLinger, scheduler);
+    }
+
+    private static List<CompletableFuture<Integer>> submit(BatchingRestClient<Integer, Integer> client, Integer... items) {
+        return Arrays.stream(items).map(client::submit).toList();
+    }
+
+    private static List<Integer> join(List<CompletableFuture<Integer>> futures) throws Exception {
+        var results = new ArrayList<Integer>();
+        for (var future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            var items = Arrays.stream(body.substring(1, body.length() - 1).split(",")).map(Integer::valueOf).toList();
+            batches.add(items);
+            var results = items.stream().map(i -> i * 10).toList();
+            if (answer == Answer.SHORT) {
+                results = results.subList(1, results.size());
+            }
+            var response = (answer == Answer.ERROR ? "{\"error\":\"bulk\"}"
+                    : results.stream().map(String::valueOf).collect(Collectors.joining(",", "[", "]"))).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(answer == Answer.ERROR ? 503 : 200, response.length);
+            exchange.getResponseBody().write(response);
+        }
+    }
+
+    private enum Answer {
+        TIMES_TEN, ERROR, SHORT
+    }
+}
@@ -0,0 +1,73 @@
+package com.commander.common.util;
+
+import com.commander.common.exception.ValidateException;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageablesTest {
+    @Test
+    void parsesSortDirection() {
+        var pageable = Pageables.of(0, 10, "name:DESC,id:ASC");
+
+        assertEquals(Sort.by(Sort.Order.desc("name"), Sort.Order.asc("id")), pageable.getSort());
+    }
+
+    @Test
+    void keysetAppendsUniqueAttributeAndRoundTripsCursor() {
+        var first = Pageables.keyset(null, 2, "createdAt:DESC", "id");
+        assertTrue(first.isFirst());
+        assertEquals(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.asc("id")), first.sort());
+
+        var rows = List.of(new Row(3, Instant.parse("2024-01-03T00:00:00Z")), new Row(2, Instant.parse("2024-01-02T00:00:00Z")),
+                new Row(1, Instant.parse("2024-01-01T00:00:00Z")));
+        var slice = KeysetSlice.of(rows, first);
+        assertEquals(2, slice.content().size());
+        assertTrue(slice.hasNext());
+
+        var next = Pageables.keyset(slice.nextCursor(), 2, "createdAt:DESC", "id");
+        assertEquals(List.of("2024-01-02T00:00:00Z", 2L), next.after());
+        assertFalse(KeysetSlice.of(rows.subList(2, 3), next).hasNext());
+    }
+
+    @Test
+    void rejectsCursorOfAnotherSort() {
+        var cursor = KeysetSlice.of(List.of(new Row(1, Instant.EPOCH), new Row(2, Instant.EPOCH)),
+                Pageables.keyset(null, 1, null, "id")).nextCursor();
+
+        assertThrows(ValidateException.class, () -> Pageables.keyset(cursor, 1, "createdAt:ASC", "id"));
+        assertThrows(ValidateException.class, () -> Pageables.keyset("not a cursor", 1, null, "id"));
+    }
+
+    @Test
+    void rejectsCursorOfSortWithSameLength() {
+        var first = Pageables.keyset(null, 1, "createdAt:DESC", "id");
+        var cursor = KeysetSlice.of(List.of(new Row(2, Instant.EPOCH), new Row(1, Instant.EPOCH)), first).nextCursor();
+
+        assertEquals(List.of(Instant.EPOCH.toString(), 2L), Pageables.keyset(cursor, 1, "createdAt:DESC", "id").after());
+        assertThrows(ValidateException.class, () -> Pageables.keyset(cursor, 1, "name:DESC", "id"));
+        assertThrows(ValidateException.class, () -> Pageables.keyset(cursor, 1, "createdAt:ASC", "id"));
+    }
+
+    public static class Row {
+        private final long id;
+        private final Instant createdAt;
+
+        Row(long id, Instant createdAt) {
+            this.id = id;
+            this.createdAt = createdAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Instant getCreatedAt() {
+            return createdAt;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.commander.common.util;
+
+import com.commander.common.exception.BusinessException;
+import com.commander.common.http.Deadline;
+import com.commander.common.http.HostRateLimiter;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestClientTest {
+    private final RestClient restClient = new RestClient(HttpClient.newHttpClient());
+
+    @AfterEach
+    void clearDeadline() {
+        Deadline.clear();
+    }
+
+    @Test
+    void failsWithoutSendingWhenDeadlineIsSpent() {
+        Deadline.set(new Deadline(System.nanoTime() - 1));
+
+        var e = assertThrows(CompletionException.class, () -> restClient.get(URI.create("http://localhost:1/")).join());
+        assertEquals(ErrorCode.GATEWAY_TIMEOUT, ((BusinessException) e.getCause()).getErrorCode());
+
+        var blocking = assertThrows(BusinessException.class, () -> restClient.call(RestCall.get(URI.create("http://localhost:1/"), r -> r)));
+        assertEquals(ErrorCode.GATEWAY_TIMEOUT, blocking.getErrorCode());
+    }
+
+    @Test
+    void forwardsBudgetLeftAfterRateLimitWait() throws Exception {
+        var budgets = new CopyOnWriteArrayList<Long>();
+        var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                var budget = exchange.getRequestHeaders().getFirst(Deadline.HEADER);
+                if (budget != null) {
+                    budgets.add(Long.parseLong(budget));
+                }
+                exchange.sendResponseHeaders(200, 2);
+                exchange.getResponseBody().write(new byte[]{'{', '}'});
+            }
+        });
+        server.start();
+        try (var httpClient = HttpClient.newHttpClient()) {
+            var uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+            // one call per second, so every call after the first waits
+            var throttled = new RestClient(httpClient, null, new HostRateLimiter(Map.of("127.0.0.1", new HostRateLimiter.Limit(1, 1))), null);
+            throttled.call(RestCall.get(uri, r -> r));
+            Deadline.set(Deadline.after(Duration.ofSeconds(5)));
+
+            throttled.call(RestCall.get(uri, r -> r));
+            throttled.get(uri).join();
+
+            assertEquals(2, budgets.size());
+            assertTrue(budgets.get(0) <= 4800, "blocking call forwarded " + budgets);
+            assertTrue(budgets.get(1) <= budgets.get(0) - 800, "async call forwarded " + budgets);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
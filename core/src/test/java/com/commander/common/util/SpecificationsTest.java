@@ -0,0 +1,159 @@
+package com.commander.common.util;
+
+import com.commander.common.benchmark.BenchmarkDatabase;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpecificationsTest {
+    @Test
+    void resolvesIdsWhenApplied() throws Exception {
+        try (var db = BenchmarkDatabase.open(JoinItem.class, JoinTag.class)) {
+            createTables(db);
+
+            db.inTransaction((EntityManager em) -> {
+                var spec = resolvedIds(em, "red");
+                // the keys are read by the query, so it sees the tag added once the specification is built
+                em.createNativeQuery("insert into specifications_tag values (1, 2, 'red')").executeUpdate();
+                assertEquals(List.of(2L), ids(em, spec));
+
+                em.createNativeQuery("insert into specifications_tag values (2, 3, 'red')").executeUpdate();
+                assertEquals(List.of(2L), ids(em, spec));
+            });
+        }
+    }
+
+    @Test
+    void resolvesIdsAgainInAnotherTransaction() throws Exception {
+        try (var db = BenchmarkDatabase.open(JoinItem.class, JoinTag.class)) {
+            createTables(db);
+            db.execute("insert into specifications_tag values (1, 2, 'red')");
+            // kept across transactions, as a field of a component using the shared entity manager would
+            var spec = db.inTransaction((EntityManager em) -> resolvedIds(db.sharedEntityManager(), "red"));
+
+            assertEquals(List.of(2L), db.inTransaction((EntityManager em) -> ids(em, spec)));
+            db.execute("insert into specifications_tag values (2, 3, 'red')");
+            assertEquals(List.of(2L, 3L), db.inTransaction((EntityManager em) -> ids(em, spec)));
+        }
+    }
+
+    @Test
+    void joinsSubqueryPastMaxResolvedIds() throws Exception {
+        try (var db = BenchmarkDatabase.open(JoinItem.class, JoinTag.class)) {
+            createTables(db);
+            db.execute("insert into specifications_item select i from generate_series(11, " + (Specifications.MAX_RESOLVED_IDS + 10) + ") i",
+                    "insert into specifications_tag select i, i, 'common' from generate_series(1, " + (Specifications.MAX_RESOLVED_IDS + 10) + ") i");
+
+            assertEquals(Specifications.MAX_RESOLVED_IDS + 10L, (long) db.inTransaction((EntityManager em) -> ids(em, resolvedIds(em, "common")).size()));
+        }
+    }
+
+    @Test
+    void bindsJsonOperands() throws Exception {
+        try (var db = BenchmarkDatabase.open(Map.of(AvailableSettings.STATEMENT_INSPECTOR, RecordingInspector.class.getName()), JsonItem.class)) {
+            db.execute("drop table if exists specifications_json",
+                    "create table specifications_json (id bigint primary key, attributes jsonb)",
+                    "insert into specifications_json values (1, '{\"color\": \"red\", \"it''s\": 1}'), (2, '{\"size\": 3}')");
+            RecordingInspector.SQL.clear();
+
+            assertEquals(List.of(1L), jsonIds(db, attribute -> Specifications.jsonContains(attribute, new JsonObject().put("color", "red"))));
+            assertEquals(List.of(1L), jsonIds(db, attribute -> Specifications.jsonHasKey(attribute, "it's")));
+            assertEquals(List.of(2L), jsonIds(db, attribute -> Specifications.jsonPathExists(attribute, "$.size ? (@ > 2)")));
+            assertEquals(List.of(2L), jsonIds(db, attribute -> Specifications.jsonPathMatch(attribute, "$.size == 3")));
+
+            // the operands are parameters, and the question marks of ? and @? are escaped for the JDBC driver
+            assertEquals(4, RecordingInspector.SQL.size());
+            assertTrue(RecordingInspector.SQL.get(0).contains("@> cast(? as jsonb)"), RecordingInspector.SQL.get(0));
+            assertTrue(RecordingInspector.SQL.get(1).contains(" ?? cast(? as text)"), RecordingInspector.SQL.get(1));
+            assertTrue(RecordingInspector.SQL.get(2).contains(" @?? cast(? as jsonpath)"), RecordingInspector.SQL.get(2));
+            assertTrue(RecordingInspector.SQL.get(3).contains(" @@ cast(? as jsonpath)"), RecordingInspector.SQL.get(3));
+        }
+    }
+
+    private static void createTables(BenchmarkDatabase db) throws Exception {
+        db.execute("drop table if exists specifications_item", "drop table if exists specifications_tag",
+                "create table specifications_item (id bigint primary key)",
+                "create table specifications_tag (id bigint primary key, item_id bigint not null, tag text not null)",
+                "insert into specifications_item select i from generate_series(1, 10) i");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Specification<JoinItem> resolvedIds(EntityManager em, String tag) {
+        var tagType = em.getMetamodel().entity(JoinTag.class);
+        return Specifications.equalsJoin(em, (SingularAttribute<JoinItem, Long>) em.getMetamodel().entity(JoinItem.class).getSingularAttribute("id", Long.class),
+                JoinTag.class, (SingularAttribute<JoinTag, Long>) tagType.getSingularAttribute("itemId", Long.class),
+                (SingularAttribute<JoinTag, String>) tagType.getSingularAttribute("tag", String.class), tag, JoinStrategy.RESOLVED_IDS);
+    }
+
+    private static List<Long> ids(EntityManager em, Specification<JoinItem> spec) {
+        var builder = em.getCriteriaBuilder();
+        var query = builder.createQuery(Long.class);
+        var root = query.from(JoinItem.class);
+        query.select(root.get("id")).where(spec.toPredicate(root, query, builder)).orderBy(builder.asc(root.get("id")));
+        return em.createQuery(query).getResultList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> jsonIds(BenchmarkDatabase db, Function<SingularAttribute<JsonItem, JsonObject>, Specification<JsonItem>> filter) {
+        return db.inTransaction((EntityManager em) -> {
+            var builder = em.getCriteriaBuilder();
+            var query = builder.createQuery(Long.class);
+            var root = query.from(JsonItem.class);
+            var attribute = (SingularAttribute<JsonItem, JsonObject>) em.getMetamodel().entity(JsonItem.class).getSingularAttribute("attributes", JsonObject.class);
+            query.select(root.get("id")).where(filter.apply(attribute).toPredicate(root, query, builder));
+            return em.createQuery(query).getResultList();
+        });
+    }
+
+    /**
+     * Keeps the SQL of the statements prepared by the session factory
+     */
+    public static class RecordingInspector implements StatementInspector {
+        static final List<String> SQL = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            SQL.add(sql);
+            return sql;
+        }
+    }
+
+    @Entity(name = "SpecificationsItem")
+    @Table(name = "specifications_item")
+    public static class JoinItem {
+        @Id
+        private Long id;
+    }
+
+    @Entity(name = "SpecificationsTag")
+    @Table(name = "specifications_tag")
+    public static class JoinTag {
+        @Id
+        private Long id;
+        @Column(name = "item_id")
+        private Long itemId;
+        private String tag;
+    }
+
+    @Entity(name = "SpecificationsJsonItem")
+    @Table(name = "specifications_json")
+    public static class JsonItem {
+        @Id
+        private Long id;
+        private JsonObject attributes;
+    }
+}
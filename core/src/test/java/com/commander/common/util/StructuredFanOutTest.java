@@ -0,0 +1,60 @@
+package com.commander.common.util;
+
+import com.commander.common.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StructuredFanOutTest {
+
+    @Test
+    void returnsResultsInTaskOrder() {
+        List<Callable<Integer>> tasks = List.of(
+                () -> {
+                    Thread.sleep(50);
+                    return 1;
+                },
+                () -> 2,
+                () -> 3);
+
+        assertEquals(List.of(1, 2, 3), StructuredFanOut.invokeAll(tasks, Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void cancelsSiblingsOnFailure() throws InterruptedException {
+        var interrupted = new CountDownLatch(1);
+        List<Callable<Integer>> tasks = List.of(
+                () -> {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return 1;
+                },
+                () -> {
+                    throw new IllegalStateException("boom");
+                });
+
+        var e = assertThrows(IllegalStateException.class, () -> StructuredFanOut.invokeAll(tasks, Duration.ofSeconds(5)));
+        assertEquals("boom", e.getMessage());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failsWhenDeadlinePasses() {
+        List<Callable<Integer>> tasks = List.of(() -> {
+            Thread.sleep(10_000);
+            return 1;
+        });
+
+        var e = assertThrows(BusinessException.class, () -> StructuredFanOut.invokeAll(tasks, Duration.ofMillis(50)));
+        assertEquals(ErrorCode.GATEWAY_TIMEOUT, e.getErrorCode());
+    }
+}